@@ -0,0 +1,72 @@
+package org.rschwietzke.markov.benchmark;
+
+import org.rschwietzke.markov.MarkovTable;
+
+import it.unimi.dsi.util.FastRandom;
+
+/**
+ * A synthetic corpus of row and col pairs with Zipf distributed rows and cols. The
+ * same parameters always produce the same corpus, so results stay comparable over
+ * time.
+ *
+ * @author rschwietzke
+ *
+ */
+public class Corpus
+{
+    public static final long SEED = 42L;
+
+    public final String[] rows;
+    public final String[] cols;
+
+    /**
+     * Creates a corpus
+     *
+     * @param size the number of pairs
+     * @param rowCount the number of distinct rows
+     * @param width the number of distinct cols per row
+     * @param skew the Zipf skew of rows and cols, 0 is uniform
+     */
+    public Corpus(final int size, final int rowCount, final int width, final double skew)
+    {
+        final String[] rowSymbols = symbols("r", rowCount);
+        final String[] colSymbols = symbols("c", width);
+
+        final var rowZipf = new Zipf(rowCount, skew);
+        final var colZipf = new Zipf(width, skew);
+        final var r = FastRandom.get(SEED, size, rowCount, width);
+
+        this.rows = new String[size];
+        this.cols = new String[size];
+        for (int i = 0; i < size; i++)
+        {
+            rows[i] = rowSymbols[rowZipf.next(r)];
+            cols[i] = colSymbols[colZipf.next(r)];
+        }
+    }
+
+    /**
+     * Trains a new table with the full corpus
+     *
+     * @return the trained table
+     */
+    public MarkovTable<String, String> train()
+    {
+        final var table = new MarkovTable<String, String>();
+        for (int i = 0; i < rows.length; i++)
+        {
+            table.train(rows[i], cols[i]);
+        }
+        return table;
+    }
+
+    private static String[] symbols(final String prefix, final int n)
+    {
+        final String[] symbols = new String[n];
+        for (int i = 0; i < n; i++)
+        {
+            symbols[i] = prefix + i;
+        }
+        return symbols;
+    }
+}
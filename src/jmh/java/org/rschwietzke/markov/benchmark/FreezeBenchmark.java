@@ -0,0 +1,81 @@
+package org.rschwietzke.markov.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rschwietzke.markov.CompactMarkovTable;
+import org.rschwietzke.markov.MarkovTable;
+import org.rschwietzke.markov.OffHeapMarkovTable;
+import org.rschwietzke.markov.TrainedMarkovTable;
+
+/**
+ * Cost of finishing and freezing a trained table depending on its size
+ *
+ * @author rschwietzke
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FreezeBenchmark
+{
+    @Param({"100", "10000", "100000"})
+    int rows;
+
+    @Param({"16"})
+    int width;
+
+    @Param({"1.0"})
+    double skew;
+
+    MarkovTable<String, String> table;
+
+    @Setup
+    public void setup()
+    {
+        table = new Corpus(rows * width * 4, rows, width, skew).train();
+    }
+
+    @Benchmark
+    public MarkovTable<String, String> finish()
+    {
+        return table.finish();
+    }
+
+    @Benchmark
+    public TrainedMarkovTable<String, String> freeze()
+    {
+        return table.freeze();
+    }
+
+    @Benchmark
+    public TrainedMarkovTable<String, String> freezeAlias()
+    {
+        return table.freeze(TrainedMarkovTable.Sampling.ALIAS);
+    }
+
+    @Benchmark
+    public CompactMarkovTable<String, String> freezeCompact()
+    {
+        return table.freezeCompact();
+    }
+
+    @Benchmark
+    public OffHeapMarkovTable<String, String> freezeOffHeap()
+    {
+        return table.freezeOffHeap();
+    }
+}
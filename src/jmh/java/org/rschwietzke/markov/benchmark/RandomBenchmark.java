@@ -0,0 +1,63 @@
+package org.rschwietzke.markov.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.unimi.dsi.util.FastRandom;
+import it.unimi.dsi.util.SplitMix64RandomGenerator;
+
+/**
+ * Our random sources compared, the bounded draw is what sampling uses
+ *
+ * @author rschwietzke
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RandomBenchmark
+{
+    // a power of two, a small odd bound and a large one that forces rejections
+    @Param({"1024", "1000", "6148914691236517205"})
+    long bound;
+
+    final FastRandom fastRandom = FastRandom.get(Corpus.SEED);
+    final SplitMix64RandomGenerator splitMix = new SplitMix64RandomGenerator(Corpus.SEED);
+
+    @Benchmark
+    public long fastRandomNextLong()
+    {
+        return fastRandom.nextLong();
+    }
+
+    @Benchmark
+    public long splitMixNextLong()
+    {
+        return splitMix.nextLong();
+    }
+
+    @Benchmark
+    public long fastRandomBounded()
+    {
+        return fastRandom.nextLong(bound);
+    }
+
+    @Benchmark
+    public long splitMixBounded()
+    {
+        return splitMix.nextLong(bound);
+    }
+}
@@ -0,0 +1,102 @@
+package org.rschwietzke.markov.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rschwietzke.markov.SamplingTable;
+import org.rschwietzke.markov.TrainedMarkovTable;
+
+import it.unimi.dsi.util.FastRandom;
+
+/**
+ * Latency of drawing random rows and cols from the frozen table variants across row
+ * widths and skews
+ *
+ * @author rschwietzke
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SampleBenchmark
+{
+    @Param({"LINEAR", "ALIAS", "COMPACT", "OFFHEAP"})
+    String table;
+
+    @Param({"2", "32", "1024"})
+    int width;
+
+    @Param({"0.0", "1.2"})
+    double skew;
+
+    static final int ROWS = 1000;
+
+    // the cols of one batch draw
+    static final int BATCH = 100;
+
+    SamplingTable<String, String> sampling;
+    String row;
+    String[] batch = new String[BATCH];
+    FastRandom random;
+
+    @Setup
+    public void setup()
+    {
+        final var trained = new Corpus(ROWS * width * 8, ROWS, width, skew).train();
+        switch (table)
+        {
+            case "LINEAR":
+                sampling = trained.freeze(TrainedMarkovTable.Sampling.LINEAR);
+                break;
+            case "ALIAS":
+                sampling = trained.freeze(TrainedMarkovTable.Sampling.ALIAS);
+                break;
+            case "COMPACT":
+                sampling = trained.freezeCompact();
+                break;
+            case "OFFHEAP":
+                sampling = trained.freezeOffHeap();
+                break;
+            default:
+                throw new IllegalArgumentException(table);
+        }
+
+        // the most frequent row has the most cols
+        row = "r0";
+        random = FastRandom.get(Corpus.SEED);
+    }
+
+    @Benchmark
+    public String randomRow()
+    {
+        return sampling.randomRow(random);
+    }
+
+    @Benchmark
+    public String randomCol()
+    {
+        return sampling.randomCol(random, row, null);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public String[] randomColBatch()
+    {
+        sampling.randomCol(random, row, batch, BATCH);
+        return batch;
+    }
+}
@@ -0,0 +1,58 @@
+package org.rschwietzke.markov.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rschwietzke.markov.MarkovTable;
+
+/**
+ * Throughput of {@link MarkovTable#train(Object, Object)}, reported per trained pair
+ *
+ * @author rschwietzke
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrainBenchmark
+{
+    static final int SIZE = 100_000;
+
+    @Param({"100", "10000"})
+    int rows;
+
+    @Param({"4", "64"})
+    int width;
+
+    @Param({"0.0", "1.0"})
+    double skew;
+
+    Corpus corpus;
+
+    @Setup
+    public void setup()
+    {
+        corpus = new Corpus(SIZE, rows, width, skew);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public MarkovTable<String, String> train()
+    {
+        return corpus.train();
+    }
+}
@@ -0,0 +1,45 @@
+package org.rschwietzke.markov.benchmark;
+
+import java.util.Arrays;
+
+import it.unimi.dsi.util.FastRandom;
+
+/**
+ * Draws ranks 0 to n - 1 following a Zipf distribution, rank k has a weight of
+ * 1 / (k + 1)^skew. A skew of 0 is uniform, natural language is close to 1.
+ *
+ * @author rschwietzke
+ *
+ */
+public class Zipf
+{
+    private final double[] cdf;
+
+    public Zipf(final int n, final double skew)
+    {
+        this.cdf = new double[n];
+
+        double sum = 0;
+        for (int k = 0; k < n; k++)
+        {
+            sum += 1.0d / Math.pow(k + 1, skew);
+            cdf[k] = sum;
+        }
+        for (int k = 0; k < n; k++)
+        {
+            cdf[k] /= sum;
+        }
+    }
+
+    /**
+     * Returns a random rank
+     *
+     * @param r the random source
+     * @return a rank, 0 is the most likely one
+     */
+    public int next(final FastRandom r)
+    {
+        final int pos = Arrays.binarySearch(cdf, r.nextDouble());
+        return Math.min(pos < 0 ? -pos - 1 : pos, cdf.length - 1);
+    }
+}
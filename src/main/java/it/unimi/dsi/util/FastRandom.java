@@ -179,6 +179,185 @@ public class FastRandom
         }
     }
 
+    /**
+     * Fills the array with random longs, same as calling {@link #nextLong()} for
+     * each position. The state is kept in locals for the whole loop, which the JIT
+     * can keep in registers and unroll.
+     *
+     * @param out where to put the values
+     */
+    public void fillLongs(final long[] out)
+    {
+        if (getClass() != FastRandom.class)
+        {
+            // respect what a subclass does
+            for (int i = 0; i < out.length; i++)
+            {
+                out[i] = nextLong();
+            }
+            return;
+        }
+
+        long s0 = this.s0, s1 = this.s1, s2 = this.s2, s3 = this.s3;
+        for (int i = 0; i < out.length; i++)
+        {
+            out[i] = Long.rotateLeft(s0 + s3, 23) + s0;
+
+            final long t = s1 << 17;
+            s2 ^= s0;
+            s3 ^= s1;
+            s1 ^= s2;
+            s0 ^= s3;
+            s2 ^= t;
+            s3 = Long.rotateLeft(s3, 45);
+        }
+        this.s0 = s0;
+        this.s1 = s1;
+        this.s2 = s2;
+        this.s3 = s3;
+    }
+
+    /**
+     * Fills the array with random longs between 0 (inclusive) and the bound (exclusive),
+     * same as calling {@link #nextLong(long)} for each position
+     *
+     * @param out where to put the values
+     * @param bound the positive bound
+     */
+    public void fillLongs(final long[] out, final long bound)
+    {
+        fillLongs(out, out.length, bound);
+    }
+
+    /**
+     * Fills the first n positions of the array with random longs between 0 (inclusive)
+     * and the bound (exclusive), same as calling {@link #nextLong(long)} n times
+     *
+     * @param out where to put the values
+     * @param n how many values to draw
+     * @param bound the positive bound
+     */
+    public void fillLongs(final long[] out, final int n, final long bound)
+    {
+        if (bound <= 0) throw new IllegalArgumentException("illegal bound " + bound + " (must be positive)");
+        if (getClass() != FastRandom.class)
+        {
+            for (int i = 0; i < n; i++)
+            {
+                out[i] = nextLong(bound);
+            }
+            return;
+        }
+
+        final long nMinus1 = bound - 1;
+        long s0 = this.s0, s1 = this.s1, s2 = this.s2, s3 = this.s3;
+        for (int i = 0; i < n; i++)
+        {
+            long u, r;
+            do
+            {
+                u = (Long.rotateLeft(s0 + s3, 23) + s0) >>> 1;
+
+                final long t = s1 << 17;
+                s2 ^= s0;
+                s3 ^= s1;
+                s1 ^= s2;
+                s0 ^= s3;
+                s2 ^= t;
+                s3 = Long.rotateLeft(s3, 45);
+            }
+            while (u + nMinus1 - (r = u % bound) < 0);
+
+            out[i] = r;
+        }
+        this.s0 = s0;
+        this.s1 = s1;
+        this.s2 = s2;
+        this.s3 = s3;
+    }
+
+    /**
+     * Fills the array with random ints between 0 (inclusive) and the bound (exclusive),
+     * same as calling {@link #nextInt(int)} for each position
+     *
+     * @param out where to put the values
+     * @param bound the positive bound
+     */
+    public void fillInts(final int[] out, final int bound)
+    {
+        if (bound <= 0) throw new IllegalArgumentException("illegal bound " + bound + " (must be positive)");
+        if (getClass() != FastRandom.class)
+        {
+            for (int i = 0; i < out.length; i++)
+            {
+                out[i] = nextInt(bound);
+            }
+            return;
+        }
+
+        final long nMinus1 = bound - 1;
+        long s0 = this.s0, s1 = this.s1, s2 = this.s2, s3 = this.s3;
+        for (int i = 0; i < out.length; i++)
+        {
+            long u, r;
+            do
+            {
+                u = (Long.rotateLeft(s0 + s3, 23) + s0) >>> 1;
+
+                final long t = s1 << 17;
+                s2 ^= s0;
+                s3 ^= s1;
+                s1 ^= s2;
+                s0 ^= s3;
+                s2 ^= t;
+                s3 = Long.rotateLeft(s3, 45);
+            }
+            while (u + nMinus1 - (r = u % bound) < 0);
+
+            out[i] = (int) r;
+        }
+        this.s0 = s0;
+        this.s1 = s1;
+        this.s2 = s2;
+        this.s3 = s3;
+    }
+
+    /**
+     * Fills the array with random doubles between 0.0 (inclusive) and 1.0 (exclusive),
+     * same as calling {@link #nextDouble()} for each position
+     *
+     * @param out where to put the values
+     */
+    public void fillDoubles(final double[] out)
+    {
+        if (getClass() != FastRandom.class)
+        {
+            for (int i = 0; i < out.length; i++)
+            {
+                out[i] = nextDouble();
+            }
+            return;
+        }
+
+        long s0 = this.s0, s1 = this.s1, s2 = this.s2, s3 = this.s3;
+        for (int i = 0; i < out.length; i++)
+        {
+            out[i] = ((Long.rotateLeft(s0 + s3, 23) + s0) >>> 11) * 0x1.0p-53;
+
+            final long t = s1 << 17;
+            s2 ^= s0;
+            s3 ^= s1;
+            s1 ^= s2;
+            s0 ^= s3;
+            s2 ^= t;
+            s3 = Long.rotateLeft(s3, 45);
+        }
+        this.s0 = s0;
+        this.s1 = s1;
+        this.s2 = s2;
+        this.s3 = s3;
+    }
+
     /** Sets the seed of this generator.
      *
      * <p>The argument will be used to seed a {@link SplitMix64RandomGenerator}, whose output
@@ -0,0 +1,195 @@
+package org.rschwietzke.markov;
+
+import it.unimi.dsi.util.FastRandom;
+
+/**
+ * Vose's alias method for drawing an index from a discrete weighted distribution
+ * in constant time. Each of the n buckets has the same capacity, keeps a share of
+ * its own index and hands the rest over to exactly one alias. A draw is hence just
+ * a random bucket plus a random threshold check, independent of the number of entries.
+ * <p>
+ * All math is done with longs, so the distribution is exact. Only when the weights
+ * times the number of entries exceed a long, the weights are scaled down.
+ *
+ * @author rschwietzke
+ *
+ */
+public class AliasTable
+{
+    // the share of the bucket that stays with its own index, scaled to capacity
+    private final long[] threshold;
+
+    // where to go when the threshold has not been met
+    private final int[] alias;
+
+    // the capacity of each bucket, which is the sum of all weights
+    private final long capacity;
+
+    /**
+     * Builds the table from the weights, the index of the weight is what
+     * is returned later
+     *
+     * @param weights the weights, must not be negative and not all zero
+     */
+    public AliasTable(final long[] weights)
+    {
+        final int n = weights.length;
+        if (n == 0)
+        {
+            throw new IllegalArgumentException("No weights given");
+        }
+
+        this.threshold = new long[n];
+        this.alias = new int[n];
+
+        // get us the total and make sure, we don't overflow when scaling
+        final int shift = shift(weights);
+        long total = 0;
+        for (int i = 0; i < n; i++)
+        {
+            final long w = scale(weights[i], shift);
+            threshold[i] = w * n;
+            total += w;
+        }
+        if (total <= 0)
+        {
+            throw new IllegalArgumentException("Weights must sum up to more than zero");
+        }
+        this.capacity = total;
+
+        // sort into under and over filled buckets, we can use the arrays as stacks
+        final int[] small = new int[n];
+        final int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+
+        for (int i = 0; i < n; i++)
+        {
+            if (threshold[i] < capacity)
+            {
+                small[smallCount++] = i;
+            }
+            else
+            {
+                large[largeCount++] = i;
+            }
+        }
+
+        // fill up each small bucket from a large one
+        while (smallCount > 0 && largeCount > 0)
+        {
+            final int s = small[--smallCount];
+            final int l = large[--largeCount];
+
+            alias[s] = l;
+            threshold[l] -= capacity - threshold[s];
+
+            if (threshold[l] < capacity)
+            {
+                small[smallCount++] = l;
+            }
+            else
+            {
+                large[largeCount++] = l;
+            }
+        }
+
+        // the rest is full, due to integer math, this is exact
+        while (largeCount > 0)
+        {
+            final int l = large[--largeCount];
+            threshold[l] = capacity;
+            alias[l] = l;
+        }
+        while (smallCount > 0)
+        {
+            final int s = small[--smallCount];
+            threshold[s] = capacity;
+            alias[s] = s;
+        }
+    }
+
+    /**
+     * Determine how much we have to shift the weights to avoid an
+     * overflow when multiplying by the number of entries
+     */
+    private static int shift(final long[] weights)
+    {
+        for (int i = 0; i < weights.length; i++)
+        {
+            if (weights[i] < 0)
+            {
+                throw new IllegalArgumentException("Negative weight " + weights[i] + " at " + i);
+            }
+        }
+
+        final long limit = Long.MAX_VALUE / weights.length;
+        int shift = 0;
+        while (sumOfScaled(weights, shift) > limit)
+        {
+            shift++;
+        }
+        return shift;
+    }
+
+    private static long sumOfScaled(final long[] weights, final int shift)
+    {
+        long total = 0;
+        for (int i = 0; i < weights.length; i++)
+        {
+            total += scale(weights[i], shift);
+            if (total < 0)
+            {
+                return Long.MAX_VALUE;
+            }
+        }
+        return total;
+    }
+
+    private static long scale(final long weight, final int shift)
+    {
+        // never let a weight disappear completely
+        return weight > 0 ? Math.max(1, weight >>> shift) : 0;
+    }
+
+    /**
+     * Returns a random index weighted by the weights this table was built with
+     *
+     * @param r the random source to use
+     * @return an index into the original weights
+     */
+    public int next(final FastRandom r)
+    {
+        final int bucket = r.nextInt(threshold.length);
+        return select(bucket, r.nextLong(capacity));
+    }
+
+    /**
+     * The deterministic part of a draw, open for testing
+     *
+     * @param bucket the bucket drawn
+     * @param value a value in the range of 0 to capacity - 1
+     * @return the selected index
+     */
+    int select(final int bucket, final long value)
+    {
+        return value < threshold[bucket] ? bucket : alias[bucket];
+    }
+
+    /**
+     * Returns the number of entries
+     */
+    public int size()
+    {
+        return threshold.length;
+    }
+
+    /**
+     * Returns the capacity of each bucket, which is the total of all
+     * weights, scaled if needed
+     */
+    public long capacity()
+    {
+        return capacity;
+    }
+}
@@ -0,0 +1,156 @@
+package org.rschwietzke.markov;
+
+import java.util.Objects;
+
+/**
+ * A trainable Markov table with a hard memory ceiling. It keeps at most maxRows
+ * rows and maxCols cols per row, the most frequent ones, tracked with
+ * {@link SpaceSaving}. Rows and cols that are pushed out and come back get their
+ * count from a {@link CountMinSketch} over all transitions instead of the rough
+ * guess space saving alone would make.
+ * <p>
+ * Counts are estimates that are never too low, the error shrinks with the width of
+ * the sketches. Rare rows and cols are lost, that is the price for the ceiling.
+ * Freezing turns the kept entries into a regular table. Not thread-safe.
+ *
+ * @author rschwietzke
+ *
+ * @param <T>
+ * @param <S>
+ */
+public class BoundedMarkovTable<T, S>
+{
+    /**
+     * The default counters per sketch row, 1 MB per sketch with the default depth
+     */
+    public static final int DEFAULT_SKETCH_WIDTH = 1 << 15;
+
+    /**
+     * The default number of sketch rows
+     */
+    public static final int DEFAULT_SKETCH_DEPTH = 4;
+
+    public final int maxRows;
+    public final int maxCols;
+
+    // the kept rows, each carries its kept cols
+    private final SpaceSaving<T, SpaceSaving<S, Void>> rows;
+
+    // the counts of all rows and of all transitions
+    private final CountMinSketch rowSketch;
+    private final CountMinSketch colSketch;
+
+    // counts the total row usage
+    public long count = 0;
+
+    public BoundedMarkovTable(final int maxRows, final int maxCols)
+    {
+        this(maxRows, maxCols, DEFAULT_SKETCH_WIDTH, DEFAULT_SKETCH_DEPTH);
+    }
+
+    /**
+     * Creates a table
+     *
+     * @param maxRows the number of rows to keep at most
+     * @param maxCols the number of cols per row to keep at most
+     * @param sketchWidth the counters per sketch row
+     * @param sketchDepth the number of sketch rows
+     */
+    public BoundedMarkovTable(final int maxRows, final int maxCols, final int sketchWidth, final int sketchDepth)
+    {
+        this.maxRows = maxRows;
+        this.maxCols = maxCols;
+        this.rows = new SpaceSaving<>(maxRows);
+        this.rowSketch = new CountMinSketch(sketchWidth, sketchDepth);
+        this.colSketch = new CountMinSketch(sketchWidth, sketchDepth);
+    }
+
+    public BoundedMarkovTable<T, S> train(final T t, final S s)
+    {
+        count++;
+
+        final int rowHash = Objects.hashCode(t);
+        final var row = rows.offer(t, 1, rowSketch.add(rowHash, 1));
+        if (row.value == null)
+        {
+            row.value = new SpaceSaving<>(maxCols);
+        }
+
+        final long key = ((long) rowHash << 32) | (Objects.hashCode(s) & 0xFFFFFFFFL);
+        row.value.offer(s, 1, colSketch.add(key, 1));
+
+        return this;
+    }
+
+    /**
+     * Returns the number of kept rows
+     */
+    public int rowCount()
+    {
+        return rows.size();
+    }
+
+    /**
+     * Returns the estimated count of a kept transition
+     *
+     * @param t the row
+     * @param s the col
+     * @return the count or 0 when the transition is not kept
+     */
+    public long count(final T t, final S s)
+    {
+        final var row = rows.get(t);
+        if (row == null)
+        {
+            return 0;
+        }
+        final var col = row.value.get(s);
+        return col == null ? 0 : col.count;
+    }
+
+    /**
+     * Converts the kept entries into a regular table, the total is the sum of the
+     * kept rows
+     *
+     * @return a new table
+     */
+    public MarkovTable<T, S> toMarkovTable()
+    {
+        final var table = new MarkovTable<T, S>();
+
+        rows.forEach(row ->
+        {
+            final var columns = new MarkovTable.Columns<T, S>(row.key);
+            row.value.forEach(col ->
+            {
+                columns.add(col.key, col.count);
+            });
+
+            // the row estimate, not the sum of the kept cols
+            columns.count = row.count;
+
+            table.rows.put(row.key, columns);
+            table.count += row.count;
+        });
+
+        return table;
+    }
+
+    /**
+     * Freezes the kept entries, the intermediate table is consumed on the way
+     */
+    public TrainedMarkovTable<T, S> freeze()
+    {
+        return freeze(TrainedMarkovTable.Sampling.LINEAR);
+    }
+
+    /**
+     * Freezes the kept entries and uses the given way of sampling for the random access
+     *
+     * @param sampling how to draw rows and cols later on
+     */
+    public TrainedMarkovTable<T, S> freeze(final TrainedMarkovTable.Sampling sampling)
+    {
+        return toMarkovTable().freeze(FreezeOptions.DEFAULT.withSampling(sampling).withConsume(true));
+    }
+}
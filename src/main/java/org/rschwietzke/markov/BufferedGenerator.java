@@ -0,0 +1,282 @@
+package org.rschwietzke.markov;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * A generator that hands out pre-generated results from a ring buffer, so a call
+ * to {@link #generate()} is just a poll in the common case. A background producer
+ * fills the buffer up to the high water mark, sleeps and starts again as soon as
+ * consumers drained it down to the low water mark. When the buffer is empty, the
+ * caller generates synchronously with its own generator.
+ * <p>
+ * The buffer is lock-free, with one producer and any number of consumers. The
+ * producer owns the tail, consumers claim the head with a CAS. Generators are not
+ * thread-safe, hence the factory is asked for one per thread, the producer and
+ * each thread that falls back. Results are not reproducible for a seed anymore,
+ * because the order of consumers decides who gets what.
+ * <p>
+ * When the generator of the producer throws, the producer counts it, pauses
+ * briefly and goes on. The producer also drops the consumed results from the
+ * buffer, so nothing stale is kept from the garbage collector.
+ * <p>
+ * Close it to stop the producer, afterwards it keeps working synchronously.
+ *
+ * @author rschwietzke
+ *
+ * @param <R> the result type
+ */
+public class BufferedGenerator<R> implements Generator<R>, AutoCloseable
+{
+    /**
+     * How long the producer sleeps at most before it checks the level again,
+     * just a safety net, consumers wake it up
+     */
+    private static final long MAX_SLEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    public final int capacity;
+    public final int lowWaterMark;
+    public final int highWaterMark;
+
+    private final AtomicReferenceArray<R> slots;
+    private final int mask;
+
+    // the next slot to read, claimed by the consumers
+    private final AtomicLong head = new AtomicLong();
+
+    // the next slot to write, only the producer moves it
+    private final AtomicLong tail = new AtomicLong();
+
+    // for the synchronous fallback
+    private final ThreadLocal<Generator<R>> local;
+
+    private final Thread producer;
+    private volatile boolean running = true;
+    private volatile boolean sleeping = false;
+
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile RuntimeException lastFailure;
+
+    /**
+     * Creates a buffer that refills when it is down to a quarter
+     *
+     * @param factory creates a generator for each thread that generates
+     * @param capacity the size of the buffer, rounded up to a power of two
+     */
+    public BufferedGenerator(final Supplier<? extends Generator<R>> factory, final int capacity)
+    {
+        this(factory, capacity, capacity / 4, capacity);
+    }
+
+    /**
+     * Creates a buffer and starts the producer
+     *
+     * @param factory creates a generator for each thread that generates
+     * @param capacity the size of the buffer, rounded up to a power of two
+     * @param lowWaterMark the producer starts again when the buffer holds this much or less
+     * @param highWaterMark the producer stops when the buffer holds this much
+     */
+    public BufferedGenerator(
+                    final Supplier<? extends Generator<R>> factory,
+                    final int capacity,
+                    final int lowWaterMark,
+                    final int highWaterMark)
+    {
+        if (capacity < 1 || capacity > 1 << 30)
+        {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30 but was " + capacity);
+        }
+        if (lowWaterMark < 0 || lowWaterMark >= highWaterMark || highWaterMark > capacity)
+        {
+            throw new IllegalArgumentException("Water marks must be 0 <= low < high <= capacity but were "
+                            + lowWaterMark + " and " + highWaterMark);
+        }
+
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.lowWaterMark = lowWaterMark;
+        this.highWaterMark = highWaterMark;
+        this.slots = new AtomicReferenceArray<>(this.capacity);
+        this.local = ThreadLocal.withInitial(factory);
+
+        final Generator<R> generator = factory.get();
+        this.producer = new Thread(() -> produce(generator), "BufferedGenerator-producer");
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    /**
+     * Returns a buffered result or generates one right away when the buffer is empty
+     */
+    @Override
+    public R generate()
+    {
+        while (true)
+        {
+            final long h = head.get();
+            if (h >= tail.get())
+            {
+                // empty
+                fallbacks.increment();
+                wakeUp();
+                return local.get().generate();
+            }
+
+            // read first, the slot cannot be overwritten as long as the head is h
+            final R result = slots.get((int) h & mask);
+            if (head.compareAndSet(h, h + 1))
+            {
+                if (tail.get() - (h + 1) <= lowWaterMark)
+                {
+                    wakeUp();
+                }
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of buffered results, only an estimate under concurrency
+     */
+    public int size()
+    {
+        final long h = head.get();
+        return (int) Math.max(0, tail.get() - h);
+    }
+
+    /**
+     * Returns how often we had to generate synchronously
+     */
+    public long fallbackCount()
+    {
+        return fallbacks.sum();
+    }
+
+    /**
+     * Returns how often the generator of the producer threw
+     */
+    public long failureCount()
+    {
+        return failures.sum();
+    }
+
+    /**
+     * Returns what the generator of the producer threw last time or null
+     */
+    public RuntimeException lastFailure()
+    {
+        return lastFailure;
+    }
+
+    /**
+     * Returns the number of slots holding a result, consumed or not, for testing
+     */
+    int retained()
+    {
+        int retained = 0;
+        for (int i = 0; i < capacity; i++)
+        {
+            if (slots.get(i) != null)
+            {
+                retained++;
+            }
+        }
+        return retained;
+    }
+
+    /**
+     * Stops the producer and waits for it, generating keeps working synchronously
+     * with what is left in the buffer
+     */
+    @Override
+    public void close()
+    {
+        running = false;
+        LockSupport.unpark(producer);
+
+        try
+        {
+            producer.join(TimeUnit.SECONDS.toMillis(1));
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void wakeUp()
+    {
+        if (sleeping)
+        {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    /**
+     * The producer loop, fills up to the high water mark and sleeps until we
+     * are down to the low water mark again
+     */
+    private void produce(final Generator<R> generator)
+    {
+        long t = tail.get();
+        long cleared = t;
+        while (running)
+        {
+            final long h = head.get();
+            cleared = clear(h, t, cleared);
+
+            if (t - h < highWaterMark)
+            {
+                final R result;
+                try
+                {
+                    result = generator.generate();
+                }
+                catch (RuntimeException e)
+                {
+                    // keep producing, but do not spin on a generator that keeps failing
+                    failures.increment();
+                    lastFailure = e;
+                    LockSupport.parkNanos(this, MAX_SLEEP_NANOS);
+                    continue;
+                }
+
+                slots.set((int) t & mask, result);
+                tail.set(++t);
+                continue;
+            }
+
+            // full, announce the sleep first and check again, so no wake up is lost
+            sleeping = true;
+            long level;
+            while (running && t - (level = head.get()) > lowWaterMark)
+            {
+                cleared = clear(level, t, cleared);
+                LockSupport.parkNanos(this, MAX_SLEEP_NANOS);
+            }
+            sleeping = false;
+        }
+    }
+
+    /**
+     * Drops the consumed results between the last cleared slot and the head. Only
+     * the producer writes slots, so it never clears a new result, and a consumer
+     * that reads a cleared slot late fails its CAS, because the head moved on.
+     * Slots older than a lap were overwritten already.
+     *
+     * @return the new start of the slots to clear
+     */
+    private long clear(final long h, final long t, final long cleared)
+    {
+        for (long p = Math.max(cleared, t - capacity); p < h; p++)
+        {
+            slots.set((int) p & mask, null);
+        }
+        return Math.max(cleared, h);
+    }
+}
@@ -0,0 +1,439 @@
+package org.rschwietzke.markov;
+
+import java.util.Arrays;
+
+/**
+ * A Markov table specialized for chars following chars. Nothing is boxed, every
+ * row and every char gets a dense id when seen first and the counts are kept in
+ * primitive arrays. As long as rows and chars are few, the counts are a dense matrix
+ * of ids, when either grows beyond {@link #DENSE_LIMIT}, we switch to an open
+ * addressing map keyed by the id pair.
+ * <p>
+ * A row is not a single char but the context of the last {@link #order} chars,
+ * packed into a long with 16 bit per char, the latest char in the lowest bits.
+ * Order 1 is the classic char to char table, higher orders give much more
+ * natural results. Contexts shorter than the order, e.g. at the start of a word,
+ * are simply padded with zeros.
+ * <p>
+ * Not thread-safe, same as {@link MarkovTable}.
+ *
+ * @author rschwietzke
+ *
+ */
+public class CharMarkovTable
+{
+    /**
+     * Up to that many distinct rows and chars, we count in a dense matrix
+     */
+    public static final int DENSE_LIMIT = 64;
+
+    /**
+     * The longest context we can pack into a long
+     */
+    public static final int MAX_ORDER = 4;
+
+    /**
+     * How many chars make up the context of a row
+     */
+    public final int order;
+
+    // keeps only the last order chars of a context
+    private final long contextMask;
+
+    // context to row id + 1, so that 0 is unknown
+    private final LongLongMap rowIds = new LongLongMap();
+
+    // row id to context
+    private long[] rowKeys = new long[16];
+    private int rowCount = 0;
+
+    // counts per row id
+    private long[] rowCounts = new long[16];
+
+    // char to col id + 1, so that 0 is unknown
+    private int[] ids = new int[128];
+
+    // col id to char
+    private char[] symbols = new char[16];
+    private int symbolCount = 0;
+
+    // the dense counts as matrix of row id * stride + col id
+    private long[] dense = new long[16 * 16];
+    private int stride = 16;
+
+    // the counts by row id << 32 | col id when the matrix got too large
+    private LongLongMap sparse;
+
+    // counts the total row usage
+    public long count = 0;
+
+    /**
+     * Something to see all counted pairs
+     */
+    @FunctionalInterface
+    interface PairVisitor
+    {
+        public void accept(final int row, final int col, final long count);
+    }
+
+    /**
+     * Creates a classic char to char table
+     */
+    public CharMarkovTable()
+    {
+        this(1);
+    }
+
+    /**
+     * Creates a table where the last order chars determine the next one
+     *
+     * @param order the number of chars that make up the context, 1 to {@link #MAX_ORDER}
+     */
+    public CharMarkovTable(final int order)
+    {
+        if (order < 1 || order > MAX_ORDER)
+        {
+            throw new IllegalArgumentException("Order must be between 1 and " + MAX_ORDER + " but was " + order);
+        }
+
+        this.order = order;
+        this.contextMask = mask(order);
+    }
+
+    /**
+     * Returns the mask to keep only the last order chars of a context
+     */
+    static long mask(final int order)
+    {
+        return order == MAX_ORDER ? -1L : (1L << (16 * order)) - 1;
+    }
+
+    /**
+     * Appends a char to a context and drops the oldest char when needed
+     *
+     * @param context the current context
+     * @param c the char to append
+     * @return the new context
+     */
+    public long next(final long context, final char c)
+    {
+        return ((context << 16) | c) & contextMask;
+    }
+
+    /**
+     * Packs the last chars of the range into a context
+     *
+     * @param data the chars
+     * @param from the first char, inclusive
+     * @param to the last char, exclusive
+     * @return the context
+     */
+    public long context(final CharSequence data, final int from, final int to)
+    {
+        long context = 0;
+        for (int i = Math.max(from, to - order); i < to; i++)
+        {
+            context = next(context, data.charAt(i));
+        }
+        return context;
+    }
+
+    public CharMarkovTable train(final char t, final char s)
+    {
+        return train((long) t, s);
+    }
+
+    /**
+     * Trains a char following a context
+     *
+     * @param context the packed last chars
+     * @param s the char following
+     * @return this table
+     */
+    public CharMarkovTable train(final long context, final char s)
+    {
+        count++;
+
+        final int row = rowId(context);
+        final int col = id(s);
+
+        final long rowCount = ++rowCounts[row];
+
+        final long colCount;
+        if (sparse == null)
+        {
+            colCount = ++dense[row * stride + col];
+        }
+        else
+        {
+            colCount = sparse.add(pair(row, col), 1);
+        }
+
+        if (Metrics.ENABLED)
+        {
+            Metrics.trained(rowCount == 1, colCount == 1);
+        }
+
+        return this;
+    }
+
+    /**
+     * Trains all chars of the data following their context, the first chars
+     * will have a shorter context
+     *
+     * @param data the chars to train
+     * @return this table
+     */
+    public CharMarkovTable train(final CharSequence data)
+    {
+        long context = 0;
+        for (int i = 0; i < data.length() - 1; i++)
+        {
+            context = next(context, data.charAt(i));
+            train(context, data.charAt(i + 1));
+        }
+
+        return this;
+    }
+
+    /**
+     * Freezes the table and returns a fully usable and speedy version of this table
+     */
+    public TrainedCharMarkovTable freeze()
+    {
+        return new TrainedCharMarkovTable(this);
+    }
+
+    /**
+     * Returns how often s followed t
+     */
+    public long count(final char t, final char s)
+    {
+        return count((long) t, s);
+    }
+
+    /**
+     * Returns how often s followed the context
+     */
+    public long count(final long context, final char s)
+    {
+        final int row = lookupRow(context);
+        final int col = lookup(s);
+        if (row < 0 || col < 0)
+        {
+            return 0;
+        }
+
+        return sparse == null ? dense[row * stride + col] : sparse.get(pair(row, col));
+    }
+
+    /**
+     * Returns how often t has been seen as row
+     */
+    public long rowCount(final char t)
+    {
+        return rowCount((long) t);
+    }
+
+    /**
+     * Returns how often the context has been seen as row
+     */
+    public long rowCount(final long context)
+    {
+        final int row = lookupRow(context);
+        return row < 0 ? 0 : rowCounts[row];
+    }
+
+    /**
+     * Returns the number of distinct chars seen as col
+     */
+    public int symbolCount()
+    {
+        return symbolCount;
+    }
+
+    /**
+     * Returns the number of distinct rows
+     */
+    public int rowCount()
+    {
+        return rowCount;
+    }
+
+    /**
+     * Returns true when the counts are still kept as dense matrix
+     */
+    public boolean isDense()
+    {
+        return sparse == null;
+    }
+
+    /**
+     * Returns the char for a col id
+     */
+    char symbol(final int id)
+    {
+        return symbols[id];
+    }
+
+    /**
+     * Returns the context for a row id
+     */
+    long rowKey(final int id)
+    {
+        return rowKeys[id];
+    }
+
+    /**
+     * Returns the count of a row id
+     */
+    long rowCountById(final int id)
+    {
+        return rowCounts[id];
+    }
+
+    /**
+     * Visits all pairs with a count, in no particular order
+     */
+    void forEach(final PairVisitor visitor)
+    {
+        if (sparse == null)
+        {
+            // while growing, the latest id might not be in the matrix yet
+            final int rows = Math.min(rowCount, stride);
+            final int cols = Math.min(symbolCount, stride);
+            for (int row = 0; row < rows; row++)
+            {
+                final int offset = row * stride;
+                for (int col = 0; col < cols; col++)
+                {
+                    final long c = dense[offset + col];
+                    if (c > 0)
+                    {
+                        visitor.accept(row, col, c);
+                    }
+                }
+            }
+        }
+        else
+        {
+            sparse.forEach((k, v) -> visitor.accept((int) (k >>> 32), (int) k, v));
+        }
+    }
+
+    private static long pair(final int row, final int col)
+    {
+        return ((long) row << 32) | col;
+    }
+
+    /**
+     * Returns the col id of a char or -1 if unknown
+     */
+    private int lookup(final char c)
+    {
+        return c < ids.length ? ids[c] - 1 : -1;
+    }
+
+    /**
+     * Returns the row id of a context or -1 if unknown
+     */
+    private int lookupRow(final long context)
+    {
+        return (int) rowIds.get(context) - 1;
+    }
+
+    /**
+     * Returns the row id of a context and registers it when needed
+     */
+    private int rowId(final long context)
+    {
+        final long id = rowIds.get(context);
+        if (id != 0)
+        {
+            return (int) id - 1;
+        }
+
+        final int row = rowCount++;
+        if (row == rowKeys.length)
+        {
+            rowKeys = Arrays.copyOf(rowKeys, row * 2);
+            rowCounts = Arrays.copyOf(rowCounts, row * 2);
+        }
+        rowKeys[row] = context;
+        rowIds.add(context, row + 1);
+
+        if (sparse == null && rowCount > stride)
+        {
+            grow();
+        }
+
+        return row;
+    }
+
+    /**
+     * Returns the col id of a char and registers it when needed
+     */
+    private int id(final char c)
+    {
+        if (c < ids.length)
+        {
+            final int id = ids[c];
+            if (id != 0)
+            {
+                return id - 1;
+            }
+        }
+
+        return register(c);
+    }
+
+    private int register(final char c)
+    {
+        if (c >= ids.length)
+        {
+            ids = Arrays.copyOf(ids, Math.min(Character.MAX_VALUE + 1, Math.max(c + 1, ids.length * 2)));
+        }
+
+        final int id = symbolCount++;
+        if (id == symbols.length)
+        {
+            symbols = Arrays.copyOf(symbols, id * 2);
+        }
+        symbols[id] = c;
+        ids[c] = id + 1;
+
+        if (sparse == null && symbolCount > stride)
+        {
+            grow();
+        }
+
+        return id;
+    }
+
+    /**
+     * The matrix is too small, double it or move to the sparse version
+     */
+    private void grow()
+    {
+        final int newStride = stride * 2;
+
+        if (newStride <= DENSE_LIMIT)
+        {
+            final long[] newDense = new long[newStride * newStride];
+            for (int row = 0; row < stride; row++)
+            {
+                System.arraycopy(dense, row * stride, newDense, row * newStride, stride);
+            }
+            dense = newDense;
+            stride = newStride;
+        }
+        else
+        {
+            final var map = new LongLongMap(stride * 4);
+            forEach((row, col, c) -> map.add(pair(row, col), c));
+
+            sparse = map;
+            dense = null;
+        }
+    }
+}
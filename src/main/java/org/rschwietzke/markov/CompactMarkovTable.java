@@ -0,0 +1,390 @@
+package org.rschwietzke.markov;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Optional;
+
+import it.unimi.dsi.util.FastRandom;
+
+/**
+ * A frozen Markov table that keeps all its data in a few flat primitive arrays
+ * instead of row and col objects. All cols of all rows live back to back in one
+ * array of aggregated sums and one array of symbol ids, a row just knows where its
+ * cols start. The symbols themselves are stored only once in a shared array.
+ * <p>
+ * A draw is a binary search over the aggregated sums, so O(log n), and touches
+ * only consecutive memory. The rows are stored in the order of a
+ * {@link MinimalPerfectHash} over their keys, so finding a row costs a few bits per
+ * row and no map. The table is immutable and fit for concurrent use.
+ *
+ * @author rschwietzke
+ *
+ * @param <T>
+ * @param <S>
+ */
+public class CompactMarkovTable<T, S> implements SamplingTable<T, S>
+{
+    /**
+     * Returned by the int based lookups when a row does not exist
+     */
+    public static final int NOT_FOUND = -1;
+
+    /**
+     * The col symbols, each only once, the col data points into this by index
+     */
+    public final Object[] symbols;
+
+    /**
+     * The key of each row, in hash order when frozen from a {@link MarkovTable}
+     */
+    public final Object[] rowKeys;
+
+    /**
+     * The aggregated sums of the rows, the last one is the total
+     */
+    public final long[] rowSums;
+
+    /**
+     * Where the cols of a row start, has one more entry than rows to mark the end
+     */
+    public final int[] colStart;
+
+    /**
+     * The symbol ids of all cols, row after row
+     */
+    public final int[] colSymbols;
+
+    /**
+     * The aggregated sums of all cols, starting again for every row
+     */
+    public final long[] colSums;
+
+    // our quick access by T
+    private final RowIndex<T> rowIndex;
+
+    public CompactMarkovTable(final MarkovTable<T, S> src)
+    {
+        this(src, FreezeOptions.DEFAULT);
+    }
+
+    /**
+     * Freezes the table and drops what the options want to prune, the sampling of
+     * the options does not matter, we always search. The first pass decides per row
+     * what to keep and sizes the arrays, the second pass writes the kept cols straight
+     * into them, so no object per col is created. The cols of a row keep the order
+     * they were trained in. A consuming freeze releases each source row as soon as
+     * it is written.
+     *
+     * @param src the table to freeze
+     * @param options what to prune
+     */
+    public CompactMarkovTable(final MarkovTable<T, S> src, final FreezeOptions options)
+    {
+        // first pass, per kept row the smallest kept count and how many cols of
+        // exactly that count to drop still
+        final Object[] kept = new Object[src.rows.size()];
+        final long[] minCounts = new long[kept.length];
+        final int[] skips = new int[kept.length];
+        long[] counts = new long[16];
+        int rows = 0;
+        long cols = 0;
+
+        final var iterator = src.rows.values().iterator();
+        while (iterator.hasNext())
+        {
+            final var row = iterator.next();
+            final int size = row.columns.size();
+            if (counts.length < size)
+            {
+                counts = new long[Math.max(size, counts.length * 2)];
+            }
+            for (int i = 0; i < size; i++)
+            {
+                counts[i] = row.columns.value(i);
+            }
+            Arrays.sort(counts, 0, size);
+
+            final int from = options.keepRow(row.count) ? options.keepFrom(counts, size) : size;
+            if (from == size)
+            {
+                if (options.consume)
+                {
+                    iterator.remove();
+                }
+                continue;
+            }
+
+            // of equal counts, the ones trained last are kept, same as a stable sort
+            final long min = counts[from];
+            int ties = 0;
+            for (int i = from - 1; i >= 0 && counts[i] == min; i--)
+            {
+                ties++;
+            }
+
+            kept[rows] = row;
+            minCounts[rows] = min;
+            skips[rows] = ties;
+            rows++;
+            cols += size - from;
+        }
+
+        // the rows go in hash order, so the hash position is the row
+        final var hash = new MinimalPerfectHash(rows, i -> ((MarkovTable.Columns<?, ?>) kept[i]).type);
+        final int[] order = new int[rows];
+        for (int i = 0; i < rows; i++)
+        {
+            order[hash.index(((MarkovTable.Columns<?, ?>) kept[i]).type)] = i;
+        }
+
+        this.rowKeys = new Object[rows];
+        this.rowSums = new long[rows];
+        this.colStart = new int[rows + 1];
+        this.colSymbols = new int[Math.toIntExact(cols)];
+        this.colSums = new long[colSymbols.length];
+
+        // the symbol id + 1, 0 is absent
+        final var symbolIds = new ObjectLongMap<S>();
+        final var symbolList = new ArrayList<S>();
+
+        // second pass, write the kept cols
+        long rowTotal = 0;
+        int pos = 0;
+        for (int i = 0; i < rows; i++)
+        {
+            final int k = order[i];
+            @SuppressWarnings("unchecked")
+            final var row = (MarkovTable.Columns<T, S>) kept[k];
+            final long min = minCounts[k];
+            int skip = skips[k];
+
+            rowKeys[i] = row.type;
+            colStart[i] = pos;
+            long colTotal = 0;
+            for (int c = 0; c < row.columns.size(); c++)
+            {
+                final long count = row.columns.value(c);
+                if (count < min || (count == min && skip-- > 0))
+                {
+                    continue;
+                }
+
+                final S symbol = row.columns.key(c);
+                long id = symbolIds.get(symbol);
+                if (id == 0)
+                {
+                    symbolList.add(symbol);
+                    id = symbolIds.add(symbol, symbolList.size());
+                }
+
+                colTotal += count;
+                colSymbols[pos] = (int) id - 1;
+                colSums[pos] = colTotal;
+                pos++;
+            }
+
+            rowTotal += colTotal;
+            rowSums[i] = rowTotal;
+
+            if (options.consume)
+            {
+                src.rows.remove(row.type);
+            }
+        }
+        colStart[rows] = pos;
+
+        if (options.consume)
+        {
+            src.count = 0;
+        }
+
+        this.symbols = symbolList.toArray();
+        this.rowIndex = RowIndex.perfect(hash, rowKeys);
+    }
+
+    /**
+     * Takes over ready made arrays, nothing is copied
+     */
+    CompactMarkovTable(
+                    final Object[] symbols,
+                    final Object[] rowKeys,
+                    final long[] rowSums,
+                    final int[] colStart,
+                    final int[] colSymbols,
+                    final long[] colSums,
+                    final RowIndex<T> rowIndex)
+    {
+        this.symbols = symbols;
+        this.rowKeys = rowKeys;
+        this.rowSums = rowSums;
+        this.colStart = colStart;
+        this.colSymbols = colSymbols;
+        this.colSums = colSums;
+        this.rowIndex = rowIndex;
+    }
+
+    /**
+     * Returns a random T from a row
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public T randomRow(final FastRandom r)
+    {
+        return (T) rowKeys[randomRowId(r)];
+    }
+
+    /**
+     * Returns a random col for a t
+     */
+    @Override
+    public Optional<S> randomCol(final FastRandom r, final T t)
+    {
+        final int row = row(t);
+        if (row != NOT_FOUND)
+        {
+            return Optional.ofNullable(symbol(randomColId(r, row)));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns a random col for a t or the passed sentinel when t is unknown
+     */
+    @Override
+    public S randomCol(final FastRandom r, final T t, final S notFound)
+    {
+        final int row = row(t);
+        if (row != NOT_FOUND)
+        {
+            return symbol(randomColId(r, row));
+        }
+        return notFound;
+    }
+
+    /**
+     * Draws n cols of t at once, the row is looked up once and the random numbers
+     * are drawn in bulk
+     */
+    @Override
+    public int randomCol(final FastRandom r, final T t, final S[] out, final int n)
+    {
+        final int row = row(t);
+        if (row == NOT_FOUND)
+        {
+            return 0;
+        }
+
+        final int from = colStart[row];
+        final int to = colStart[row + 1];
+        final long[] values = Draws.buffer();
+        for (int done = 0; done < n; done += values.length)
+        {
+            final int count = Math.min(values.length, n - done);
+            r.fillLongs(values, count, colSums[to - 1]);
+            for (int i = 0; i < count; i++)
+            {
+                if (Metrics.ENABLED)
+                {
+                    Metrics.searched(to - from);
+                }
+                out[done + i] = symbol(colSymbols[search(colSums, from, to, values[i])]);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns the row index of t or {@link #NOT_FOUND}
+     */
+    public int row(final T t)
+    {
+        return rowIndex.row(t);
+    }
+
+    /**
+     * Returns the index of a random row
+     */
+    public int randomRowId(final FastRandom r)
+    {
+        final int rows = rowSums.length;
+        final long value = r.nextLong(rowSums[rows - 1]);
+
+        if (Metrics.ENABLED)
+        {
+            Metrics.searched(rows);
+        }
+        return search(rowSums, 0, rows, value);
+    }
+
+    /**
+     * Returns the symbol id of a random col of the row with the given index
+     */
+    public int randomColId(final FastRandom r, final int row)
+    {
+        final int from = colStart[row];
+        final int to = colStart[row + 1];
+        final long value = r.nextLong(colSums[to - 1]);
+
+        if (Metrics.ENABLED)
+        {
+            Metrics.searched(to - from);
+        }
+        return colSymbols[search(colSums, from, to, value)];
+    }
+
+    /**
+     * Returns the symbol for a symbol id
+     */
+    @SuppressWarnings("unchecked")
+    public S symbol(final int id)
+    {
+        return (S) symbols[id];
+    }
+
+    /**
+     * Returns the number of rows
+     */
+    public int rowCount()
+    {
+        return rowKeys.length;
+    }
+
+    /**
+     * Returns the number of cols of all rows
+     */
+    public int colCount()
+    {
+        return colSymbols.length;
+    }
+
+    /**
+     * Finds the first position in the range whose aggregated sum is larger than
+     * the value
+     *
+     * @param sums the aggregated sums
+     * @param from the first position, inclusive
+     * @param to the last position, exclusive
+     * @param value the value to look for, smaller than the last sum of the range
+     * @return the position
+     */
+    static int search(final long[] sums, final int from, final int to, final long value)
+    {
+        int low = from;
+        int high = to - 1;
+
+        while (low < high)
+        {
+            final int mid = (low + high) >>> 1;
+            if (sums[mid] > value)
+            {
+                high = mid;
+            }
+            else
+            {
+                low = mid + 1;
+            }
+        }
+
+        return low;
+    }
+}
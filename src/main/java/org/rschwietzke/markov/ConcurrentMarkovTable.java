@@ -0,0 +1,146 @@
+package org.rschwietzke.markov;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Markov table that can be trained by many threads at the same time. Rows and
+ * cols live in concurrent maps and each col counts with a {@link LongAdder}, so
+ * threads hitting the same transition don't fight over a single counter.
+ * <p>
+ * When training is done, {@link #freeze()} takes a snapshot of the counts and
+ * builds the same {@link TrainedMarkovTable} a {@link MarkovTable} would.
+ * <p>
+ * A snapshot taken while other threads still train is not a point in time. Each
+ * col count is read once, so it can contain a later training and miss an earlier
+ * one, and the total may differ from {@link #count()}. What it contains is still a
+ * valid table: the row counts are the sums of their col counts, and cols a
+ * concurrent training created but did not count yet are left out, as are rows
+ * without any counted col. Neither rows nor cols can be null.
+ *
+ * @author rschwietzke
+ *
+ * @param <T>
+ * @param <S>
+ */
+public class ConcurrentMarkovTable<T, S>
+{
+    public final ConcurrentHashMap<T, Columns<T, S>> rows = new ConcurrentHashMap<>();
+
+    // counts the total row usage, just for the statistics
+    private final LongAdder count = new LongAdder();
+
+    public ConcurrentMarkovTable<T, S> train(final T t, final S s)
+    {
+        count.increment();
+
+        // the get is cheaper than the compute when the row exists, which is
+        // the normal case
+        var row = rows.get(t);
+        if (row == null)
+        {
+            row = rows.computeIfAbsent(t, Columns::new);
+        }
+        row.record(s);
+
+        return this;
+    }
+
+    /**
+     * Returns the number of trained transitions so far
+     */
+    public long count()
+    {
+        return count.sum();
+    }
+
+    /**
+     * Copies the current counts into a regular, single threaded table, see the
+     * class comment for what that means while others still train
+     *
+     * @return a new table with the counts of this one
+     */
+    public MarkovTable<T, S> snapshot()
+    {
+        final var table = new MarkovTable<T, S>();
+
+        rows.forEach((t, row) ->
+        {
+            final var columns = new MarkovTable.Columns<T, S>(t);
+
+            // the sums are built from the cells to be consistent, even when
+            // someone trains in the meantime; a col can exist before its first
+            // increment, a count of 0 would break the sampling later on
+            row.columns.forEach((s, adder) ->
+            {
+                final long c = adder.sum();
+                if (c > 0)
+                {
+                    columns.add(s, c);
+                }
+            });
+
+            if (columns.count > 0)
+            {
+                table.rows.put(t, columns);
+                table.count += columns.count;
+            }
+        });
+
+        return table;
+    }
+
+    /**
+     * Freezes the table and returns a fully usable and speedy version of this table
+     */
+    public TrainedMarkovTable<T, S> freeze()
+    {
+        return snapshot().freeze();
+    }
+
+    /**
+     * Freezes the table and uses the given way of sampling for the random access
+     *
+     * @param sampling how to draw rows and cols later on
+     */
+    public TrainedMarkovTable<T, S> freeze(final TrainedMarkovTable.Sampling sampling)
+    {
+        return snapshot().freeze(sampling);
+    }
+
+    public static class Columns<T, S>
+    {
+        public final T type;
+
+        // counts how often each column is used
+        public final ConcurrentHashMap<S, LongAdder> columns = new ConcurrentHashMap<>();
+
+        public Columns(final T type)
+        {
+            this.type = type;
+        }
+
+        public void record(final S s)
+        {
+            var adder = columns.get(s);
+            if (adder == null)
+            {
+                adder = columns.computeIfAbsent(s, k -> new LongAdder());
+            }
+            adder.increment();
+        }
+
+        /**
+         * Returns how often this row has been used, this is a sum over all cols
+         */
+        public long count()
+        {
+            long total = 0;
+            for (var adder : columns.values())
+            {
+                total += adder.sum();
+            }
+            return total;
+        }
+    }
+}
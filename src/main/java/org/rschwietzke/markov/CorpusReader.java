@@ -0,0 +1,244 @@
+package org.rschwietzke.markov;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Reads a UTF-8 corpus line by line without creating a String per line. The bytes
+ * are read through a channel into a reused buffer and decoded incrementally into a
+ * reused char buffer. Lines are trimmed in place, blank lines and lines starting
+ * with # are skipped, everything else is handed over as a char sequence that is a
+ * view into the buffer. It is only valid during the callback, copy it if you need
+ * to keep it.
+ * <p>
+ * Lines longer than the buffer are fine, the char buffer grows when needed.
+ * Malformed UTF-8 raises an exception. Not thread-safe, but cheap to create.
+ *
+ * @author rschwietzke
+ *
+ */
+public class CorpusReader
+{
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final int bufferSize;
+
+    // the reused view of the current line
+    private final Line line = new Line();
+
+    public CorpusReader()
+    {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a reader with a buffer of the given size in bytes and chars
+     *
+     * @param bufferSize the buffer size, at least 16
+     */
+    public CorpusReader(final int bufferSize)
+    {
+        if (bufferSize < 16)
+        {
+            throw new IllegalArgumentException("Buffer size must be at least 16 but was " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Reads all lines of the file
+     *
+     * @param path the file to read
+     * @param consumer gets each line that is not blank or a comment
+     * @return the number of lines handed over
+     * @throws IOException when reading or decoding fails
+     */
+    public long read(final Path path, final Consumer<CharSequence> consumer) throws IOException
+    {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            return read(channel, consumer);
+        }
+    }
+
+    /**
+     * Reads all lines from the channel, the channel is not closed
+     *
+     * @param channel the source of the bytes
+     * @param consumer gets each line that is not blank or a comment
+     * @return the number of lines handed over
+     * @throws IOException when reading or decoding fails
+     */
+    public long read(final ReadableByteChannel channel, final Consumer<CharSequence> consumer) throws IOException
+    {
+        final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPORT)
+                        .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+        final ByteBuffer in = ByteBuffer.allocateDirect(bufferSize);
+        CharBuffer out = CharBuffer.allocate(bufferSize);
+
+        long count = 0;
+        boolean eof = false;
+        boolean flushing = false;
+        boolean done = false;
+        while (!done)
+        {
+            if (!eof)
+            {
+                eof = channel.read(in) < 0;
+            }
+
+            // decode what we have, at the end flush, both might need
+            // several rounds when the chars do not fit
+            CoderResult result;
+            if (!flushing)
+            {
+                in.flip();
+                result = decoder.decode(in, out, eof);
+                in.compact();
+                flushing = eof && result.isUnderflow();
+            }
+            else
+            {
+                result = CoderResult.UNDERFLOW;
+            }
+            if (flushing && result.isUnderflow())
+            {
+                result = decoder.flush(out);
+                done = result.isUnderflow();
+            }
+            if (result.isError())
+            {
+                result.throwException();
+            }
+
+            // hand over all complete lines, at the end also the last one
+            final int decoded = out.position();
+            out.flip();
+            count += lines(out, done, consumer);
+            out.compact();
+
+            // a line does not fit, so we need more room
+            if (result.isOverflow() && out.position() == decoded)
+            {
+                final CharBuffer larger = CharBuffer.allocate(out.capacity() * 2);
+                out.flip();
+                larger.put(out);
+                out = larger;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Hands over all complete lines and leaves the rest in the buffer
+     */
+    private long lines(final CharBuffer buffer, final boolean last, final Consumer<CharSequence> consumer)
+    {
+        final char[] chars = buffer.array();
+        final int offset = buffer.arrayOffset();
+        final int limit = offset + buffer.limit();
+
+        long count = 0;
+        int start = offset + buffer.position();
+        for (int i = start; i < limit; i++)
+        {
+            if (chars[i] == '\n')
+            {
+                count += line(chars, start, i, consumer);
+                start = i + 1;
+            }
+        }
+
+        if (last && start < limit)
+        {
+            count += line(chars, start, limit, consumer);
+            start = limit;
+        }
+
+        buffer.position(start - offset);
+        return count;
+    }
+
+    private int line(final char[] chars, final int from, final int to, final Consumer<CharSequence> consumer)
+    {
+        int start = from;
+        int end = to;
+
+        // same as trim, this takes care of \r too
+        while (start < end && chars[start] <= ' ')
+        {
+            start++;
+        }
+        while (end > start && chars[end - 1] <= ' ')
+        {
+            end--;
+        }
+
+        if (start == end || chars[start] == '#')
+        {
+            return 0;
+        }
+
+        line.set(chars, start, end);
+        consumer.accept(line);
+        return 1;
+    }
+
+    /**
+     * A reused view into the buffer
+     */
+    private static final class Line implements CharSequence
+    {
+        private char[] chars;
+        private int from;
+        private int length;
+
+        void set(final char[] chars, final int from, final int to)
+        {
+            this.chars = chars;
+            this.from = from;
+            this.length = to - from;
+        }
+
+        @Override
+        public int length()
+        {
+            return length;
+        }
+
+        @Override
+        public char charAt(final int index)
+        {
+            if (index < 0 || index >= length)
+            {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return chars[from + index];
+        }
+
+        @Override
+        public CharSequence subSequence(final int start, final int end)
+        {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString()
+        {
+            return new String(chars, from, length);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.rschwietzke.markov;
+
+import it.unimi.dsi.util.SplitMix64RandomGenerator;
+
+/**
+ * A count-min sketch, it counts any number of keys in a fixed amount of memory. The
+ * estimate of a key is never below its true count and exceeds it by at most
+ * 2 / width of the total with a probability of 1 - (1 / 2)^depth. We use the
+ * conservative update, only the counters that are too low are raised, which keeps
+ * the overestimation much smaller in practice.
+ * <p>
+ * Only positive deltas are supported. Not thread-safe.
+ *
+ * @author rschwietzke
+ *
+ */
+public class CountMinSketch
+{
+    private final long[] counts;
+    private final int width;
+    private final int depth;
+    private final int mask;
+
+    /**
+     * Creates a sketch
+     *
+     * @param width the counters per row, rounded up to a power of two
+     * @param depth the number of rows, 1 to 16
+     */
+    public CountMinSketch(final int width, final int depth)
+    {
+        if (width < 1 || width > 1 << 30)
+        {
+            throw new IllegalArgumentException("Width must be between 1 and 2^30 but was " + width);
+        }
+        if (depth < 1 || depth > 16)
+        {
+            throw new IllegalArgumentException("Depth must be between 1 and 16 but was " + depth);
+        }
+
+        this.width = width == 1 ? 1 : Integer.highestOneBit(width - 1) << 1;
+        this.depth = depth;
+        this.mask = this.width - 1;
+        this.counts = new long[this.width * depth];
+    }
+
+    /**
+     * Adds to the count of a key
+     *
+     * @param key the key
+     * @param delta what to add, at least 1
+     * @return the new estimate of the key
+     */
+    public long add(final long key, final long delta)
+    {
+        final long h = SplitMix64RandomGenerator.murmurHash3(key);
+        final int h1 = (int) h;
+        final int h2 = (int) (h >>> 32) | 1;
+
+        // first find the estimate
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++)
+        {
+            estimate = Math.min(estimate, counts[i * width + ((h1 + i * h2) & mask)]);
+        }
+
+        // raise only what is below the new estimate
+        final long target = estimate + delta;
+        for (int i = 0; i < depth; i++)
+        {
+            final int pos = i * width + ((h1 + i * h2) & mask);
+            if (counts[pos] < target)
+            {
+                counts[pos] = target;
+            }
+        }
+
+        return target;
+    }
+
+    /**
+     * Returns the estimated count of a key
+     *
+     * @param key the key
+     * @return the estimate, never below the true count
+     */
+    public long estimate(final long key)
+    {
+        final long h = SplitMix64RandomGenerator.murmurHash3(key);
+        final int h1 = (int) h;
+        final int h2 = (int) (h >>> 32) | 1;
+
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++)
+        {
+            estimate = Math.min(estimate, counts[i * width + ((h1 + i * h2) & mask)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Returns the number of counters per row
+     */
+    public int width()
+    {
+        return width;
+    }
+
+    /**
+     * Returns the number of rows
+     */
+    public int depth()
+    {
+        return depth;
+    }
+}
@@ -0,0 +1,36 @@
+package org.rschwietzke.markov;
+
+/**
+ * What the batch draws share, so that they never allocate per call
+ *
+ * @author rschwietzke
+ *
+ */
+final class Draws
+{
+    /**
+     * The random numbers a batch draw fetches at once
+     */
+    static final int BATCH_SIZE = 256;
+
+    /**
+     * A sentinel no table can ever hand out as col
+     */
+    static final Object NOT_FOUND = new Object();
+
+    // one buffer per thread for the bulk random numbers
+    private static final ThreadLocal<long[]> BUFFER = ThreadLocal.withInitial(() -> new long[BATCH_SIZE]);
+
+    private Draws()
+    {
+    }
+
+    /**
+     * Returns the buffer of this thread for random numbers, {@link #BATCH_SIZE} long.
+     * Fill and consume it before drawing anything else, it is shared by all tables.
+     */
+    static long[] buffer()
+    {
+        return BUFFER.get();
+    }
+}
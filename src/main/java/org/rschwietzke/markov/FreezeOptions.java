@@ -0,0 +1,232 @@
+package org.rschwietzke.markov;
+
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * How to freeze a table: the way of sampling and what to prune. Pruning drops the
+ * long tail of rarely seen transitions, which dominates the size of a table but
+ * barely changes what it generates. The kept cols of a row are summed up anew, so
+ * all aggregated sums stay correct.
+ * <p>
+ * Freezing can run in parallel on the common fork-join pool, which pays off for
+ * very large tables and yields the same table as the sequential build.
+ * <p>
+ * A consuming freeze empties the source table while it builds, each source row is
+ * released as soon as it is converted, so the peak memory stays close to the size
+ * of one model instead of two.
+ * <p>
+ * Pruned tables drop what they pruned, so they cannot be refreshed. A refreshable
+ * pruned table keeps the dropped counts to refresh from, which is a heap copy of
+ * the long tail pruning was meant to drop, so it only pays off when refreshing.
+ * <p>
+ * Immutable, each with method returns a new instance.
+ *
+ * @author rschwietzke
+ *
+ */
+public class FreezeOptions
+{
+    /**
+     * Linear sampling and no pruning, same as a plain freeze
+     */
+    public static final FreezeOptions DEFAULT = new FreezeOptions(TrainedMarkovTable.Sampling.LINEAR, 1, Integer.MAX_VALUE, 1.0d, 1, false, false, false);
+
+    /**
+     * How to draw rows and cols
+     */
+    public final TrainedMarkovTable.Sampling sampling;
+
+    /**
+     * Cols seen less often are dropped
+     */
+    public final long minCount;
+
+    /**
+     * The most frequent cols of a row we keep at most
+     */
+    public final int maxCols;
+
+    /**
+     * We keep the smallest set of the most frequent cols that covers this share of
+     * the row, 1.0 keeps all
+     */
+    public final double mass;
+
+    /**
+     * Rows seen less often are dropped
+     */
+    public final long minRowCount;
+
+    /**
+     * Converts, sorts and sums up rows in parallel
+     */
+    public final boolean parallel;
+
+    /**
+     * Removes the rows from the source table while freezing, the source is empty
+     * afterwards
+     */
+    public final boolean consume;
+
+    /**
+     * Keeps the counts pruning dropped, so a pruned table can be refreshed. Off by
+     * default, because this keeps the long tail on the heap for the lifetime of the
+     * table, about 24 bytes per pruned col and 150 bytes per pruned row, and so
+     * undoes most of the savings of pruning.
+     */
+    public final boolean refreshable;
+
+    private FreezeOptions(
+                    final TrainedMarkovTable.Sampling sampling,
+                    final long minCount,
+                    final int maxCols,
+                    final double mass,
+                    final long minRowCount,
+                    final boolean parallel,
+                    final boolean consume,
+                    final boolean refreshable)
+    {
+        if (maxCols < 1)
+        {
+            throw new IllegalArgumentException("We have to keep at least one col but maxCols was " + maxCols);
+        }
+        if (!(mass > 0.0d && mass <= 1.0d))
+        {
+            throw new IllegalArgumentException("Mass must be in (0, 1] but was " + mass);
+        }
+
+        this.sampling = sampling;
+        this.minCount = minCount;
+        this.maxCols = maxCols;
+        this.mass = mass;
+        this.minRowCount = minRowCount;
+        this.parallel = parallel;
+        this.consume = consume;
+        this.refreshable = refreshable;
+    }
+
+    public FreezeOptions withSampling(final TrainedMarkovTable.Sampling sampling)
+    {
+        return new FreezeOptions(sampling, minCount, maxCols, mass, minRowCount, parallel, consume, refreshable);
+    }
+
+    public FreezeOptions withMinCount(final long minCount)
+    {
+        return new FreezeOptions(sampling, minCount, maxCols, mass, minRowCount, parallel, consume, refreshable);
+    }
+
+    public FreezeOptions withMaxCols(final int maxCols)
+    {
+        return new FreezeOptions(sampling, minCount, maxCols, mass, minRowCount, parallel, consume, refreshable);
+    }
+
+    public FreezeOptions withMass(final double mass)
+    {
+        return new FreezeOptions(sampling, minCount, maxCols, mass, minRowCount, parallel, consume, refreshable);
+    }
+
+    public FreezeOptions withMinRowCount(final long minRowCount)
+    {
+        return new FreezeOptions(sampling, minCount, maxCols, mass, minRowCount, parallel, consume, refreshable);
+    }
+
+    public FreezeOptions withParallel(final boolean parallel)
+    {
+        return new FreezeOptions(sampling, minCount, maxCols, mass, minRowCount, parallel, consume, refreshable);
+    }
+
+    public FreezeOptions withConsume(final boolean consume)
+    {
+        return new FreezeOptions(sampling, minCount, maxCols, mass, minRowCount, parallel, consume, refreshable);
+    }
+
+    public FreezeOptions withRefreshable(final boolean refreshable)
+    {
+        return new FreezeOptions(sampling, minCount, maxCols, mass, minRowCount, parallel, consume, refreshable);
+    }
+
+    /**
+     * Returns if anything can be pruned at all, counts are at least 1
+     *
+     * @return true when rows or cols might be dropped
+     */
+    public boolean prunes()
+    {
+        return minCount > 1 || maxCols < Integer.MAX_VALUE || mass < 1.0d || minRowCount > 1;
+    }
+
+    /**
+     * Returns if a row is kept at all
+     *
+     * @param rowCount how often the row was seen
+     * @return true when the row is kept
+     */
+    public boolean keepRow(final long rowCount)
+    {
+        return rowCount >= minRowCount;
+    }
+
+    /**
+     * Applies the col pruning to the cols of a row, which are sorted by count in
+     * ascending order, so we always drop from the start.
+     *
+     * @param cols the cols of a row, sorted ascending by count
+     * @param count how to get the count of a col
+     * @return the index of the first col to keep, the size when none is kept
+     */
+    public <X> int keepFrom(final List<X> cols, final ToLongFunction<X> count)
+    {
+        final long[] counts = new long[cols.size()];
+        for (int i = 0; i < counts.length; i++)
+        {
+            counts[i] = count.applyAsLong(cols.get(i));
+        }
+        return keepFrom(counts, counts.length);
+    }
+
+    /**
+     * Same as {@link #keepFrom(List, ToLongFunction)} for the plain counts of a row
+     *
+     * @param counts the counts, sorted ascending
+     * @param size how many of the counts are used
+     * @return the index of the first col to keep, the size when none is kept
+     */
+    public int keepFrom(final long[] counts, final int size)
+    {
+        int from = Math.max(0, size - maxCols);
+        while (from < size && counts[from] < minCount)
+        {
+            from++;
+        }
+
+        if (mass < 1.0d)
+        {
+            long total = 0;
+            for (int i = 0; i < size; i++)
+            {
+                total += counts[i];
+            }
+
+            // take the most frequent ones until we have enough
+            final double needed = mass * total;
+            long sum = 0;
+            int i = size;
+            while (i > from && sum < needed)
+            {
+                sum += counts[--i];
+            }
+            from = i;
+        }
+
+        return from;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "FreezeOptions [sampling=" + sampling + ", minCount=" + minCount + ", maxCols=" + maxCols
+                        + ", mass=" + mass + ", minRowCount=" + minRowCount + ", parallel=" + parallel + ", consume=" + consume
+                        + ", refreshable=" + refreshable + "]";
+    }
+}
@@ -9,4 +9,18 @@ public interface Generator<R>
      */
     public R generate();
     
+    /**
+     * Fills the first n slots of the array with generated data, generators that
+     * can do better in bulk override it
+     * 
+     * @param out the array to fill
+     * @param n the number of results
+     */
+    public default void generate(final R[] out, final int n)
+    {
+        for (int i = 0; i < n; i++)
+        {
+            out[i] = generate();
+        }
+    }
 }
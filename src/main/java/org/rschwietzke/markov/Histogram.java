@@ -0,0 +1,164 @@
+package org.rschwietzke.markov;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative longs in the spirit of HdrHistogram. Values below
+ * 128 are counted exactly, larger ones in log-linear buckets, 64 per power of two,
+ * so any reported value is at most 1/64 off. The memory is fixed, about 30 KB, no
+ * matter how large the values get.
+ * <p>
+ * Thread-safe and lock-free, recording never allocates.
+ *
+ * @author rschwietzke
+ *
+ */
+public class Histogram
+{
+    // values below that are exact
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF = SUB_COUNT >>> 1;
+
+    // exact ones plus half a sub range for each shift from 1 to 57
+    private static final int SIZE = SUB_COUNT + (64 - SUB_BITS) * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SIZE);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a value, negative ones count as 0
+     */
+    public void record(final long value)
+    {
+        final long v = Math.max(0, value);
+
+        counts.incrementAndGet(index(v));
+        count.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    /**
+     * Returns the number of recorded values
+     */
+    public long count()
+    {
+        return count.sum();
+    }
+
+    /**
+     * Returns the sum of the recorded values, exact
+     */
+    public long sum()
+    {
+        return sum.sum();
+    }
+
+    /**
+     * Returns the largest recorded value, exact
+     */
+    public long max()
+    {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of the recorded values, exact, 0 when empty
+     */
+    public double mean()
+    {
+        final long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / (double) n;
+    }
+
+    /**
+     * Returns the value at the percentile, the highest value of its bucket but never
+     * more than the max
+     *
+     * @param percentile 0 to 100
+     * @return the value or 0 when empty
+     */
+    public long percentile(final double percentile)
+    {
+        final long n = count.sum();
+        if (n == 0)
+        {
+            return 0;
+        }
+
+        final long target = Math.max(1, (long) Math.ceil(percentile / 100.0d * n));
+        long seen = 0;
+        for (int i = 0; i < SIZE; i++)
+        {
+            seen += counts.get(i);
+            if (seen >= target)
+            {
+                return Math.min(highest(i), max());
+            }
+        }
+
+        // recorded while we counted
+        return max();
+    }
+
+    /**
+     * Forgets everything, not atomic with concurrent recording
+     */
+    public void reset()
+    {
+        for (int i = 0; i < SIZE; i++)
+        {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    /**
+     * The bucket of a value
+     */
+    static int index(final long v)
+    {
+        if (v < SUB_COUNT)
+        {
+            return (int) v;
+        }
+
+        // keep the top SUB_BITS bits, the first of them is always set
+        final int shift = 64 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        final int top = (int) (v >>> shift);
+
+        return SUB_COUNT + (shift - 1) * HALF + (top - HALF);
+    }
+
+    /**
+     * The highest value of a bucket
+     */
+    static long highest(final int index)
+    {
+        if (index < SUB_COUNT)
+        {
+            return index;
+        }
+
+        final int shift = (index - SUB_COUNT) / HALF + 1;
+        final long top = (index - SUB_COUNT) % HALF + HALF;
+
+        // the top of the last bucket would overflow
+        final long next = (top + 1) << shift;
+        return next <= 0 ? Long.MAX_VALUE : next - 1;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Histogram [count=" + count() + ", mean=" + mean() + ", p50=" + percentile(50) + ", p99=" + percentile(99)
+                        + ", max=" + max() + "]";
+    }
+}
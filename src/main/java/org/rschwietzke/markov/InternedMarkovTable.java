@@ -0,0 +1,247 @@
+package org.rschwietzke.markov;
+
+import java.util.Arrays;
+
+/**
+ * A trainable Markov table that interns rows and cols through {@link SymbolDictionary}s
+ * and counts nothing but int ids. A transition is a single long key in a
+ * {@link LongLongMap}, the row counts are a plain array indexed by id, so training a
+ * known pair hashes the two symbols once for the dictionary lookup and allocates
+ * nothing.
+ * <p>
+ * Dictionaries can be shared by several tables, a word chain can even use the same
+ * one for rows and cols. The frozen {@link CompactMarkovTable} keeps the dictionary
+ * ids as symbol ids and finds rows through the dictionary too. Not thread-safe, the
+ * dictionaries are.
+ *
+ * @author rschwietzke
+ *
+ * @param <T>
+ * @param <S>
+ */
+public class InternedMarkovTable<T, S>
+{
+    public final SymbolDictionary<T> rowSymbols;
+    public final SymbolDictionary<S> colSymbols;
+
+    // row id << 32 | col id to count
+    private final LongLongMap counts = new LongLongMap();
+
+    // the count of each row by id
+    private long[] rowCounts = new long[16];
+
+    // counts the total row usage
+    public long count = 0;
+
+    /**
+     * Creates a table with its own dictionaries
+     */
+    public InternedMarkovTable()
+    {
+        this(new SymbolDictionary<>(), new SymbolDictionary<>());
+    }
+
+    /**
+     * Creates a table on top of existing, maybe shared dictionaries
+     *
+     * @param rowSymbols the dictionary of the rows
+     * @param colSymbols the dictionary of the cols, can be the same as for the rows
+     */
+    public InternedMarkovTable(final SymbolDictionary<T> rowSymbols, final SymbolDictionary<S> colSymbols)
+    {
+        this.rowSymbols = rowSymbols;
+        this.colSymbols = colSymbols;
+    }
+
+    public InternedMarkovTable<T, S> train(final T t, final S s)
+    {
+        return trainIds(rowSymbols.id(t), colSymbols.id(s));
+    }
+
+    /**
+     * Trains ids that come from our dictionaries, named differently to avoid any
+     * mixup with train when T or S are Integer
+     *
+     * @param row the row id
+     * @param col the col id
+     * @return this table
+     */
+    public InternedMarkovTable<T, S> trainIds(final int row, final int col)
+    {
+        count++;
+
+        if (row >= rowCounts.length)
+        {
+            rowCounts = Arrays.copyOf(rowCounts, Math.max(row + 1, rowCounts.length * 2));
+        }
+        rowCounts[row]++;
+        counts.add(key(row, col), 1);
+
+        return this;
+    }
+
+    /**
+     * Returns how often s followed t
+     */
+    public long count(final T t, final S s)
+    {
+        final int row = rowSymbols.lookup(t);
+        final int col = colSymbols.lookup(s);
+        if (row == SymbolDictionary.NOT_FOUND || col == SymbolDictionary.NOT_FOUND)
+        {
+            return 0;
+        }
+        return counts.get(key(row, col));
+    }
+
+    /**
+     * Returns how often t was seen as row
+     */
+    public long rowCount(final T t)
+    {
+        final int row = rowSymbols.lookup(t);
+        return row >= 0 && row < rowCounts.length ? rowCounts[row] : 0;
+    }
+
+    /**
+     * Freezes the table, rows and cols are sorted ascending by count like in all
+     * other frozen tables. The symbol ids of the result are the ids of the col
+     * dictionary.
+     *
+     * @return the frozen table
+     */
+    public CompactMarkovTable<T, S> freeze()
+    {
+        // the rows we have, rarely used first
+        int rows = 0;
+        for (var c : rowCounts)
+        {
+            if (c > 0)
+            {
+                rows++;
+            }
+        }
+        final int[] rowIds = new int[rows];
+        final long[] rowSums = new long[rows];
+        for (int id = 0, i = 0; id < rowCounts.length; id++)
+        {
+            if (rowCounts[id] > 0)
+            {
+                rowIds[i] = id;
+                rowSums[i] = rowCounts[id];
+                i++;
+            }
+        }
+        sort(rowSums, rowIds, 0, rows);
+
+        final int[] positions = new int[rowCounts.length];
+        Arrays.fill(positions, CompactMarkovTable.NOT_FOUND);
+        for (int i = 0; i < rows; i++)
+        {
+            positions[rowIds[i]] = i;
+        }
+
+        // where the cols of each row start
+        final int[] colStart = new int[rows + 1];
+        counts.forEach((key, value) -> colStart[positions[(int) (key >>> 32)] + 1]++);
+        for (int i = 0; i < rows; i++)
+        {
+            colStart[i + 1] += colStart[i];
+        }
+
+        final int[] colIds = new int[counts.size()];
+        final long[] colSums = new long[counts.size()];
+        final int[] cursor = Arrays.copyOf(colStart, rows);
+        counts.forEach((key, value) ->
+        {
+            final int at = cursor[positions[(int) (key >>> 32)]]++;
+            colIds[at] = (int) key;
+            colSums[at] = value;
+        });
+
+        // sort and sum up each row and the rows
+        final Object[] rowKeys = new Object[rows];
+        long rowTotal = 0;
+        for (int i = 0; i < rows; i++)
+        {
+            sort(colSums, colIds, colStart[i], colStart[i + 1]);
+            for (int j = colStart[i] + 1; j < colStart[i + 1]; j++)
+            {
+                colSums[j] += colSums[j - 1];
+            }
+
+            rowKeys[i] = rowSymbols.symbol(rowIds[i]);
+            rowTotal += rowSums[i];
+            rowSums[i] = rowTotal;
+        }
+
+        return new CompactMarkovTable<T, S>(
+                        colSymbols.toArray(),
+                        rowKeys,
+                        rowSums,
+                        colStart,
+                        colIds,
+                        colSums,
+                        RowIndex.interned(rowSymbols, positions));
+    }
+
+    private static long key(final int row, final int col)
+    {
+        return ((long) row << 32) | (col & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Sorts the range ascending by key and moves the values along
+     */
+    static void sort(final long[] keys, final int[] values, final int from, final int to)
+    {
+        if (to - from < 16)
+        {
+            for (int i = from + 1; i < to; i++)
+            {
+                final long k = keys[i];
+                final int v = values[i];
+                int j = i - 1;
+                while (j >= from && keys[j] > k)
+                {
+                    keys[j + 1] = keys[j];
+                    values[j + 1] = values[j];
+                    j--;
+                }
+                keys[j + 1] = k;
+                values[j + 1] = v;
+            }
+            return;
+        }
+
+        final long pivot = keys[(from + to) >>> 1];
+        int i = from;
+        int j = to - 1;
+        while (i <= j)
+        {
+            while (keys[i] < pivot)
+            {
+                i++;
+            }
+            while (keys[j] > pivot)
+            {
+                j--;
+            }
+            if (i <= j)
+            {
+                final long k = keys[i];
+                keys[i] = keys[j];
+                keys[j] = k;
+
+                final int v = values[i];
+                values[i] = values[j];
+                values[j] = v;
+
+                i++;
+                j--;
+            }
+        }
+        sort(keys, values, from, j + 1);
+        sort(keys, values, i, to);
+    }
+}
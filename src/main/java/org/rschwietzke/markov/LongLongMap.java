@@ -0,0 +1,186 @@
+package org.rschwietzke.markov;
+
+import it.unimi.dsi.util.SplitMix64RandomGenerator;
+
+/**
+ * An open addressing hash map from long to long with linear probing. Keys and
+ * values live in two parallel arrays, so adding to a value neither boxes nor
+ * allocates any entry object. Absent keys have the value 0, hence this is
+ * meant for counting. Not thread-safe.
+ *
+ * @author rschwietzke
+ *
+ */
+public class LongLongMap
+{
+    // we use 0 as free marker, so the key 0 is kept aside
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    /**
+     * Something to see all entries
+     */
+    @FunctionalInterface
+    public interface Visitor
+    {
+        public void accept(final long key, final long value);
+    }
+
+    public LongLongMap()
+    {
+        this(16);
+    }
+
+    /**
+     * Creates the map big enough for the expected number of entries
+     *
+     * @param expected the number of entries to fit without resizing
+     */
+    public LongLongMap(final int expected)
+    {
+        final int capacity = capacity(expected);
+        this.keys = new long[capacity];
+        this.values = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * The power of two that keeps us below a load of 3/4
+     */
+    static int capacity(final int expected)
+    {
+        final long needed = Math.max(2L, (long) Math.ceil(expected / 0.75d));
+        if (needed > 1 << 30)
+        {
+            throw new IllegalArgumentException("Too many entries " + expected);
+        }
+        return Integer.highestOneBit((int) needed - 1) << 1;
+    }
+
+    static int hash(final long key)
+    {
+        final long h = SplitMix64RandomGenerator.murmurHash3(key);
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Adds the delta to the value of the key
+     *
+     * @param key the key
+     * @param delta what to add
+     * @return the new value
+     */
+    public long add(final long key, final long delta)
+    {
+        if (key == 0)
+        {
+            if (!hasZeroKey)
+            {
+                hasZeroKey = true;
+                size++;
+            }
+            return zeroValue += delta;
+        }
+
+        int pos = hash(key) & mask;
+        long k;
+        while ((k = keys[pos]) != 0)
+        {
+            if (k == key)
+            {
+                return values[pos] += delta;
+            }
+            pos = (pos + 1) & mask;
+        }
+
+        keys[pos] = key;
+        values[pos] = delta;
+        if (++size > (mask + 1) * 3 / 4)
+        {
+            rehash((mask + 1) << 1);
+        }
+
+        return delta;
+    }
+
+    /**
+     * Returns the value of the key or 0 if it does not exist
+     */
+    public long get(final long key)
+    {
+        if (key == 0)
+        {
+            return zeroValue;
+        }
+
+        int pos = hash(key) & mask;
+        long k;
+        while ((k = keys[pos]) != 0)
+        {
+            if (k == key)
+            {
+                return values[pos];
+            }
+            pos = (pos + 1) & mask;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Returns the number of keys
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Visits all entries in no particular order
+     */
+    public void forEach(final Visitor visitor)
+    {
+        if (hasZeroKey)
+        {
+            visitor.accept(0, zeroValue);
+        }
+
+        for (int i = 0; i < keys.length; i++)
+        {
+            if (keys[i] != 0)
+            {
+                visitor.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    private void rehash(final int capacity)
+    {
+        final long[] oldKeys = keys;
+        final long[] oldValues = values;
+
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            final long key = oldKeys[i];
+            if (key != 0)
+            {
+                int pos = hash(key) & mask;
+                while (keys[pos] != 0)
+                {
+                    pos = (pos + 1) & mask;
+                }
+                keys[pos] = key;
+                values[pos] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,632 @@
+package org.rschwietzke.markov;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import it.unimi.dsi.util.FastRandom;
+
+/**
+ * A frozen Markov table that samples directly from a memory mapped file. Only the
+ * symbol dictionaries are read into objects when the file is opened, the aggregated
+ * sums, symbol ids and the bits of the row index stay in the mapped file and are
+ * paged in by the OS when needed. Several JVMs opening the same file share the same
+ * pages.
+ * <p>
+ * The file is written from a {@link CompactMarkovTable} and has the same layout,
+ * big endian, the rows in the order of a {@link MinimalPerfectHash} over their keys:
+ * <pre>
+ * header       magic, version, row count, col count, section offsets, file length
+ * row keys     count, then per row a present flag and the key
+ * symbols      count, then per symbol a present flag and the symbol
+ * index        level count, fallback count, word count, the size of each level
+ *              in bits, the row of each fallback key, then 8 byte aligned a long
+ *              of bits and an int of ranks per word
+ * rowSums      long per row
+ * colStart     int per row + 1
+ * colSymbols   int per col
+ * colSums      long per col
+ * </pre>
+ * Sections start 8 byte aligned. Each array section must stay below 2 GB. The index
+ * is the {@link MinimalPerfectHash} of the keys, so the row keys need a hash code that
+ * does not change between runs, such as strings and numbers have.
+ *
+ * @author rschwietzke
+ *
+ * @param <T>
+ * @param <S>
+ */
+public class MappedMarkovTable<T, S> implements SamplingTable<T, S>
+{
+    /**
+     * MKVT
+     */
+    public static final int MAGIC = 0x4D4B5654;
+
+    /**
+     * The current version of the format
+     */
+    public static final int VERSION = 2;
+
+    // magic, version, rows, cols and 8 longs with offsets and the length
+    static final int HEADER_SIZE = 4 * 4 + 8 * 8;
+
+    // level count, fallback count and word count of the index
+    private static final int INDEX_HEADER_SIZE = 3 * 4;
+
+    // more levels than the hash ever builds
+    private static final int MAX_LEVELS = 64;
+
+    private final Object[] rowKeys;
+    private final Object[] symbols;
+
+    private final LongBuffer rowSums;
+    private final IntBuffer colStart;
+    private final IntBuffer colSymbols;
+    private final LongBuffer colSums;
+
+    // the rows are in hash order
+    private final RowIndex<T> rowIndex;
+
+    private MappedMarkovTable(
+                    final Object[] rowKeys,
+                    final Object[] symbols,
+                    final LongBuffer rowSums,
+                    final IntBuffer colStart,
+                    final IntBuffer colSymbols,
+                    final LongBuffer colSums,
+                    final MinimalPerfectHash hash)
+    {
+        this.rowKeys = rowKeys;
+        this.symbols = symbols;
+        this.rowSums = rowSums;
+        this.colStart = colStart;
+        this.colSymbols = colSymbols;
+        this.colSums = colSums;
+        this.rowIndex = RowIndex.perfect(hash, rowKeys);
+    }
+
+    /**
+     * Writes the table to a file, an existing file is replaced. The rows are written
+     * in hash order, the order of the table is kept if it is already that.
+     *
+     * @param table the table to write
+     * @param path where to write to
+     * @param rowCodec how to write the row keys
+     * @param colCodec how to write the col symbols
+     * @throws IOException when writing fails
+     */
+    public static <T, S> void write(
+                    final CompactMarkovTable<T, S> table,
+                    final Path path,
+                    final SymbolCodec<T> rowCodec,
+                    final SymbolCodec<S> colCodec) throws IOException
+    {
+        final int rows = table.rowCount();
+        final int cols = table.colCount();
+
+        final var hash = new MinimalPerfectHash(table.rowKeys);
+        final int[] order = RowIndex.hashOrder(hash, table.rowKeys);
+        final Object[] rowKeys = new Object[rows];
+        for (int i = 0; i < rows; i++)
+        {
+            rowKeys[i] = table.rowKeys[order[i]];
+        }
+
+        final byte[] rowDictionary = dictionary(rowKeys, rowCodec);
+        final byte[] symbolDictionary = dictionary(table.symbols, colCodec);
+
+        final int[] levelSizes = hash.levelSizes();
+        final int[] fallback = hash.fallback().values().stream().mapToInt(Integer::intValue).sorted().toArray();
+        final LongBuffer bits = hash.bits();
+        final IntBuffer ranks = hash.ranks();
+        final int words = bits.capacity();
+
+        final long rowKeysOffset = HEADER_SIZE;
+        final long symbolsOffset = align(rowKeysOffset + rowDictionary.length);
+        final long indexOffset = align(symbolsOffset + symbolDictionary.length);
+        final long bitsOffset = bitsOffset(indexOffset, levelSizes.length, fallback.length);
+        final long rowSumsOffset = align(bitsOffset + 12L * words);
+        final long colStartOffset = rowSumsOffset + 8L * rows;
+        final long colSymbolsOffset = align(colStartOffset + 4L * (rows + 1L));
+        final long colSumsOffset = align(colSymbolsOffset + 4L * cols);
+        final long length = colSumsOffset + 8L * cols;
+
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024)))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(rows);
+            out.writeInt(cols);
+            out.writeLong(rowKeysOffset);
+            out.writeLong(symbolsOffset);
+            out.writeLong(indexOffset);
+            out.writeLong(rowSumsOffset);
+            out.writeLong(colStartOffset);
+            out.writeLong(colSymbolsOffset);
+            out.writeLong(colSumsOffset);
+            out.writeLong(length);
+
+            out.write(rowDictionary);
+            pad(out, rowKeysOffset + rowDictionary.length, symbolsOffset);
+            out.write(symbolDictionary);
+            pad(out, symbolsOffset + symbolDictionary.length, indexOffset);
+
+            out.writeInt(levelSizes.length);
+            out.writeInt(fallback.length);
+            out.writeInt(words);
+            for (final int size : levelSizes)
+            {
+                out.writeInt(size);
+            }
+            for (final int row : fallback)
+            {
+                out.writeInt(row);
+            }
+            pad(out, indexOffset + INDEX_HEADER_SIZE + 4L * (levelSizes.length + fallback.length), bitsOffset);
+            for (int w = 0; w < words; w++)
+            {
+                out.writeLong(bits.get(w));
+            }
+            for (int w = 0; w < words; w++)
+            {
+                out.writeInt(ranks.get(w));
+            }
+            pad(out, bitsOffset + 12L * words, rowSumsOffset);
+
+            long rowTotal = 0;
+            for (final int row : order)
+            {
+                rowTotal += table.rowSums[row] - (row == 0 ? 0 : table.rowSums[row - 1]);
+                out.writeLong(rowTotal);
+            }
+
+            int pos = 0;
+            for (final int row : order)
+            {
+                out.writeInt(pos);
+                pos += table.colStart[row + 1] - table.colStart[row];
+            }
+            out.writeInt(pos);
+            pad(out, colStartOffset + 4L * (rows + 1L), colSymbolsOffset);
+
+            for (final int row : order)
+            {
+                for (int c = table.colStart[row]; c < table.colStart[row + 1]; c++)
+                {
+                    out.writeInt(table.colSymbols[c]);
+                }
+            }
+            pad(out, colSymbolsOffset + 4L * cols, colSumsOffset);
+
+            for (final int row : order)
+            {
+                for (int c = table.colStart[row]; c < table.colStart[row + 1]; c++)
+                {
+                    out.writeLong(table.colSums[c]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens a table file. The file can be closed right after, the mapping stays valid.
+     *
+     * @param path the file to open
+     * @param rowCodec how to read the row keys
+     * @param colCodec how to read the col symbols
+     * @return the table
+     * @throws IOException when the file cannot be read or is not a table file
+     */
+    public static <T, S> MappedMarkovTable<T, S> open(
+                    final Path path,
+                    final SymbolCodec<T> rowCodec,
+                    final SymbolCodec<S> colCodec) throws IOException
+    {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            final var header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+
+            if (header.getInt() != MAGIC)
+            {
+                throw new IOException("Not a Markov table file: " + path);
+            }
+            final int version = header.getInt();
+            if (version != VERSION)
+            {
+                throw new IOException("Unsupported version " + version + " of " + path);
+            }
+
+            final int rows = header.getInt();
+            final int cols = header.getInt();
+            final long rowKeysOffset = header.getLong();
+            final long symbolsOffset = header.getLong();
+            final long indexOffset = header.getLong();
+            final long rowSumsOffset = header.getLong();
+            final long colStartOffset = header.getLong();
+            final long colSymbolsOffset = header.getLong();
+            final long colSumsOffset = header.getLong();
+            final long length = header.getLong();
+
+            // every section has to fit between its start and the next one
+            check(rows >= 0 && cols >= 0, "Negative row or col count", path);
+            check(length <= channel.size(), "Truncated Markov table file", path);
+            check(HEADER_SIZE <= rowKeysOffset
+                            && rowKeysOffset <= symbolsOffset
+                            && symbolsOffset <= indexOffset
+                            && indexOffset + INDEX_HEADER_SIZE <= rowSumsOffset
+                            && rowSumsOffset + 8L * rows <= colStartOffset
+                            && colStartOffset + 4L * (rows + 1L) <= colSymbolsOffset
+                            && colSymbolsOffset + 4L * cols <= colSumsOffset
+                            && colSumsOffset + 8L * cols <= length,
+                            "Sections out of bounds", path);
+
+            final Object[] rowKeys = readDictionary(channel, rowKeysOffset, symbolsOffset, rowCodec);
+            final Object[] symbols = readDictionary(channel, symbolsOffset, indexOffset, colCodec);
+            check(rowKeys.length == rows, "Row dictionary does not match the row count", path);
+
+            return new MappedMarkovTable<T, S>(
+                            rowKeys,
+                            symbols,
+                            map(channel, rowSumsOffset, 8L * rows).asLongBuffer(),
+                            map(channel, colStartOffset, 4L * (rows + 1L)).asIntBuffer(),
+                            map(channel, colSymbolsOffset, 4L * cols).asIntBuffer(),
+                            map(channel, colSumsOffset, 8L * cols).asLongBuffer(),
+                            readIndex(channel, indexOffset, rowSumsOffset, rowKeys, path));
+        }
+    }
+
+    /**
+     * Maps the bits of the row index, only the level sizes and the few fallback keys
+     * go onto the heap
+     */
+    private static MinimalPerfectHash readIndex(
+                    final FileChannel channel,
+                    final long from,
+                    final long to,
+                    final Object[] rowKeys,
+                    final Path path) throws IOException
+    {
+        final var counts = ByteBuffer.allocate(INDEX_HEADER_SIZE);
+        readFully(channel, counts, from);
+        counts.flip();
+
+        final int levels = counts.getInt();
+        final int fallbacks = counts.getInt();
+        final int words = counts.getInt();
+        check(levels >= 0 && levels <= MAX_LEVELS && fallbacks >= 0 && fallbacks <= rowKeys.length && words >= 0,
+                        "Invalid row index", path);
+
+        final long bitsOffset = bitsOffset(from, levels, fallbacks);
+        check(bitsOffset + 12L * words <= to, "Row index out of bounds", path);
+
+        final var data = ByteBuffer.allocate(4 * (levels + fallbacks));
+        readFully(channel, data, from + INDEX_HEADER_SIZE);
+        data.flip();
+
+        final int[] levelSizes = new int[levels];
+        long levelWords = 0;
+        for (int l = 0; l < levels; l++)
+        {
+            levelSizes[l] = data.getInt();
+            check(levelSizes[l] > 0 && (levelSizes[l] & 63) == 0, "Invalid row index level", path);
+            levelWords += levelSizes[l] >>> 6;
+        }
+        check(levelWords == words, "Row index levels do not match its words", path);
+
+        final Map<Object, Integer> fallback = new HashMap<>();
+        for (int i = 0; i < fallbacks; i++)
+        {
+            final int row = data.getInt();
+            check(row >= 0 && row < rowKeys.length, "Invalid row index fallback", path);
+            fallback.put(rowKeys[row], row);
+        }
+
+        final LongBuffer bits = map(channel, bitsOffset, 8L * words).asLongBuffer();
+        final IntBuffer ranks = map(channel, bitsOffset + 8L * words, 4L * words).asIntBuffer();
+
+        // the bits and the fallback together have to cover all rows
+        final long placed = words == 0 ? 0 : ranks.get(words - 1) + Long.bitCount(bits.get(words - 1));
+        check(placed + fallbacks == rowKeys.length, "Row index does not match the row count", path);
+
+        return new MinimalPerfectHash(rowKeys.length, levelSizes, bits, ranks, fallback);
+    }
+
+    /**
+     * Returns a random T from a row
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public T randomRow(final FastRandom r)
+    {
+        return (T) rowKeys[randomRowId(r)];
+    }
+
+    /**
+     * Returns a random col for a t
+     */
+    @Override
+    public Optional<S> randomCol(final FastRandom r, final T t)
+    {
+        final int row = row(t);
+        if (row != CompactMarkovTable.NOT_FOUND)
+        {
+            return Optional.ofNullable(symbol(randomColId(r, row)));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns a random col for a t or the passed sentinel when t is unknown
+     */
+    @Override
+    public S randomCol(final FastRandom r, final T t, final S notFound)
+    {
+        final int row = row(t);
+        if (row != CompactMarkovTable.NOT_FOUND)
+        {
+            return symbol(randomColId(r, row));
+        }
+        return notFound;
+    }
+
+    /**
+     * Draws n cols of t at once, the row is looked up once and the random numbers
+     * are drawn in bulk
+     */
+    @Override
+    public int randomCol(final FastRandom r, final T t, final S[] out, final int n)
+    {
+        final int row = row(t);
+        if (row == CompactMarkovTable.NOT_FOUND)
+        {
+            return 0;
+        }
+        return randomCols(r, colStart.get(row), colStart.get(row + 1), colSymbols, colSums, symbols, out, n);
+    }
+
+    /**
+     * Returns the row index of t or {@link CompactMarkovTable#NOT_FOUND}
+     */
+    public int row(final T t)
+    {
+        return rowIndex.row(t);
+    }
+
+    /**
+     * Returns the index of a random row
+     */
+    public int randomRowId(final FastRandom r)
+    {
+        final int rows = rowKeys.length;
+        final long value = r.nextLong(rowSums.get(rows - 1));
+
+        if (Metrics.ENABLED)
+        {
+            Metrics.searched(rows);
+        }
+        return search(rowSums, 0, rows, value);
+    }
+
+    /**
+     * Returns the symbol id of a random col of the row with the given index
+     */
+    public int randomColId(final FastRandom r, final int row)
+    {
+        final int from = colStart.get(row);
+        final int to = colStart.get(row + 1);
+        final long value = r.nextLong(colSums.get(to - 1));
+
+        if (Metrics.ENABLED)
+        {
+            Metrics.searched(to - from);
+        }
+        return colSymbols.get(search(colSums, from, to, value));
+    }
+
+    /**
+     * Returns the symbol for a symbol id
+     */
+    @SuppressWarnings("unchecked")
+    public S symbol(final int id)
+    {
+        return (S) symbols[id];
+    }
+
+    /**
+     * Returns the number of rows
+     */
+    public int rowCount()
+    {
+        return rowKeys.length;
+    }
+
+    /**
+     * Returns the number of cols of all rows
+     */
+    public int colCount()
+    {
+        return colSymbols.capacity();
+    }
+
+    /**
+     * The bulk draw of {@link CompactMarkovTable} on buffers, the random numbers of
+     * up to {@link Draws#BATCH_SIZE} cols are fetched at once
+     *
+     * @param r the random source
+     * @param from the first col of the row
+     * @param to behind the last col of the row
+     * @param colSymbols the symbol ids of all cols
+     * @param colSums the aggregated sums of all cols
+     * @param symbols the symbols by id
+     * @param out where to put the cols
+     * @param n the number of cols to draw
+     * @return n
+     */
+    @SuppressWarnings("unchecked")
+    static <S> int randomCols(
+                    final FastRandom r,
+                    final int from,
+                    final int to,
+                    final IntBuffer colSymbols,
+                    final LongBuffer colSums,
+                    final Object[] symbols,
+                    final S[] out,
+                    final int n)
+    {
+        final long total = colSums.get(to - 1);
+        final long[] values = Draws.buffer();
+        for (int done = 0; done < n; done += values.length)
+        {
+            final int count = Math.min(values.length, n - done);
+            r.fillLongs(values, count, total);
+            for (int i = 0; i < count; i++)
+            {
+                if (Metrics.ENABLED)
+                {
+                    Metrics.searched(to - from);
+                }
+                out[done + i] = (S) symbols[colSymbols.get(search(colSums, from, to, values[i]))];
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Same as {@link CompactMarkovTable#search(long[], int, int, long)} but on a buffer
+     */
+    static int search(final LongBuffer sums, final int from, final int to, final long value)
+    {
+        int low = from;
+        int high = to - 1;
+
+        while (low < high)
+        {
+            final int mid = (low + high) >>> 1;
+            if (sums.get(mid) > value)
+            {
+                high = mid;
+            }
+            else
+            {
+                low = mid + 1;
+            }
+        }
+
+        return low;
+    }
+
+    private static long align(final long offset)
+    {
+        return (offset + 7) & ~7L;
+    }
+
+    /**
+     * Where the bits of the index start, behind the level sizes and fallback rows
+     */
+    private static long bitsOffset(final long indexOffset, final int levels, final int fallbacks)
+    {
+        return align(indexOffset + INDEX_HEADER_SIZE + 4L * (levels + fallbacks));
+    }
+
+    private static void check(final boolean valid, final String message, final Path path) throws IOException
+    {
+        if (valid == false)
+        {
+            throw new IOException(message + ": " + path);
+        }
+    }
+
+    private static void pad(final DataOutputStream out, final long from, final long to) throws IOException
+    {
+        for (long i = from; i < to; i++)
+        {
+            out.write(0);
+        }
+    }
+
+    private static <X> byte[] dictionary(final Object[] symbols, final SymbolCodec<X> codec) throws IOException
+    {
+        final var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes))
+        {
+            out.writeInt(symbols.length);
+            for (var symbol : symbols)
+            {
+                out.writeBoolean(symbol != null);
+                if (symbol != null)
+                {
+                    @SuppressWarnings("unchecked")
+                    final X x = (X) symbol;
+                    codec.write(out, x);
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static <X> Object[] readDictionary(
+                    final FileChannel channel,
+                    final long from,
+                    final long to,
+                    final SymbolCodec<X> codec) throws IOException
+    {
+        final var buffer = ByteBuffer.allocate(Math.toIntExact(to - from));
+        readFully(channel, buffer, from);
+
+        try (var in = new DataInputStream(new ByteArrayInputStream(buffer.array())))
+        {
+            final int count = in.readInt();
+            if (count < 0 || count > buffer.capacity())
+            {
+                throw new IOException("Invalid dictionary size " + count + " at " + from);
+            }
+            final Object[] symbols = new Object[count];
+            for (int i = 0; i < symbols.length; i++)
+            {
+                symbols[i] = in.readBoolean() ? codec.read(in) : null;
+            }
+            return symbols;
+        }
+    }
+
+    private static ByteBuffer map(final FileChannel channel, final long offset, final long size) throws IOException
+    {
+        if (size > Integer.MAX_VALUE)
+        {
+            throw new IOException("Section of " + size + " bytes is too large to be mapped");
+        }
+        return channel.map(MapMode.READ_ONLY, offset, size);
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long offset) throws IOException
+    {
+        long position = offset;
+        while (buffer.hasRemaining())
+        {
+            final int n = channel.read(buffer, position);
+            if (n < 0)
+            {
+                throw new EOFException("Unexpected end of file at " + position);
+            }
+            position += n;
+        }
+    }
+}
@@ -1,16 +1,21 @@
 package org.rschwietzke.markov;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 
 /**
+ * The trainable Markov table. Tables can be merged, so shards can be trained 
+ * independently, even on other machines when serialized, and combined later.
  * 
  * @author rschwietzke
  *
  */
-public class MarkovTable<T, S>
+public class MarkovTable<T, S> implements Serializable
 {
+    private static final long serialVersionUID = 1L;
+
     public final Map<T, Columns<T, S>> rows = new HashMap<>();
 
     // counts the total row usage
@@ -20,15 +25,44 @@ public class MarkovTable<T, S>
     {
         count++;
         
-        rows.compute(t, (k, v) -> 
+        // no compute, a capturing lambda per call is more than the counting costs
+        var row = rows.get(t);
+        if (row == null)
+        {
+            row = new Columns<T, S>(t);
+            rows.put(t, row);
+        }
+        row.record(s);
+        
+        if (Metrics.ENABLED)
+        {
+            Metrics.trained(row.count == 1, row.columns.get(s) == 1);
+        }
+        
+        return this;
+    }
+    
+    /**
+     * Adds all row and col counts of the other table to this one. The other table
+     * is not changed and no objects are shared. Probabilities have to be refreshed 
+     * with {@link #finish()} afterwards.
+     * 
+     * @param other the table to add
+     * @return this table
+     */
+    public MarkovTable<T, S> merge(final MarkovTable<T, S> other)
+    {
+        count += other.count;
+        
+        other.rows.forEach((t, src) -> 
         {
-            if (v == null)
+            var row = rows.get(t);
+            if (row == null)
             {
-                v = new Columns<T, S>(k);
+                row = new Columns<T, S>(t);
+                rows.put(t, row);
             }
-            v.record(s);
-
-            return v;
+            row.merge(src);
         });
         
         return this;
@@ -46,12 +80,6 @@ public class MarkovTable<T, S>
         rows.forEach((k, v) -> 
         {
             v.probability = v.count / total;
-            final double colCount = v.count;
-            
-            v.columns.forEach((s, e) -> 
-            {
-                e.probability = e.count / colCount;
-            });
         });
         
         return this;
@@ -65,6 +93,53 @@ public class MarkovTable<T, S>
         return new TrainedMarkovTable<T, S>(this);
     }
     
+    /**
+     * Freezes the table and uses the given way of sampling for the random access
+     * 
+     * @param sampling how to draw rows and cols later on
+     */
+    public TrainedMarkovTable<T, S> freeze(final TrainedMarkovTable.Sampling sampling)
+    {
+        return new TrainedMarkovTable<T, S>(this, sampling);
+    }
+    
+    /**
+     * Freezes the table with the given sampling and pruning
+     * 
+     * @param options how to draw rows and cols later on and what to prune
+     */
+    public TrainedMarkovTable<T, S> freeze(final FreezeOptions options)
+    {
+        return new TrainedMarkovTable<T, S>(this, options);
+    }
+    
+    /**
+     * Freezes the table into flat primitive arrays, the most memory friendly version 
+     */
+    public CompactMarkovTable<T, S> freezeCompact()
+    {
+        return new CompactMarkovTable<T, S>(this);
+    }
+    
+    /**
+     * Freezes the table into flat primitive arrays and prunes it as the options say
+     * 
+     * @param options what to prune
+     */
+    public CompactMarkovTable<T, S> freezeCompact(final FreezeOptions options)
+    {
+        return new CompactMarkovTable<T, S>(this, options);
+    }
+    
+    /**
+     * Freezes the table into direct buffers, for tables too large for the heap, the
+     * rows are streamed into the buffers without a compact table in between
+     */
+    public OffHeapMarkovTable<T, S> freezeOffHeap()
+    {
+        return new OffHeapMarkovTable<T, S>(this);
+    }
+    
     public Optional<Entry<S>> getEntry(final T t, final S s)
     {
         return getRow(t).map(c -> c.entry(s));
@@ -75,8 +150,10 @@ public class MarkovTable<T, S>
         return Optional.ofNullable(rows.get(t));
     }
 
-    public static class Columns<T, S>
+    public static class Columns<T, S> implements Serializable
     {
+        private static final long serialVersionUID = 2L;
+
         public T type;
 
         // counts how often each column is used
@@ -84,7 +161,8 @@ public class MarkovTable<T, S>
 
         public double probability = 0;
 
-        public Map<S, Entry<S>> columns = new HashMap<>();
+        // the count of each col inline, no entry object per col
+        public final ObjectLongMap<S> columns = new ObjectLongMap<>();
 
         public Columns(final T type)
         {
@@ -96,27 +174,56 @@ public class MarkovTable<T, S>
             // increase counter for row
             count++;
 
-            // get column and store data
-            columns.compute(s, (k, v) ->
-            {
-                if (v == null)
-                {
-                    v = new Entry<S>(k);
-                }   
-                v.record();
+            // and the col in place
+            columns.add(s, 1);
+        }
 
-                return v;
+        /**
+         * Adds the counts of the other row to this one
+         */
+        public void merge(final Columns<T, S> other)
+        {
+            count += other.count;
+            
+            other.columns.forEach((s, c) -> 
+            {
+                columns.add(s, c);
             });
         }
 
+        /**
+         * Adds to the count of a col, for anyone building a table from other counts
+         */
+        public void add(final S s, final long delta)
+        {
+            count += delta;
+            columns.add(s, delta);
+        }
+
+        /**
+         * Returns a snapshot of the col with its count and probability
+         * 
+         * @return the entry or null when s never followed
+         */
         public Entry<S> entry(final S s)
         {
-            return columns.get(s);
+            if (columns.containsKey(s) == false)
+            {
+                return null;
+            }
+            
+            final var entry = new Entry<S>(s);
+            entry.count = columns.get(s);
+            entry.probability = count == 0 ? 0 : entry.count / (double) count;
+            
+            return entry;
         }
     }
 
-    public static class Entry<S>
+    public static class Entry<S> implements Serializable
     {
+        private static final long serialVersionUID = 1L;
+
         public S type;
         public double probability = 0;
 
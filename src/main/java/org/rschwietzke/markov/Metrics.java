@@ -0,0 +1,182 @@
+package org.rschwietzke.markov;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The switch and the dispatch of the optional instrumentation. It is off unless
+ * the JVM runs with -Dmarkov.metrics=true. The flag is a static final, so when it
+ * is off, the JIT drops the guarded calls in the hot paths completely.
+ * <p>
+ * Listeners get the events, {@link MetricsRecorder} is the ready made one that
+ * {@link #registerMBean()} publishes through JMX.
+ *
+ * @author rschwietzke
+ *
+ */
+public final class Metrics
+{
+    /**
+     * The system property that turns the metrics on
+     */
+    public static final String PROPERTY = "markov.metrics";
+
+    /**
+     * Are metrics collected at all, read once at startup
+     */
+    public static final boolean ENABLED = Boolean.getBoolean(PROPERTY);
+
+    /**
+     * The name of the recorder in the platform MBean server
+     */
+    public static final String OBJECT_NAME = "org.rschwietzke.markov:type=Metrics";
+
+    /**
+     * The phases of a freeze
+     */
+    public enum Phase
+    {
+        /**
+         * Turning the training data into rows and cols, sorting and pruning the cols
+         */
+        CONVERT,
+
+        /**
+         * Sorting the rows
+         */
+        SORT,
+
+        /**
+         * Summing up, building the index and the alias tables
+         */
+        SUM
+    }
+
+    // copy on write, so the dispatch needs neither a lock nor an iterator
+    private static volatile MetricsListener[] listeners = new MetricsListener[0];
+
+    // the one we published
+    private static MetricsRecorder registered;
+
+    private Metrics()
+    {
+    }
+
+    public static synchronized void addListener(final MetricsListener listener)
+    {
+        final var l = Arrays.copyOf(listeners, listeners.length + 1);
+        l[l.length - 1] = listener;
+        listeners = l;
+    }
+
+    /**
+     * Removes a listener, removing the registered recorder unregisters its MBean
+     * too, so the next {@link #registerMBean()} publishes a new one that gets the
+     * events
+     */
+    public static synchronized void removeListener(final MetricsListener listener)
+    {
+        listeners = Arrays.stream(listeners).filter(l -> l != listener).toArray(MetricsListener[]::new);
+
+        if (listener == registered)
+        {
+            registered = null;
+            try
+            {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+            }
+            catch (JMException e)
+            {
+                // unregistered by someone else already
+            }
+        }
+    }
+
+    /**
+     * Adds a {@link MetricsRecorder} as listener and registers it in the platform
+     * MBean server, only once as long as it stays a listener
+     *
+     * @return the registered recorder
+     */
+    public static synchronized MetricsRecorder registerMBean()
+    {
+        if (registered == null)
+        {
+            final var recorder = new MetricsRecorder();
+            try
+            {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(recorder, new ObjectName(OBJECT_NAME));
+            }
+            catch (JMException e)
+            {
+                throw new IllegalStateException("Cannot register the metrics as " + OBJECT_NAME, e);
+            }
+            addListener(recorder);
+            registered = recorder;
+        }
+        return registered;
+    }
+
+    /**
+     * Reports a phase that started at the given time and returns now as the start
+     * of the next phase
+     */
+    static long phase(final Phase phase, final long start)
+    {
+        final long now = System.nanoTime();
+        freezePhase(phase, now - start);
+        return now;
+    }
+
+    static void trained(final boolean newRow, final boolean newCol)
+    {
+        for (var l : listeners)
+        {
+            l.trained(newRow, newCol);
+        }
+    }
+
+    static void freezePhase(final Phase phase, final long nanos)
+    {
+        for (var l : listeners)
+        {
+            l.freezePhase(phase, nanos);
+        }
+    }
+
+    static void frozen(final int rows, final long cols, final long estimatedBytes)
+    {
+        for (var l : listeners)
+        {
+            l.frozen(rows, cols, estimatedBytes);
+        }
+    }
+
+    static void drawn(final int scanLength)
+    {
+        for (var l : listeners)
+        {
+            l.drawn(scanLength);
+        }
+    }
+
+    /**
+     * Reports a draw by binary search over that many sums, which looks at about
+     * log2 of them
+     */
+    static void searched(final int sums)
+    {
+        drawn(32 - Integer.numberOfLeadingZeros(sums));
+    }
+
+    static void generated(final long nanos)
+    {
+        for (var l : listeners)
+        {
+            l.generated(nanos);
+        }
+    }
+}
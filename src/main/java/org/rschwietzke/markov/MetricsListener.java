@@ -0,0 +1,63 @@
+package org.rschwietzke.markov;
+
+/**
+ * Gets told what the tables and generators do while {@link Metrics#ENABLED} is set.
+ * All methods do nothing by default, so a listener picks what it cares about. They
+ * are called on the hot paths of many threads at once, so keep them quick and
+ * thread-safe.
+ *
+ * @author rschwietzke
+ *
+ */
+public interface MetricsListener
+{
+    /**
+     * A transition was trained
+     *
+     * @param newRow the row was seen for the first time
+     * @param newCol the col was seen for the first time in this row
+     */
+    public default void trained(final boolean newRow, final boolean newCol)
+    {
+    }
+
+    /**
+     * A phase of a freeze is done
+     *
+     * @param phase the phase
+     * @param nanos how long it took
+     */
+    public default void freezePhase(final Metrics.Phase phase, final long nanos)
+    {
+    }
+
+    /**
+     * A table was frozen or refreshed
+     *
+     * @param rows the number of rows
+     * @param cols the number of cols of all rows
+     * @param estimatedBytes the rough heap size of the table
+     */
+    public default void frozen(final int rows, final long cols, final long estimatedBytes)
+    {
+    }
+
+    /**
+     * A row or col was drawn
+     *
+     * @param scanLength the entries looked at, 1 for an alias draw, the bit length
+     *            of the range for a binary search
+     */
+    public default void drawn(final int scanLength)
+    {
+    }
+
+    /**
+     * A word was generated
+     *
+     * @param nanos how long it took
+     */
+    public default void generated(final long nanos)
+    {
+    }
+}
@@ -0,0 +1,56 @@
+package org.rschwietzke.markov;
+
+/**
+ * What {@link MetricsRecorder} shows through JMX. Durations of the freeze phases
+ * are totals over all freezes, the model figures are the ones of the last freeze.
+ *
+ * @author rschwietzke
+ *
+ */
+public interface MetricsMXBean
+{
+    public long getTrainCount();
+
+    public double getTrainRatePerSecond();
+
+    public long getRowsCreated();
+
+    public long getColsCreated();
+
+    public long getFreezeCount();
+
+    public long getFreezeConvertMillis();
+
+    public long getFreezeSortMillis();
+
+    public long getFreezeSumMillis();
+
+    public int getFrozenRows();
+
+    public long getFrozenCols();
+
+    public long getEstimatedModelBytes();
+
+    public long getDrawCount();
+
+    public double getMeanScanLength();
+
+    public long getP99ScanLength();
+
+    public long getMaxScanLength();
+
+    public long getGenerationCount();
+
+    public long getGenerationP50Nanos();
+
+    public long getGenerationP99Nanos();
+
+    public long getGenerationP999Nanos();
+
+    public long getGenerationMaxNanos();
+
+    /**
+     * Starts all counts and histograms anew
+     */
+    public void reset();
+}
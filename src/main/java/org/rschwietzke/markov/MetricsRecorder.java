@@ -0,0 +1,229 @@
+package org.rschwietzke.markov;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A listener that counts everything and keeps histograms of the scan lengths and
+ * the generation latency. Thread-safe, recording never allocates.
+ *
+ * @author rschwietzke
+ *
+ */
+public class MetricsRecorder implements MetricsListener, MetricsMXBean
+{
+    private final LongAdder trained = new LongAdder();
+    private final LongAdder rowsCreated = new LongAdder();
+    private final LongAdder colsCreated = new LongAdder();
+
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(Metrics.Phase.values().length);
+    private final LongAdder freezes = new LongAdder();
+    private volatile int frozenRows;
+    private volatile long frozenCols;
+    private volatile long estimatedBytes;
+
+    /**
+     * The entries looked at per draw
+     */
+    public final Histogram scanLength = new Histogram();
+
+    /**
+     * The nanos per generated word
+     */
+    public final Histogram generation = new Histogram();
+
+    // for the training rate
+    private volatile long start = System.nanoTime();
+
+    @Override
+    public void trained(final boolean newRow, final boolean newCol)
+    {
+        trained.increment();
+        if (newRow)
+        {
+            rowsCreated.increment();
+        }
+        if (newCol)
+        {
+            colsCreated.increment();
+        }
+    }
+
+    @Override
+    public void freezePhase(final Metrics.Phase phase, final long nanos)
+    {
+        phaseNanos.addAndGet(phase.ordinal(), nanos);
+    }
+
+    @Override
+    public void frozen(final int rows, final long cols, final long estimatedBytes)
+    {
+        freezes.increment();
+        this.frozenRows = rows;
+        this.frozenCols = cols;
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    @Override
+    public void drawn(final int scanLength)
+    {
+        this.scanLength.record(scanLength);
+    }
+
+    @Override
+    public void generated(final long nanos)
+    {
+        generation.record(nanos);
+    }
+
+    @Override
+    public long getTrainCount()
+    {
+        return trained.sum();
+    }
+
+    @Override
+    public double getTrainRatePerSecond()
+    {
+        final long nanos = Math.max(1, System.nanoTime() - start);
+        return trained.sum() / (nanos / 1_000_000_000.0d);
+    }
+
+    @Override
+    public long getRowsCreated()
+    {
+        return rowsCreated.sum();
+    }
+
+    @Override
+    public long getColsCreated()
+    {
+        return colsCreated.sum();
+    }
+
+    @Override
+    public long getFreezeCount()
+    {
+        return freezes.sum();
+    }
+
+    @Override
+    public long getFreezeConvertMillis()
+    {
+        return phaseMillis(Metrics.Phase.CONVERT);
+    }
+
+    @Override
+    public long getFreezeSortMillis()
+    {
+        return phaseMillis(Metrics.Phase.SORT);
+    }
+
+    @Override
+    public long getFreezeSumMillis()
+    {
+        return phaseMillis(Metrics.Phase.SUM);
+    }
+
+    /**
+     * Returns the total nanos spent in a phase
+     */
+    public long phaseNanos(final Metrics.Phase phase)
+    {
+        return phaseNanos.get(phase.ordinal());
+    }
+
+    private long phaseMillis(final Metrics.Phase phase)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(phaseNanos(phase));
+    }
+
+    @Override
+    public int getFrozenRows()
+    {
+        return frozenRows;
+    }
+
+    @Override
+    public long getFrozenCols()
+    {
+        return frozenCols;
+    }
+
+    @Override
+    public long getEstimatedModelBytes()
+    {
+        return estimatedBytes;
+    }
+
+    @Override
+    public long getDrawCount()
+    {
+        return scanLength.count();
+    }
+
+    @Override
+    public double getMeanScanLength()
+    {
+        return scanLength.mean();
+    }
+
+    @Override
+    public long getP99ScanLength()
+    {
+        return scanLength.percentile(99);
+    }
+
+    @Override
+    public long getMaxScanLength()
+    {
+        return scanLength.max();
+    }
+
+    @Override
+    public long getGenerationCount()
+    {
+        return generation.count();
+    }
+
+    @Override
+    public long getGenerationP50Nanos()
+    {
+        return generation.percentile(50);
+    }
+
+    @Override
+    public long getGenerationP99Nanos()
+    {
+        return generation.percentile(99);
+    }
+
+    @Override
+    public long getGenerationP999Nanos()
+    {
+        return generation.percentile(99.9);
+    }
+
+    @Override
+    public long getGenerationMaxNanos()
+    {
+        return generation.max();
+    }
+
+    @Override
+    public void reset()
+    {
+        trained.reset();
+        rowsCreated.reset();
+        colsCreated.reset();
+        for (int i = 0; i < phaseNanos.length(); i++)
+        {
+            phaseNanos.set(i, 0);
+        }
+        freezes.reset();
+        scanLength.reset();
+        generation.reset();
+        start = System.nanoTime();
+    }
+}
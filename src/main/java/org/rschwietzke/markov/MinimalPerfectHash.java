@@ -0,0 +1,331 @@
+package org.rschwietzke.markov;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntFunction;
+
+import it.unimi.dsi.util.SplitMix64RandomGenerator;
+
+/**
+ * A minimal perfect hash function over a fixed set of keys, built the BBHash way.
+ * Every level is a bit array of gamma times the keys still to place, a key sets
+ * the bit its level hash points to. Keys that collide with others try again on the
+ * next level. The position of a key is the number of bits set before its own bit
+ * over all levels, so the n keys end up at 0 to n - 1 without gaps.
+ * <p>
+ * This takes about five bits per key including the rank table. The few keys that
+ * do not find a free bit in time, such as different keys with the same hash code,
+ * go into a small fallback map.
+ * <p>
+ * Unknown keys return {@link #NOT_FOUND} or the position of some other key, the
+ * caller has to verify the key at that position. The tables store their rows in
+ * the order of the positions, so the position is the row and nothing else is needed.
+ * <p>
+ * The bits and ranks are buffers, so they can live on the heap, in direct memory or
+ * in a mapped file. The hash is the key's hash code, so only keys whose hash code
+ * does not change between runs, such as strings and numbers, can be stored. Immutable.
+ *
+ * @author rschwietzke
+ *
+ */
+final class MinimalPerfectHash
+{
+    /**
+     * Returned when a key is surely unknown
+     */
+    public static final int NOT_FOUND = -1;
+
+    /**
+     * Bits per key and level, more bits mean fewer levels and faster lookups
+     */
+    private static final double GAMMA = 2.0d;
+
+    /**
+     * After that many levels, we give up and use the fallback map
+     */
+    private static final int MAX_LEVELS = 24;
+
+    // all levels back to back, each a multiple of 64 bits
+    private final LongBuffer bits;
+
+    // the number of bits set before each word
+    private final IntBuffer ranks;
+
+    // where each level starts in words and its size in bits
+    private final int[] levelStart;
+    private final int[] levelSize;
+
+    // the keys that did not make it into a level
+    private final Map<Object, Integer> fallback;
+
+    private final int size;
+
+    /**
+     * Builds the function
+     *
+     * @param keys the keys, all different
+     */
+    public MinimalPerfectHash(final Object[] keys)
+    {
+        this(keys.length, i -> keys[i]);
+    }
+
+    /**
+     * Builds the function without the need for an array of the keys
+     *
+     * @param size the number of keys
+     * @param keys the key by index, all different
+     */
+    public MinimalPerfectHash(final int size, final IntFunction<?> keys)
+    {
+        this.size = size;
+
+        final List<long[]> levels = new ArrayList<>();
+        final List<Integer> sizes = new ArrayList<>();
+
+        final long[] hashes = new long[size];
+        for (int i = 0; i < size; i++)
+        {
+            hashes[i] = hash(keys.apply(i));
+        }
+        final int[] pending = new int[size];
+        for (int i = 0; i < pending.length; i++)
+        {
+            pending[i] = i;
+        }
+        int count = pending.length;
+
+        for (int level = 0; level < MAX_LEVELS && count > 0; level++)
+        {
+            final int m = (int) Math.min(1L << 30, (long) Math.ceil(count * GAMMA + 63) & ~63L);
+            final long[] seen = new long[m >>> 6];
+            final long[] collided = new long[m >>> 6];
+
+            for (int i = 0; i < count; i++)
+            {
+                final int pos = position(hashes[pending[i]], level, m);
+                final long bit = 1L << pos;
+                if ((seen[pos >>> 6] & bit) != 0)
+                {
+                    collided[pos >>> 6] |= bit;
+                }
+                seen[pos >>> 6] |= bit;
+            }
+
+            // the colliding ones go to the next level
+            int next = 0;
+            for (int i = 0; i < count; i++)
+            {
+                final int pos = position(hashes[pending[i]], level, m);
+                if ((collided[pos >>> 6] & (1L << pos)) != 0)
+                {
+                    pending[next++] = pending[i];
+                }
+            }
+            count = next;
+
+            for (int w = 0; w < seen.length; w++)
+            {
+                seen[w] &= ~collided[w];
+            }
+            levels.add(seen);
+            sizes.add(m);
+        }
+
+        // glue the levels together and count the bits
+        int words = 0;
+        this.levelStart = new int[levels.size()];
+        this.levelSize = new int[levels.size()];
+        for (int l = 0; l < levels.size(); l++)
+        {
+            levelStart[l] = words;
+            levelSize[l] = sizes.get(l);
+            words += levels.get(l).length;
+        }
+
+        final long[] bits = new long[words];
+        final int[] ranks = new int[words];
+        int rank = 0;
+        for (int l = 0; l < levels.size(); l++)
+        {
+            final long[] level = levels.get(l);
+            System.arraycopy(level, 0, bits, levelStart[l], level.length);
+        }
+        for (int w = 0; w < words; w++)
+        {
+            ranks[w] = rank;
+            rank += Long.bitCount(bits[w]);
+        }
+        this.bits = LongBuffer.wrap(bits);
+        this.ranks = IntBuffer.wrap(ranks);
+
+        // the rest gets the remaining positions
+        this.fallback = new HashMap<>();
+        for (int i = 0; i < count; i++)
+        {
+            fallback.put(keys.apply(pending[i]), rank + i);
+        }
+    }
+
+    /**
+     * Takes over the parts of a function built before, nothing is copied
+     *
+     * @param size the number of keys
+     * @param levelSize the size of each level in bits
+     * @param bits the bits of all levels
+     * @param ranks the bits set before each word
+     * @param fallback the keys not in a level and their positions
+     */
+    MinimalPerfectHash(
+                    final int size,
+                    final int[] levelSize,
+                    final LongBuffer bits,
+                    final IntBuffer ranks,
+                    final Map<Object, Integer> fallback)
+    {
+        this.size = size;
+        this.levelSize = levelSize;
+        this.levelStart = new int[levelSize.length];
+        for (int l = 1; l < levelSize.length; l++)
+        {
+            levelStart[l] = levelStart[l - 1] + (levelSize[l - 1] >>> 6);
+        }
+        this.bits = bits;
+        this.ranks = ranks;
+        this.fallback = fallback;
+    }
+
+    /**
+     * Returns a copy with the bits and ranks in direct memory
+     */
+    MinimalPerfectHash offHeap()
+    {
+        final var bits = OffHeapMarkovTable.allocate(8L * this.bits.capacity()).asLongBuffer();
+        final var ranks = OffHeapMarkovTable.allocate(4L * this.ranks.capacity()).asIntBuffer();
+        bits.put(this.bits.duplicate().clear());
+        ranks.put(this.ranks.duplicate().clear());
+
+        return new MinimalPerfectHash(size, levelSize, bits, ranks, fallback);
+    }
+
+    /**
+     * Returns the position of a key
+     *
+     * @param key the key
+     * @return the position, 0 to size - 1, for a known key, {@link #NOT_FOUND} or any
+     *         position for an unknown one
+     */
+    public int index(final Object key)
+    {
+        final long h = hash(key);
+        for (int level = 0; level < levelStart.length; level++)
+        {
+            final int pos = position(h, level, levelSize[level]);
+            final int word = levelStart[level] + (pos >>> 6);
+            final long w = bits.get(word);
+            if ((w & (1L << pos)) != 0)
+            {
+                return ranks.get(word) + Long.bitCount(w & ((1L << pos) - 1));
+            }
+        }
+
+        if (fallback.isEmpty() == false)
+        {
+            final Integer pos = fallback.get(key);
+            if (pos != null)
+            {
+                return pos;
+            }
+        }
+
+        return NOT_FOUND;
+    }
+
+    /**
+     * Returns the number of keys
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the number of keys in the fallback map, for testing
+     */
+    int fallbackSize()
+    {
+        return fallback.size();
+    }
+
+    /**
+     * Returns the size of each level in bits
+     */
+    int[] levelSizes()
+    {
+        return levelSize.clone();
+    }
+
+    /**
+     * Returns a read-only view of the bits of all levels
+     */
+    LongBuffer bits()
+    {
+        return bits.asReadOnlyBuffer().clear();
+    }
+
+    /**
+     * Returns a read-only view of the ranks
+     */
+    IntBuffer ranks()
+    {
+        return ranks.asReadOnlyBuffer().clear();
+    }
+
+    /**
+     * Returns a read-only view of the fallback keys and their positions
+     */
+    Map<Object, Integer> fallback()
+    {
+        return Collections.unmodifiableMap(fallback);
+    }
+
+    /**
+     * Returns the size of the bit and rank arrays in bits, for testing
+     */
+    long bitSize()
+    {
+        return bits.capacity() * 64L + ranks.capacity() * 32L;
+    }
+
+    private static long hash(final Object key)
+    {
+        return SplitMix64RandomGenerator.murmurHash3(Objects.hashCode(key));
+    }
+
+    /**
+     * The bit of the key on a level, double hashing spreads the levels and a final
+     * multiply and shift maps it into range
+     */
+    private static int position(final long hash, final int level, final int m)
+    {
+        int x = (int) hash + level * ((int) (hash >>> 32) | 1);
+        x *= 0x9E3779B9;
+        x ^= x >>> 16;
+
+        return (int) (((x & 0xFFFFFFFFL) * m) >>> 32);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MinimalPerfectHash [size=" + size + ", levels=" + levelStart.length + ", fallback=" + fallback.size()
+                        + ", bits=" + bitSize() + ", levelSizes=" + Arrays.toString(levelSize) + "]";
+    }
+}
@@ -0,0 +1,252 @@
+package org.rschwietzke.markov;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * An open addressing hash map from any key to a long with linear probing. Keys,
+ * their hashes and the values live densely in parallel arrays in the order they
+ * were added, the probe table holds only ints pointing into them. Counting a known
+ * key hence increments the value in place and neither boxes nor allocates, and
+ * iterating is a plain array walk in insertion order.
+ * <p>
+ * Absent keys have the value 0, hence this is meant for counting, same as
+ * {@link LongLongMap}. Null is a regular key. Not thread-safe.
+ *
+ * @author rschwietzke
+ *
+ * @param <K> the key type
+ */
+public class ObjectLongMap<K> implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    // the position of the entry + 1, 0 marks a free slot
+    private transient int[] slots;
+    private transient int mask;
+
+    // the entries in insertion order
+    private transient Object[] keys;
+    private transient int[] hashes;
+    private transient long[] values;
+    private transient int size;
+
+    /**
+     * Something to see all entries
+     */
+    @FunctionalInterface
+    public interface Visitor<K>
+    {
+        public void accept(final K key, final long value);
+    }
+
+    public ObjectLongMap()
+    {
+        this(4);
+    }
+
+    /**
+     * Creates the map big enough for the expected number of entries
+     *
+     * @param expected the number of entries to fit without resizing
+     */
+    public ObjectLongMap(final int expected)
+    {
+        init(expected);
+    }
+
+    private void init(final int expected)
+    {
+        final int capacity = LongLongMap.capacity(expected);
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+
+        final int entries = capacity * 3 / 4;
+        this.keys = new Object[entries];
+        this.hashes = new int[entries];
+        this.values = new long[entries];
+        this.size = 0;
+    }
+
+    /**
+     * Adds the delta to the value of the key
+     *
+     * @param key the key
+     * @param delta what to add
+     * @return the new value
+     */
+    public long add(final K key, final long delta)
+    {
+        final int hash = hash(key);
+        int pos = hash & mask;
+        int slot;
+        while ((slot = slots[pos]) != 0)
+        {
+            final int i = slot - 1;
+            if (hashes[i] == hash && equal(keys[i], key))
+            {
+                return values[i] += delta;
+            }
+            pos = (pos + 1) & mask;
+        }
+
+        if (size == keys.length)
+        {
+            grow();
+            return add(key, delta);
+        }
+
+        keys[size] = key;
+        hashes[size] = hash;
+        values[size] = delta;
+        slots[pos] = ++size;
+
+        return delta;
+    }
+
+    /**
+     * Returns the value of the key or 0 if it does not exist
+     */
+    public long get(final K key)
+    {
+        final int i = find(key);
+        return i >= 0 ? values[i] : 0;
+    }
+
+    /**
+     * Returns if we have the key at all
+     */
+    public boolean containsKey(final K key)
+    {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Returns the number of keys
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the key at a position, the keys are in the order they were added
+     *
+     * @param i the position, 0 to size - 1
+     * @return the key
+     */
+    @SuppressWarnings("unchecked")
+    public K key(final int i)
+    {
+        return (K) keys[Objects.checkIndex(i, size)];
+    }
+
+    /**
+     * Returns the value at a position, same order as the keys
+     *
+     * @param i the position, 0 to size - 1
+     * @return the value
+     */
+    public long value(final int i)
+    {
+        return values[Objects.checkIndex(i, size)];
+    }
+
+    /**
+     * Visits all entries in the order they were added
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(final Visitor<K> visitor)
+    {
+        for (int i = 0; i < size; i++)
+        {
+            visitor.accept((K) keys[i], values[i]);
+        }
+    }
+
+    private int find(final K key)
+    {
+        final int hash = hash(key);
+        int pos = hash & mask;
+        int slot;
+        while ((slot = slots[pos]) != 0)
+        {
+            final int i = slot - 1;
+            if (hashes[i] == hash && equal(keys[i], key))
+            {
+                return i;
+            }
+            pos = (pos + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    private static boolean equal(final Object a, final Object b)
+    {
+        return a == b || (a != null && a.equals(b));
+    }
+
+    private static int hash(final Object key)
+    {
+        return key == null ? 0 : LongLongMap.hash(key.hashCode());
+    }
+
+    /**
+     * Doubles the probe table and the entries, the entries keep their positions
+     */
+    private void grow()
+    {
+        final int capacity = (mask + 1) << 1;
+        slots = new int[capacity];
+        mask = capacity - 1;
+
+        final int entries = capacity * 3 / 4;
+        keys = Arrays.copyOf(keys, entries);
+        hashes = Arrays.copyOf(hashes, entries);
+        values = Arrays.copyOf(values, entries);
+
+        for (int i = 0; i < size; i++)
+        {
+            int pos = hashes[i] & mask;
+            while (slots[pos] != 0)
+            {
+                pos = (pos + 1) & mask;
+            }
+            slots[pos] = i + 1;
+        }
+    }
+
+    /**
+     * Hashes can differ in another JVM, so we write the entries and rebuild
+     */
+    private void writeObject(final ObjectOutputStream out) throws IOException
+    {
+        out.defaultWriteObject();
+        out.writeInt(size);
+
+        for (int i = 0; i < size; i++)
+        {
+            out.writeObject(keys[i]);
+            out.writeLong(values[i]);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+
+        final int entries = in.readInt();
+        init(entries);
+        for (int i = 0; i < entries; i++)
+        {
+            final K key = (K) in.readObject();
+            add(key, in.readLong());
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package org.rschwietzke.markov;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import it.unimi.dsi.util.FastRandom;
+
+/**
+ * A frozen Markov table that keeps its aggregated sums, symbol ids and even its row
+ * index in direct buffers outside of the heap. On the heap remain only this facade
+ * and the row keys and symbols, so a table with millions of transitions costs the
+ * garbage collector a handful of objects and not millions of rows, cols and map
+ * entries.
+ * <p>
+ * The layout is the one of {@link CompactMarkovTable}, the rows are stored in the
+ * order of a {@link MinimalPerfectHash} whose bits live in direct memory as well, so
+ * the hash position is the row. The memory is released when the table is collected.
+ * Each array must stay below 2 GB. The table is immutable and fit for concurrent use.
+ *
+ * @author rschwietzke
+ *
+ * @param <T>
+ * @param <S>
+ */
+public class OffHeapMarkovTable<T, S> implements SamplingTable<T, S>
+{
+    private final Object[] rowKeys;
+    private final Object[] symbols;
+
+    private final LongBuffer rowSums;
+    private final IntBuffer colStart;
+    private final IntBuffer colSymbols;
+    private final LongBuffer colSums;
+
+    // the rows are in hash order
+    private final MinimalPerfectHash hash;
+    private final RowIndex<T> rowIndex;
+
+    /**
+     * Freezes a table straight into direct buffers, no {@link CompactMarkovTable} and
+     * no heap copy of the cols is built on the way. The first pass sizes the buffers
+     * and puts the rows into hash order, the second pass fills the buffers row by row.
+     * The cols of a row stay in the order they were trained in, the draws have the
+     * same distribution as the ones of a compact table.
+     *
+     * @param src the table to freeze
+     */
+    public OffHeapMarkovTable(final MarkovTable<T, S> src)
+    {
+        // first pass, the sizes and the order
+        final Object[] source = src.rows.values().toArray();
+        final int rows = source.length;
+        long cols = 0;
+        for (var row : source)
+        {
+            cols += ((MarkovTable.Columns<?, ?>) row).columns.size();
+        }
+
+        final var hash = new MinimalPerfectHash(rows, i -> ((MarkovTable.Columns<?, ?>) source[i]).type);
+        final Object[] byHash = new Object[rows];
+        for (var row : source)
+        {
+            byHash[hash.index(((MarkovTable.Columns<?, ?>) row).type)] = row;
+        }
+
+        this.rowKeys = new Object[rows];
+        this.rowSums = allocate(8L * rows).asLongBuffer();
+        this.colStart = allocate(4L * (rows + 1L)).asIntBuffer();
+        this.colSymbols = allocate(4L * cols).asIntBuffer();
+        this.colSums = allocate(8L * cols).asLongBuffer();
+
+        // second pass, fill it
+        final var filler = new Filler<S>(colSymbols, colSums);
+        long rowTotal = 0;
+        for (int i = 0; i < rows; i++)
+        {
+            @SuppressWarnings("unchecked")
+            final var row = (MarkovTable.Columns<T, S>) byHash[i];
+            rowKeys[i] = row.type;
+            colStart.put(i, filler.pos);
+
+            filler.colTotal = 0;
+            row.columns.forEach(filler);
+            rowTotal += filler.colTotal;
+            rowSums.put(i, rowTotal);
+        }
+        colStart.put(rows, filler.pos);
+
+        this.symbols = filler.symbols.toArray();
+        this.hash = hash.offHeap();
+        this.rowIndex = RowIndex.perfect(this.hash, rowKeys);
+    }
+
+    /**
+     * Writes the cols of one row after the other into the buffers and hands out the
+     * symbol ids
+     */
+    private static final class Filler<S> implements ObjectLongMap.Visitor<S>
+    {
+        final IntBuffer colSymbols;
+        final LongBuffer colSums;
+
+        // the symbol id + 1, 0 is absent
+        final ObjectLongMap<S> symbolIds = new ObjectLongMap<>();
+        final List<S> symbols = new ArrayList<>();
+
+        int pos;
+        long colTotal;
+
+        Filler(final IntBuffer colSymbols, final LongBuffer colSums)
+        {
+            this.colSymbols = colSymbols;
+            this.colSums = colSums;
+        }
+
+        @Override
+        public void accept(final S s, final long count)
+        {
+            long id = symbolIds.get(s);
+            if (id == 0)
+            {
+                symbols.add(s);
+                id = symbolIds.add(s, symbols.size());
+            }
+
+            colTotal += count;
+            colSymbols.put(pos, (int) id - 1);
+            colSums.put(pos, colTotal);
+            pos++;
+        }
+    }
+
+    /**
+     * Copies a compact table, the rows are put into hash order on the way if they
+     * are not already
+     *
+     * @param src the table to copy
+     */
+    public OffHeapMarkovTable(final CompactMarkovTable<T, S> src)
+    {
+        final int rows = src.rowCount();
+        final var hash = new MinimalPerfectHash(src.rowKeys);
+        final int[] order = RowIndex.hashOrder(hash, src.rowKeys);
+
+        this.rowKeys = new Object[rows];
+        this.symbols = src.symbols.clone();
+
+        this.rowSums = allocate(8L * rows).asLongBuffer();
+        this.colStart = allocate(4L * (rows + 1L)).asIntBuffer();
+        this.colSymbols = allocate(4L * src.colSymbols.length).asIntBuffer();
+        this.colSums = allocate(8L * src.colSums.length).asLongBuffer();
+
+        long rowTotal = 0;
+        int pos = 0;
+        for (int i = 0; i < rows; i++)
+        {
+            final int row = order[i];
+            rowKeys[i] = src.rowKeys[row];
+            rowTotal += src.rowSums[row] - (row == 0 ? 0 : src.rowSums[row - 1]);
+            rowSums.put(i, rowTotal);
+
+            colStart.put(i, pos);
+            for (int c = src.colStart[row]; c < src.colStart[row + 1]; c++)
+            {
+                colSymbols.put(pos, src.colSymbols[c]);
+                colSums.put(pos, src.colSums[c]);
+                pos++;
+            }
+        }
+        colStart.put(rows, pos);
+
+        this.hash = hash.offHeap();
+        this.rowIndex = RowIndex.perfect(this.hash, rowKeys);
+    }
+
+    /**
+     * Returns a random T from a row
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public T randomRow(final FastRandom r)
+    {
+        return (T) rowKeys[randomRowId(r)];
+    }
+
+    /**
+     * Returns a random col for a t
+     */
+    @Override
+    public Optional<S> randomCol(final FastRandom r, final T t)
+    {
+        final int row = row(t);
+        if (row != CompactMarkovTable.NOT_FOUND)
+        {
+            return Optional.ofNullable(symbol(randomColId(r, row)));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns a random col for a t or the passed sentinel when t is unknown
+     */
+    @Override
+    public S randomCol(final FastRandom r, final T t, final S notFound)
+    {
+        final int row = row(t);
+        if (row != CompactMarkovTable.NOT_FOUND)
+        {
+            return symbol(randomColId(r, row));
+        }
+        return notFound;
+    }
+
+    /**
+     * Draws n cols of t at once, the row is looked up once and the random numbers
+     * are drawn in bulk
+     */
+    @Override
+    public int randomCol(final FastRandom r, final T t, final S[] out, final int n)
+    {
+        final int row = row(t);
+        if (row == CompactMarkovTable.NOT_FOUND)
+        {
+            return 0;
+        }
+        return MappedMarkovTable.randomCols(r, colStart.get(row), colStart.get(row + 1), colSymbols, colSums, symbols, out, n);
+    }
+
+    /**
+     * Returns the row index of t or {@link CompactMarkovTable#NOT_FOUND}
+     */
+    public int row(final T t)
+    {
+        return rowIndex.row(t);
+    }
+
+    /**
+     * Returns the index of a random row
+     */
+    public int randomRowId(final FastRandom r)
+    {
+        final int rows = rowKeys.length;
+        final long value = r.nextLong(rowSums.get(rows - 1));
+
+        if (Metrics.ENABLED)
+        {
+            Metrics.searched(rows);
+        }
+        return MappedMarkovTable.search(rowSums, 0, rows, value);
+    }
+
+    /**
+     * Returns the symbol id of a random col of the row with the given index
+     */
+    public int randomColId(final FastRandom r, final int row)
+    {
+        final int from = colStart.get(row);
+        final int to = colStart.get(row + 1);
+        final long value = r.nextLong(colSums.get(to - 1));
+
+        if (Metrics.ENABLED)
+        {
+            Metrics.searched(to - from);
+        }
+        return colSymbols.get(MappedMarkovTable.search(colSums, from, to, value));
+    }
+
+    /**
+     * Returns the symbol for a symbol id
+     */
+    @SuppressWarnings("unchecked")
+    public S symbol(final int id)
+    {
+        return (S) symbols[id];
+    }
+
+    /**
+     * Returns the number of rows
+     */
+    public int rowCount()
+    {
+        return rowKeys.length;
+    }
+
+    /**
+     * Returns the number of cols of all rows
+     */
+    public int colCount()
+    {
+        return colSymbols.capacity();
+    }
+
+    /**
+     * Returns the number of bytes held outside of the heap
+     */
+    public long offHeapSize()
+    {
+        return 8L * rowSums.capacity()
+                        + 4L * colStart.capacity()
+                        + 4L * colSymbols.capacity()
+                        + 8L * colSums.capacity()
+                        + hash.bitSize() / 8;
+    }
+
+    /**
+     * A direct buffer in native order
+     */
+    static ByteBuffer allocate(final long size)
+    {
+        if (size > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Buffer of " + size + " bytes is too large");
+        }
+        return ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder());
+    }
+}
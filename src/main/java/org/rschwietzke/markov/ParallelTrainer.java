@@ -0,0 +1,170 @@
+package org.rschwietzke.markov;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+
+/**
+ * Trains a corpus in parallel without any shared state. The corpus is split
+ * recursively until the slices are small enough, each slice trains its own
+ * {@link MarkovTable} and the tables are merged pairwise on the way back up,
+ * so the merging happens in parallel too.
+ * <p>
+ * The same pairwise reduction is available for tables trained elsewhere, e.g.
+ * shards trained on other machines and shipped serialized.
+ *
+ * @author rschwietzke
+ *
+ * @param <D> the corpus data type
+ * @param <T>
+ * @param <S>
+ */
+public class ParallelTrainer<D, T, S>
+{
+    /**
+     * The default number of corpus entries a single task trains
+     */
+    public static final int DEFAULT_SLICE = 1024;
+
+    // how to get a data item into a table
+    private final BiConsumer<MarkovTable<T, S>, D> trainer;
+
+    // when to stop splitting
+    private final int slice;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a trainer running on the common pool
+     *
+     * @param trainer trains a single data item into a table
+     */
+    public ParallelTrainer(final BiConsumer<MarkovTable<T, S>, D> trainer)
+    {
+        this(trainer, DEFAULT_SLICE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a trainer
+     *
+     * @param trainer trains a single data item into a table
+     * @param slice up to that many items are trained by a single task
+     * @param pool the pool to run on
+     */
+    public ParallelTrainer(final BiConsumer<MarkovTable<T, S>, D> trainer, final int slice, final ForkJoinPool pool)
+    {
+        if (slice < 1)
+        {
+            throw new IllegalArgumentException("Slice must be at least 1 but was " + slice);
+        }
+
+        this.trainer = trainer;
+        this.slice = slice;
+        this.pool = pool;
+    }
+
+    /**
+     * Trains the whole corpus
+     *
+     * @param corpus the data to train, should support fast random access
+     * @return a table with the counts of all data
+     */
+    public MarkovTable<T, S> train(final List<D> corpus)
+    {
+        return pool.invoke(new TrainTask(corpus, 0, corpus.size()));
+    }
+
+    /**
+     * Merges all tables pairwise into one. The tables passed will be changed
+     * because they are reused as merge targets.
+     *
+     * @param tables the tables to merge
+     * @return the merged table, an empty one when nothing was passed
+     */
+    public static <T, S> MarkovTable<T, S> merge(final List<MarkovTable<T, S>> tables)
+    {
+        if (tables.isEmpty())
+        {
+            return new MarkovTable<>();
+        }
+        return ForkJoinPool.commonPool().invoke(new MergeTask<T, S>(tables, 0, tables.size()));
+    }
+
+    /**
+     * Merges the smaller table into the larger one, that is less work
+     */
+    static <T, S> MarkovTable<T, S> combine(final MarkovTable<T, S> a, final MarkovTable<T, S> b)
+    {
+        return a.rows.size() >= b.rows.size() ? a.merge(b) : b.merge(a);
+    }
+
+    private class TrainTask extends RecursiveTask<MarkovTable<T, S>>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final List<D> corpus;
+        private final int from;
+        private final int to;
+
+        TrainTask(final List<D> corpus, final int from, final int to)
+        {
+            this.corpus = corpus;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected MarkovTable<T, S> compute()
+        {
+            if (to - from <= slice)
+            {
+                final var table = new MarkovTable<T, S>();
+                for (int i = from; i < to; i++)
+                {
+                    trainer.accept(table, corpus.get(i));
+                }
+                return table;
+            }
+
+            final int mid = (from + to) >>> 1;
+            final var left = new TrainTask(corpus, from, mid);
+            left.fork();
+            final var right = new TrainTask(corpus, mid, to).compute();
+
+            return combine(left.join(), right);
+        }
+    }
+
+    private static class MergeTask<T, S> extends RecursiveTask<MarkovTable<T, S>>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final List<MarkovTable<T, S>> tables;
+        private final int from;
+        private final int to;
+
+        MergeTask(final List<MarkovTable<T, S>> tables, final int from, final int to)
+        {
+            this.tables = tables;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected MarkovTable<T, S> compute()
+        {
+            if (to - from == 1)
+            {
+                return tables.get(from);
+            }
+
+            final int mid = (from + to) >>> 1;
+            final var left = new MergeTask<T, S>(tables, from, mid);
+            left.fork();
+            final var right = new MergeTask<T, S>(tables, mid, to).compute();
+
+            return combine(left.join(), right);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.rschwietzke.markov;
+
+import java.util.Optional;
+
+import it.unimi.dsi.util.FastRandom;
+
+/**
+ * Holds a frozen table that can be refreshed with new counts while readers keep
+ * drawing from it. A refresh builds a new table next to the current one and swaps
+ * it in at once, so readers see either the old or the new table, never anything in
+ * between. Refreshes are serialized, reads never block.
+ * <p>
+ * Each call reads the current table anew, a batch draw reads it once, so all its
+ * cols come from the same version. When several calls must come from the same
+ * version, use {@link #get()} and draw from that.
+ *
+ * @author rschwietzke
+ *
+ * @param <T>
+ * @param <S>
+ */
+public class RefreshableMarkovTable<T, S> implements SamplingTable<T, S>
+{
+    private volatile TrainedMarkovTable<T, S> table;
+
+    public RefreshableMarkovTable(final TrainedMarkovTable<T, S> table)
+    {
+        this.table = table;
+    }
+
+    /**
+     * Returns the current table
+     *
+     * @return the current table, immutable
+     */
+    public TrainedMarkovTable<T, S> get()
+    {
+        return table;
+    }
+
+    /**
+     * Adds the counts of the delta and swaps the new table in
+     *
+     * @param delta the counts trained since the last refresh
+     * @return the new current table
+     * @see TrainedMarkovTable#refresh(MarkovTable)
+     */
+    public synchronized TrainedMarkovTable<T, S> refresh(final MarkovTable<T, S> delta)
+    {
+        final var refreshed = table.refresh(delta);
+        table = refreshed;
+
+        return refreshed;
+    }
+
+    @Override
+    public T randomRow(final FastRandom r)
+    {
+        return table.randomRow(r);
+    }
+
+    @Override
+    public Optional<S> randomCol(final FastRandom r, final T t)
+    {
+        return table.randomCol(r, t);
+    }
+
+    @Override
+    public S randomCol(final FastRandom r, final T t, final S notFound)
+    {
+        return table.randomCol(r, t, notFound);
+    }
+
+    @Override
+    public int randomCol(final FastRandom r, final T t, final S[] out, final int n)
+    {
+        // one version for the whole batch and its bulk path
+        final var current = table;
+        return current.randomCol(r, t, out, n);
+    }
+}
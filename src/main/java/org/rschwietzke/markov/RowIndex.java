@@ -0,0 +1,80 @@
+package org.rschwietzke.markov;
+
+import java.util.Objects;
+
+/**
+ * Finds the position of a row by its key in a frozen table
+ *
+ * @author rschwietzke
+ *
+ * @param <T> the row type
+ */
+@FunctionalInterface
+interface RowIndex<T>
+{
+    /**
+     * Returns the position of the row
+     *
+     * @param t the row key
+     * @return the position or {@link CompactMarkovTable#NOT_FOUND}
+     */
+    public int row(final T t);
+
+    /**
+     * An index over a {@link MinimalPerfectHash} whose positions are the rows, so
+     * the rows have to be stored in hash order. One hash and a few bit reads, no
+     * chains, no nodes and no extra array. The key at the found position is checked,
+     * because unknown keys can land anywhere.
+     *
+     * @param hash the hash over the row keys
+     * @param rowKeys the keys by position, in hash order
+     * @return the index
+     */
+    public static <T> RowIndex<T> perfect(final MinimalPerfectHash hash, final Object[] rowKeys)
+    {
+        return t ->
+        {
+            final int row = hash.index(t);
+            if (row == MinimalPerfectHash.NOT_FOUND)
+            {
+                return CompactMarkovTable.NOT_FOUND;
+            }
+            return Objects.equals(rowKeys[row], t) ? row : CompactMarkovTable.NOT_FOUND;
+        };
+    }
+
+    /**
+     * Returns where each row has to go so that the rows are in hash order
+     *
+     * @param hash the hash over the row keys
+     * @param rowKeys the row keys in their current order
+     * @return the current row of each position
+     */
+    public static int[] hashOrder(final MinimalPerfectHash hash, final Object[] rowKeys)
+    {
+        final int[] order = new int[rowKeys.length];
+        for (int i = 0; i < rowKeys.length; i++)
+        {
+            order[hash.index(rowKeys[i])] = i;
+        }
+        return order;
+    }
+
+    /**
+     * An index that asks the dictionary for the id and maps that to the position
+     * with a plain array
+     *
+     * @param dictionary the dictionary the row keys come from
+     * @param positions the position by id, {@link CompactMarkovTable#NOT_FOUND} when
+     *            there is no such row
+     * @return the index
+     */
+    public static <T> RowIndex<T> interned(final SymbolDictionary<T> dictionary, final int[] positions)
+    {
+        return t ->
+        {
+            final int id = dictionary.lookup(t);
+            return id >= 0 && id < positions.length ? positions[id] : CompactMarkovTable.NOT_FOUND;
+        };
+    }
+}
@@ -0,0 +1,93 @@
+package org.rschwietzke.markov;
+
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import it.unimi.dsi.util.FastRandom;
+
+/**
+ * A frozen Markov table that can be asked for random rows and cols. All
+ * implementations draw in proportion to the trained counts, so callers can switch
+ * the representation without changing their code. They do not consume the random
+ * numbers the same way, so the same seed gives different results per
+ * implementation, and {@link TrainedMarkovTable.Sampling#LINEAR} gives the first
+ * entry of a row one value more out of the drawn range. Apart from the optional,
+ * drawing allocates nothing.
+ *
+ * @author rschwietzke
+ *
+ * @param <T> the row type
+ * @param <S> the col type
+ */
+public interface SamplingTable<T, S>
+{
+    /**
+     * Returns a random T weighted by how often the row has been seen
+     *
+     * @param r the random source
+     * @return a random row
+     */
+    public T randomRow(final FastRandom r);
+
+    /**
+     * Returns a random col for a t weighted by how often the col followed t. The
+     * optional is allocated per call, hot paths use the sentinel or batch variants,
+     * which never allocate.
+     *
+     * @param r the random source
+     * @param t the row to draw from
+     * @return a random col or an empty optional when t is unknown
+     */
+    public Optional<S> randomCol(final FastRandom r, final T t);
+
+    /**
+     * Returns a random col for a t or the sentinel when t is unknown. This
+     * does not allocate.
+     *
+     * @param r the random source
+     * @param t the row to draw from
+     * @param notFound what to return when t is unknown
+     * @return a random col or notFound
+     */
+    public S randomCol(final FastRandom r, final T t, final S notFound);
+
+    /**
+     * Draws n random cols of a t at once, same as n single draws in a row with the
+     * same random source. Implementations look up the row only once and draw the
+     * random numbers in bulk. This does not allocate.
+     *
+     * @param r the random source
+     * @param t the row to draw from
+     * @param out where to put the cols, at least n long
+     * @param n the number of cols to draw
+     * @return n or 0 when t is unknown, out is not touched then
+     */
+    @SuppressWarnings("unchecked")
+    public default int randomCol(final FastRandom r, final T t, final S[] out, final int n)
+    {
+        // our own sentinel, no col can ever be this one
+        final S notFound = (S) Draws.NOT_FOUND;
+        for (int i = 0; i < n; i++)
+        {
+            final S s = randomCol(r, t, notFound);
+            if (s == notFound)
+            {
+                return 0;
+            }
+            out[i] = s;
+        }
+        return n;
+    }
+
+    /**
+     * Returns a stream of random rows, reproducible for a seed, even when parallel
+     *
+     * @param seed the root seed
+     * @param count the number of rows
+     * @return a stream of random rows, can be turned into a parallel one
+     */
+    public default Stream<T> rowStream(final long seed, final long count)
+    {
+        return SeededSpliterator.stream(seed, count, r -> () -> randomRow(r), false);
+    }
+}
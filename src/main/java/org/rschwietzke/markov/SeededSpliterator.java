@@ -0,0 +1,166 @@
+package org.rschwietzke.markov;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import it.unimi.dsi.util.FastRandom;
+
+/**
+ * A spliterator producing a fixed number of generated results that can be split
+ * evenly for parallel streams. The results are grouped into blocks of a fixed size
+ * and each block gets its own {@link FastRandom} derived from the root seed and the
+ * block number. Splits only happen at block boundaries, hence the output for a seed
+ * is always the same, no matter how many threads work on it or how it was split.
+ *
+ * @author rschwietzke
+ *
+ * @param <R> the result type
+ */
+public class SeededSpliterator<R> implements Spliterator<R>
+{
+    /**
+     * The default number of results drawn from the same random source
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    private final long seed;
+    private final int blockSize;
+
+    // creates a generator for a block from the block's random source
+    private final Function<FastRandom, ? extends Generator<R>> factory;
+
+    // the range still to do, to is exclusive
+    private long index;
+    private final long to;
+
+    // the generator of the current block
+    private Generator<R> generator;
+
+    /**
+     * Creates a spliterator for count results
+     *
+     * @param seed the root seed
+     * @param count the number of results
+     * @param blockSize the number of results per random source, the output depends on it
+     * @param factory creates a generator for a block, it must not share mutable state with other blocks
+     */
+    public SeededSpliterator(
+                    final long seed,
+                    final long count,
+                    final int blockSize,
+                    final Function<FastRandom, ? extends Generator<R>> factory)
+    {
+        this(seed, 0, count, blockSize, factory, null);
+        if (count < 0)
+        {
+            throw new IllegalArgumentException("Count must not be negative but was " + count);
+        }
+        if (blockSize < 1)
+        {
+            throw new IllegalArgumentException("Block size must be at least 1 but was " + blockSize);
+        }
+    }
+
+    private SeededSpliterator(
+                    final long seed,
+                    final long from,
+                    final long to,
+                    final int blockSize,
+                    final Function<FastRandom, ? extends Generator<R>> factory,
+                    final Generator<R> generator)
+    {
+        this.seed = seed;
+        this.index = from;
+        this.to = to;
+        this.blockSize = blockSize;
+        this.factory = factory;
+        this.generator = generator;
+    }
+
+    /**
+     * Returns a stream of count results with the default block size
+     *
+     * @param seed the root seed
+     * @param count the number of results
+     * @param factory creates a generator for a block
+     * @param parallel true for a parallel stream
+     * @return the stream
+     */
+    public static <R> Stream<R> stream(
+                    final long seed,
+                    final long count,
+                    final Function<FastRandom, ? extends Generator<R>> factory,
+                    final boolean parallel)
+    {
+        return StreamSupport.stream(new SeededSpliterator<R>(seed, count, DEFAULT_BLOCK_SIZE, factory), parallel);
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super R> action)
+    {
+        if (index >= to)
+        {
+            return false;
+        }
+
+        action.accept(next());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(final Consumer<? super R> action)
+    {
+        while (index < to)
+        {
+            action.accept(next());
+        }
+    }
+
+    private R next()
+    {
+        // a new block starts, get its own random source
+        if (generator == null || index % blockSize == 0)
+        {
+            generator = factory.apply(FastRandom.get(seed, index / blockSize));
+        }
+
+        index++;
+        return generator.generate();
+    }
+
+    @Override
+    public Spliterator<R> trySplit()
+    {
+        // we split at block boundaries only, the first block might already be in use
+        final long firstBlock = index / blockSize;
+        final long lastBlock = (to - 1) / blockSize;
+        if (index >= to || lastBlock - firstBlock < 1)
+        {
+            return null;
+        }
+
+        final long mid = ((firstBlock + lastBlock + 1) >>> 1) * blockSize;
+
+        // the prefix takes over our current state
+        final var prefix = new SeededSpliterator<R>(seed, index, mid, blockSize, factory, generator);
+        this.index = mid;
+        this.generator = null;
+
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize()
+    {
+        return to - index;
+    }
+
+    @Override
+    public int characteristics()
+    {
+        return ORDERED | SIZED | SUBSIZED | IMMUTABLE;
+    }
+}
@@ -0,0 +1,218 @@
+package org.rschwietzke.markov;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Tracks the most frequent keys of a stream with a fixed number of counters, the
+ * space saving algorithm of Metwally et al. When all counters are taken, a new key
+ * takes over the counter with the smallest count and inherits that count as its
+ * possible error. Every key more frequent than total / capacity is guaranteed to
+ * be kept.
+ * <p>
+ * The counters are kept in a min heap, so an update is O(log capacity). Each
+ * counter can carry a value, which is dropped when the counter is taken over.
+ * Not thread-safe.
+ *
+ * @author rschwietzke
+ *
+ * @param <K> the key type
+ * @param <V> the type of the value carried along
+ */
+public class SpaceSaving<K, V>
+{
+    /**
+     * A tracked key
+     */
+    public static class Counter<K, V>
+    {
+        public K key;
+
+        // the estimated count, never below the true count
+        public long count;
+
+        // by how much the count might be too high
+        public long error;
+
+        // whatever the caller wants to keep with the key
+        public V value;
+
+        // our position in the heap
+        int index;
+    }
+
+    private final Counter<K, V>[] heap;
+    private final Map<K, Counter<K, V>> counters;
+    private int size;
+
+    /**
+     * Creates a tracker
+     *
+     * @param capacity the number of keys to keep, at least 1
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SpaceSaving(final int capacity)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("Capacity must be at least 1 but was " + capacity);
+        }
+        this.heap = new Counter[capacity];
+        this.counters = new HashMap<>(Math.min(capacity, 1 << 16) * 4 / 3 + 1);
+    }
+
+    /**
+     * Counts a key
+     *
+     * @param key the key
+     * @param delta how often it was seen, at least 1
+     * @return the counter of the key, its value is null when it is new
+     */
+    public Counter<K, V> offer(final K key, final long delta)
+    {
+        return offer(key, delta, Long.MAX_VALUE);
+    }
+
+    /**
+     * Counts a key with an upper bound of its true count from elsewhere, such as a
+     * {@link CountMinSketch}. The bound is only used when the key takes over a
+     * counter and makes the inherited count more precise.
+     *
+     * @param key the key
+     * @param delta how often it was seen, at least 1
+     * @param upperBound a count the key cannot exceed
+     * @return the counter of the key, its value is null when it is new
+     */
+    public Counter<K, V> offer(final K key, final long delta, final long upperBound)
+    {
+        var counter = counters.get(key);
+        if (counter != null)
+        {
+            counter.count += delta;
+            down(counter.index);
+            return counter;
+        }
+
+        if (size < heap.length)
+        {
+            counter = new Counter<>();
+            counter.key = key;
+            counter.count = delta;
+            counter.index = size;
+            heap[size++] = counter;
+            counters.put(key, counter);
+            up(counter.index);
+            return counter;
+        }
+
+        // take over the smallest counter
+        counter = heap[0];
+        counters.remove(counter.key);
+
+        counter.key = key;
+        counter.value = null;
+        counter.count = Math.max(delta, Math.min(counter.count + delta, upperBound));
+        counter.error = counter.count - delta;
+        counters.put(key, counter);
+        down(0);
+
+        return counter;
+    }
+
+    /**
+     * Returns the counter of a key
+     *
+     * @param key the key
+     * @return the counter or null when the key is not tracked
+     */
+    public Counter<K, V> get(final K key)
+    {
+        return counters.get(key);
+    }
+
+    /**
+     * Returns the number of tracked keys
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the number of keys we can track
+     */
+    public int capacity()
+    {
+        return heap.length;
+    }
+
+    /**
+     * Returns the smallest count tracked, 0 when empty
+     */
+    public long min()
+    {
+        return size == 0 ? 0 : heap[0].count;
+    }
+
+    /**
+     * Visits all counters in no particular order
+     *
+     * @param consumer gets each counter
+     */
+    public void forEach(final Consumer<Counter<K, V>> consumer)
+    {
+        for (int i = 0; i < size; i++)
+        {
+            consumer.accept(heap[i]);
+        }
+    }
+
+    private void up(final int from)
+    {
+        int i = from;
+        final var counter = heap[i];
+        while (i > 0)
+        {
+            final int parent = (i - 1) >>> 1;
+            if (heap[parent].count <= counter.count)
+            {
+                break;
+            }
+            move(heap[parent], i);
+            i = parent;
+        }
+        move(counter, i);
+    }
+
+    private void down(final int from)
+    {
+        int i = from;
+        final var counter = heap[i];
+        while (true)
+        {
+            int child = 2 * i + 1;
+            if (child >= size)
+            {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count)
+            {
+                child++;
+            }
+            if (counter.count <= heap[child].count)
+            {
+                break;
+            }
+            move(heap[child], i);
+            i = child;
+        }
+        move(counter, i);
+    }
+
+    private void move(final Counter<K, V> counter, final int index)
+    {
+        heap[index] = counter;
+        counter.index = index;
+    }
+}
@@ -0,0 +1,83 @@
+package org.rschwietzke.markov;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads the symbols of a table when it is stored in binary form.
+ * Null symbols are taken care of by the caller.
+ *
+ * @author rschwietzke
+ *
+ * @param <X> the symbol type
+ */
+public interface SymbolCodec<X>
+{
+    public void write(final DataOutput out, final X x) throws IOException;
+
+    public X read(final DataInput in) throws IOException;
+
+    /**
+     * Strings up to 64k of modified UTF-8
+     */
+    public static final SymbolCodec<String> STRING = new SymbolCodec<>()
+    {
+        @Override
+        public void write(final DataOutput out, final String x) throws IOException
+        {
+            out.writeUTF(x);
+        }
+
+        @Override
+        public String read(final DataInput in) throws IOException
+        {
+            return in.readUTF();
+        }
+    };
+
+    public static final SymbolCodec<Character> CHARACTER = new SymbolCodec<>()
+    {
+        @Override
+        public void write(final DataOutput out, final Character x) throws IOException
+        {
+            out.writeChar(x);
+        }
+
+        @Override
+        public Character read(final DataInput in) throws IOException
+        {
+            return in.readChar();
+        }
+    };
+
+    public static final SymbolCodec<Integer> INTEGER = new SymbolCodec<>()
+    {
+        @Override
+        public void write(final DataOutput out, final Integer x) throws IOException
+        {
+            out.writeInt(x);
+        }
+
+        @Override
+        public Integer read(final DataInput in) throws IOException
+        {
+            return in.readInt();
+        }
+    };
+
+    public static final SymbolCodec<Long> LONG = new SymbolCodec<>()
+    {
+        @Override
+        public void write(final DataOutput out, final Long x) throws IOException
+        {
+            out.writeLong(x);
+        }
+
+        @Override
+        public Long read(final DataInput in) throws IOException
+        {
+            return in.readLong();
+        }
+    };
+}
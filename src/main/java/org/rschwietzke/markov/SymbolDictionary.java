@@ -0,0 +1,122 @@
+package org.rschwietzke.markov;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns symbols into dense int ids starting at 0, so tables can store, hash and
+ * sample ints and only turn them back into symbols at the edge. A dictionary can be
+ * shared by any number of tables, all of them see the same id for the same symbol.
+ * <p>
+ * Thread-safe, lookups do not block, only new symbols take a lock. Null is a
+ * regular symbol. Ids are never removed.
+ *
+ * @author rschwietzke
+ *
+ * @param <X> the symbol type
+ */
+public class SymbolDictionary<X>
+{
+    /**
+     * Returned by {@link #lookup(Object)} for unknown symbols
+     */
+    public static final int NOT_FOUND = -1;
+
+    // stands in for null, the concurrent map does not take null
+    private static final Object NULL = new Object();
+
+    private final ConcurrentHashMap<Object, Integer> ids;
+
+    // written before the id is published, replaced when it grows
+    private volatile Object[] symbols;
+    private int size;
+
+    public SymbolDictionary()
+    {
+        this(16);
+    }
+
+    /**
+     * Creates a dictionary big enough for the expected number of symbols
+     *
+     * @param expected the number of symbols to fit without resizing
+     */
+    public SymbolDictionary(final int expected)
+    {
+        this.ids = new ConcurrentHashMap<>(Math.max(16, expected));
+        this.symbols = new Object[Math.max(16, expected)];
+    }
+
+    /**
+     * Returns the id of the symbol and adds it when it is new
+     *
+     * @param x the symbol
+     * @return the id
+     */
+    public int id(final X x)
+    {
+        final Integer id = ids.get(x == null ? NULL : x);
+        return id != null ? id : add(x);
+    }
+
+    /**
+     * Returns the id of the symbol without adding it
+     *
+     * @param x the symbol
+     * @return the id or {@link #NOT_FOUND}
+     */
+    public int lookup(final X x)
+    {
+        final Integer id = ids.get(x == null ? NULL : x);
+        return id != null ? id : NOT_FOUND;
+    }
+
+    /**
+     * Returns the symbol of an id
+     *
+     * @param id an id handed out by this dictionary
+     * @return the symbol
+     */
+    @SuppressWarnings("unchecked")
+    public X symbol(final int id)
+    {
+        return (X) symbols[id];
+    }
+
+    /**
+     * Returns the number of symbols
+     */
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns all symbols by id, a copy
+     */
+    public synchronized Object[] toArray()
+    {
+        return Arrays.copyOf(symbols, size);
+    }
+
+    private synchronized int add(final X x)
+    {
+        final Object key = x == null ? NULL : x;
+
+        // someone might have been faster
+        final Integer known = ids.get(key);
+        if (known != null)
+        {
+            return known;
+        }
+
+        if (size == symbols.length)
+        {
+            symbols = Arrays.copyOf(symbols, size * 2);
+        }
+        symbols[size] = x;
+        ids.put(key, size);
+
+        return size++;
+    }
+}
@@ -0,0 +1,263 @@
+package org.rschwietzke.markov;
+
+import it.unimi.dsi.util.FastRandom;
+
+/**
+ * The frozen version of a {@link CharMarkovTable}. Same layout as the
+ * {@link CompactMarkovTable}, all cols of all rows back to back in primitive
+ * arrays, but with chars as symbols and packed contexts as rows, so nothing is
+ * ever boxed. A missing row is reported as {@link #NOT_FOUND} instead of an
+ * empty optional.
+ * <p>
+ * Immutable and fit for concurrent use.
+ *
+ * @author rschwietzke
+ *
+ */
+public class TrainedCharMarkovTable
+{
+    /**
+     * Returned by {@link #randomCol(FastRandom, long)} when the row does not exist
+     */
+    public static final int NOT_FOUND = -1;
+
+    /**
+     * How many chars make up the context of a row
+     */
+    public final int order;
+
+    /**
+     * The context of each row, for order 1 just the char
+     */
+    public final long[] rowKeys;
+
+    /**
+     * The aggregated sums of the rows, the last one is the total
+     */
+    public final long[] rowSums;
+
+    /**
+     * Where the cols of a row start, has one more entry than rows to mark the end
+     */
+    public final int[] colStart;
+
+    /**
+     * The chars of all cols, row after row
+     */
+    public final char[] colChars;
+
+    /**
+     * The aggregated sums of all cols, starting again for every row
+     */
+    public final long[] colSums;
+
+    // keeps only the last order chars of a context
+    private final long contextMask;
+
+    // context to row + 1, so that 0 is unknown
+    private final LongLongMap rowIndex;
+
+    // for order 1, the direct char to row + 1 lookup
+    private final int[] charIndex;
+
+    public TrainedCharMarkovTable(final CharMarkovTable src)
+    {
+        final int rows = src.rowCount();
+
+        this.order = src.order;
+        this.contextMask = CharMarkovTable.mask(order);
+        this.rowKeys = new long[rows];
+        this.rowSums = new long[rows];
+        this.colStart = new int[rows + 1];
+        this.rowIndex = new LongLongMap(rows);
+
+        long total = 0;
+        long maxKey = 0;
+        for (int row = 0; row < rows; row++)
+        {
+            final long key = src.rowKey(row);
+            rowKeys[row] = key;
+            total += src.rowCountById(row);
+            rowSums[row] = total;
+            rowIndex.add(key, row + 1);
+            maxKey = Math.max(maxKey, key);
+        }
+
+        if (order == 1)
+        {
+            this.charIndex = new int[rows > 0 ? (int) maxKey + 1 : 0];
+            for (int row = 0; row < rows; row++)
+            {
+                charIndex[(int) rowKeys[row]] = row + 1;
+            }
+        }
+        else
+        {
+            this.charIndex = null;
+        }
+
+        // count the cols per row first, to know where each row starts
+        final int[] colsPerRow = new int[rows];
+        src.forEach((row, col, c) -> colsPerRow[row]++);
+
+        int cols = 0;
+        for (int row = 0; row < rows; row++)
+        {
+            colStart[row] = cols;
+            cols += colsPerRow[row];
+        }
+        colStart[rows] = cols;
+
+        this.colChars = new char[cols];
+        this.colSums = new long[cols];
+
+        // place them, the counts go in first and get aggregated later
+        final int[] next = new int[rows];
+        System.arraycopy(colStart, 0, next, 0, rows);
+        src.forEach((row, col, c) ->
+        {
+            final int pos = next[row]++;
+            colChars[pos] = src.symbol(col);
+            colSums[pos] = c;
+        });
+
+        for (int row = 0; row < rows; row++)
+        {
+            long sum = 0;
+            for (int pos = colStart[row]; pos < colStart[row + 1]; pos++)
+            {
+                sum += colSums[pos];
+                colSums[pos] = sum;
+            }
+        }
+    }
+
+    /**
+     * Returns the last char of a random row
+     */
+    public char randomRow(final FastRandom r)
+    {
+        return (char) randomContext(r);
+    }
+
+    /**
+     * Returns the context of a random row
+     */
+    public long randomContext(final FastRandom r)
+    {
+        final int rows = rowSums.length;
+        final long value = r.nextLong(rowSums[rows - 1]);
+
+        if (Metrics.ENABLED)
+        {
+            Metrics.searched(rows);
+        }
+        return rowKeys[CompactMarkovTable.search(rowSums, 0, rows, value)];
+    }
+
+    /**
+     * Fills the first n slots with the contexts of random rows, the random numbers
+     * are drawn in bulk
+     *
+     * @param r the random source
+     * @param out where to put the contexts
+     * @param n the number of contexts
+     */
+    public void randomContexts(final FastRandom r, final long[] out, final int n)
+    {
+        final int rows = rowSums.length;
+        r.fillLongs(out, n, rowSums[rows - 1]);
+        for (int i = 0; i < n; i++)
+        {
+            if (Metrics.ENABLED)
+            {
+                Metrics.searched(rows);
+            }
+            out[i] = rowKeys[CompactMarkovTable.search(rowSums, 0, rows, out[i])];
+        }
+    }
+
+    /**
+     * Returns a random char following t or {@link #NOT_FOUND}
+     */
+    public int randomCol(final FastRandom r, final char t)
+    {
+        return randomCol(r, (long) t);
+    }
+
+    /**
+     * Returns a random char following the context or {@link #NOT_FOUND}
+     */
+    public int randomCol(final FastRandom r, final long context)
+    {
+        final int row = row(context);
+        if (row == NOT_FOUND)
+        {
+            return NOT_FOUND;
+        }
+
+        final int from = colStart[row];
+        final int to = colStart[row + 1];
+        final long value = r.nextLong(colSums[to - 1]);
+
+        if (Metrics.ENABLED)
+        {
+            Metrics.searched(to - from);
+        }
+        return colChars[CompactMarkovTable.search(colSums, from, to, value)];
+    }
+
+    /**
+     * Appends a char to a context and drops the oldest char when needed
+     *
+     * @param context the current context
+     * @param c the char to append
+     * @return the new context
+     */
+    public long next(final long context, final char c)
+    {
+        return ((context << 16) | c) & contextMask;
+    }
+
+    /**
+     * Appends the chars of a context, oldest first, the padding of shorter 
+     * contexts is skipped
+     * 
+     * @param context the context
+     * @param target where to append to
+     */
+    public void append(final long context, final StringBuilder target)
+    {
+        int i = order - 1;
+        
+        // skip the padding
+        while (i > 0 && (char) (context >>> (16 * i)) == 0)
+        {
+            i--;
+        }
+        for (; i >= 0; i--)
+        {
+            target.append((char) (context >>> (16 * i)));
+        }
+    }
+    
+    /**
+     * Returns the row index of the context or {@link #NOT_FOUND}
+     */
+    public int row(final long context)
+    {
+        if (charIndex != null)
+        {
+            return context >= 0 && context < charIndex.length ? charIndex[(int) context] - 1 : NOT_FOUND;
+        }
+        return (int) rowIndex.get(context) - 1;
+    }
+
+    /**
+     * Returns the number of rows
+     */
+    public int rowCount()
+    {
+        return rowKeys.length;
+    }
+}
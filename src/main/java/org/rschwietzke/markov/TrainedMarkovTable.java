@@ -1,11 +1,19 @@
 package org.rschwietzke.markov;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 import it.unimi.dsi.util.FastRandom;
 
@@ -13,13 +21,17 @@ import it.unimi.dsi.util.FastRandom;
  * This is a ready to use Markov Table aka Chain. It is immutable and fit for 
  * concurrent use if needed. It has sorted rows and cols which can be iterated but 
  * the main purpose is a random access with a random source 
+ * <p>
+ * By default, a draw scans the sorted rows and cols, which is O(n). With {@link Sampling#ALIAS},
+ * alias tables are built for the rows and for each row's cols, so a draw is O(1), independent of 
+ * the number of entries.
  * 
  * @author rschwietzke
  *
  * @param <T>
  * @param <S>
  */
-public class TrainedMarkovTable<T, S>
+public class TrainedMarkovTable<T, S> implements SamplingTable<T, S>
 {
     /**
      * Our data set, for easier testing and extensibility, we keep it open
@@ -27,51 +39,480 @@ public class TrainedMarkovTable<T, S>
     public final List<Row<T, S>> rows = new ArrayList<>();
     
     /**
-     * Our quick access by T
+     * Our quick access by T, a read-only view of the rows backed by a minimal 
+     * perfect hash
      */
-    public final Map<T, Row<T, S>> quickRows = new HashMap<>();
+    public final Map<T, Row<T, S>> quickRows = new QuickRows();
+    
+    // finds the rows by T, set up when summing up; the rows stay sorted for the
+    // linear draws, so we keep them once more in hash order
+    private MinimalPerfectHash rowHash = new MinimalPerfectHash(new Object[0]);
+    private Row<T, S>[] rowsByHash;
     
     // the total sum of all rows for later random weighted access
     public long rowMax = 0;
     
+    /**
+     * How we draw our random data
+     */
+    public final Sampling sampling;
+    
+    /**
+     * How we have been frozen, refreshes use the same pruning
+     */
+    public final FreezeOptions options;
+    
+    // the alias table for the rows, only when sampling with alias tables
+    private AliasTable rowAlias;
+    
+    // the counts pruning dropped by row, kept for refreshes, null when nothing
+    // is pruned or we must not keep them
+    private final Map<T, MarkovTable.Columns<T, S>> pruned;
+    
+    /**
+     * The ways to turn a random number into a row or col
+     */
+    public enum Sampling
+    {
+        /**
+         * Walks the aggregated sums, O(n), keeps the classic behavior
+         */
+        LINEAR,
+        
+        /**
+         * Uses Vose's alias tables for O(1) draws, costs memory and build time
+         */
+        ALIAS
+    }
+    
     public TrainedMarkovTable(final MarkovTable<T, S> src)
     {
+        this(src, FreezeOptions.DEFAULT);
+    }
+    
+    public TrainedMarkovTable(final MarkovTable<T, S> src, final Sampling sampling)
+    {
+        this(src, FreezeOptions.DEFAULT.withSampling(sampling));
+    }
+    
+    /**
+     * Freezes the table with the given sampling and pruning
+     * 
+     * @param src the table to freeze
+     * @param options how to sample and what to prune
+     */
+    public TrainedMarkovTable(final MarkovTable<T, S> src, final FreezeOptions options)
+    {
+        this(options);
         init(src.finish());
     }
     
+    // for the refresh, which fills the rows itself
+    private TrainedMarkovTable(final FreezeOptions options)
+    {
+        this.options = options;
+        this.sampling = options.sampling;
+        
+        if (options.prunes() && options.refreshable)
+        {
+            this.pruned = options.parallel ? new ConcurrentHashMap<>() : new HashMap<>();
+        }
+        else
+        {
+            this.pruned = null;
+        }
+    }
+    
     /**
      * Build it up
      */
     private void init(final MarkovTable<T, S> src)
     {
-        // transform the maps into lists
-        src.rows.forEach((t, s) -> 
+        if (options.parallel)
+        {
+            initParallel(src);
+            return;
+        }
+        
+        long time = Metrics.ENABLED ? System.nanoTime() : 0;
+        
+        // transform the maps into lists, a consuming freeze lets go of each
+        // source row right away
+        final var iterator = src.rows.values().iterator();
+        while (iterator.hasNext())
         {
-            var row = new Row<T, S>(s);
+            final var s = iterator.next();
+            if (options.consume)
+            {
+                iterator.remove();
+            }
             
-            this.rows.add(row);
-            quickRows.put(t, row);
-        });
+            final var row = convert(s, options.consume);
+            if (row != null)
+            {
+                this.rows.add(row);
+            }
+        }
+        if (options.consume)
+        {
+            src.count = 0;
+        }
+        if (Metrics.ENABLED)
+        {
+            time = Metrics.phase(Metrics.Phase.CONVERT, time);
+        }
         
         // sort it and sum it up
         Collections.sort(this.rows);
+        if (Metrics.ENABLED)
+        {
+            time = Metrics.phase(Metrics.Phase.SORT, time);
+        }
+        
+        sum();
+        if (Metrics.ENABLED)
+        {
+            Metrics.phase(Metrics.Phase.SUM, time);
+            Metrics.frozen(rows.size(), colCount(), estimatedBytes());
+        }
+    }
+    
+    /**
+     * Same as init but converts and sorts the rows on the common fork-join pool. 
+     * We keep the iteration order of the source and the parallel sort is stable 
+     * like the sequential one, hence rows with the same count end up in the same 
+     * order and the table is identical.
+     */
+    private void initParallel(final MarkovTable<T, S> src)
+    {
+        long time = Metrics.ENABLED ? System.nanoTime() : 0;
+        
+        final List<MarkovTable.Columns<T, S>> source = new ArrayList<>(src.rows.values());
+        if (options.consume)
+        {
+            src.rows.clear();
+            src.count = 0;
+        }
         
-        long total = 0;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final Row<T, S>[] converted = new Row[source.size()];
+        IntStream.range(0, converted.length).parallel().forEach(i ->
+        {
+            final var columns = source.get(i);
+            if (options.consume)
+            {
+                source.set(i, null);
+            }
+            
+            converted[i] = convert(columns, options.consume);
+        });
+        
+        // close the gaps of the dropped rows
+        int size = 0;
+        for (var row : converted)
+        {
+            if (row != null)
+            {
+                converted[size++] = row;
+            }
+        }
+        
+        if (Metrics.ENABLED)
+        {
+            time = Metrics.phase(Metrics.Phase.CONVERT, time);
+        }
+        
+        Arrays.parallelSort(converted, 0, size);
+        this.rows.addAll(Arrays.asList(converted).subList(0, size));
+        if (Metrics.ENABLED)
+        {
+            time = Metrics.phase(Metrics.Phase.SORT, time);
+        }
+        
+        sum();
+        if (Metrics.ENABLED)
+        {
+            Metrics.phase(Metrics.Phase.SUM, time);
+            Metrics.frozen(rows.size(), colCount(), estimatedBytes());
+        }
+    }
+    
+    /**
+     * Builds the row of the columns and prunes it, whatever the pruning drops goes
+     * to the pruned counts when we keep them
+     * 
+     * @param columns the source row
+     * @param owned true when nobody else holds the columns, so we can keep them
+     * @return the row or null when it was pruned away
+     */
+    private Row<T, S> convert(final MarkovTable.Columns<T, S> columns, final boolean owned)
+    {
+        if (options.keepRow(columns.count))
+        {
+            // when all cols are dropped, they are in the pruned counts already
+            final var row = new Row<T, S>(columns, options, pruned);
+            return row.cols.isEmpty() ? null : row;
+        }
+        
+        if (pruned != null)
+        {
+            if (owned)
+            {
+                pruned.put(columns.type, columns);
+            }
+            else
+            {
+                final var copy = new MarkovTable.Columns<T, S>(columns.type);
+                copy.merge(columns);
+                pruned.put(columns.type, copy);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Sums up the sorted rows, fills the quick access and sets up the alias tables
+     * where missing
+     */
+    private void sum()
+    {
+        if (options.parallel)
+        {
+            sumParallel();
+        }
+        else
+        {
+            long total = 0;
+            for (var row : this.rows)
+            {
+                row.aggregatedSum += total;
+                total = row.aggregatedSum;
+                
+                // keep always the last one
+                rowMax = total;
+            }
+        }
+        
+        rowHash = new MinimalPerfectHash(this.rows.size(), i -> this.rows.get(i).t);
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final Row<T, S>[] byHash = new Row[this.rows.size()];
         for (var row : this.rows)
         {
-            row.aggregatedSum += total;
-            total = row.aggregatedSum;
+            byHash[rowHash.index(row.t)] = row;
+        }
+        rowsByHash = byHash;
+        
+        if (sampling == Sampling.ALIAS && this.rows.isEmpty() == false)
+        {
+            final long[] weights = new long[this.rows.size()];
+            for (int i = 0; i < weights.length; i++)
+            {
+                weights[i] = this.rows.get(i).count;
+            }
+            rowAlias = new AliasTable(weights);
             
-            // keep always the last one
-            rowMax = total;
+            if (options.parallel)
+            {
+                this.rows.parallelStream().filter(row -> row.alias == null).forEach(Row::buildAlias);
+            }
+            else
+            {
+                for (var row : this.rows)
+                {
+                    if (row.alias == null)
+                    {
+                        row.buildAlias();
+                    }
+                }
+            }
         }
     }
+    
+    /**
+     * The row sums as a parallel prefix scan, the rows hold their own count 
+     * as aggregated sum when we start
+     */
+    private void sumParallel()
+    {
+        final long[] sums = new long[this.rows.size()];
+        IntStream.range(0, sums.length).parallel().forEach(i -> sums[i] = this.rows.get(i).aggregatedSum);
+        
+        Arrays.parallelPrefix(sums, Long::sum);
+        
+        IntStream.range(0, sums.length).parallel().forEach(i -> this.rows.get(i).aggregatedSum = sums[i]);
+        if (sums.length > 0)
+        {
+            rowMax = sums[sums.length - 1];
+        }
+    }
+    
+    /**
+     * Returns a new table with the counts of the delta added, same as freezing the
+     * merged training data but only the rows touched by the delta are rebuilt. All 
+     * other rows share their cols and alias tables with this table, only their small 
+     * headers are copied, because their aggregated sums move. This table stays 
+     * unchanged and usable.
+     * <p>
+     * A pruned table must have been frozen as {@link FreezeOptions#refreshable}, it 
+     * prunes the touched rows from their full counts, the kept ones plus the ones 
+     * pruned before, so pruning never drifts.
+     * 
+     * @param delta the counts trained since the last freeze or refresh
+     * @return the refreshed table
+     * @throws IllegalStateException when the table was pruned without keeping the
+     *         pruned counts, see {@link FreezeOptions#refreshable}
+     */
+    public TrainedMarkovTable<T, S> refresh(final MarkovTable<T, S> delta)
+    {
+        if (options.prunes() && pruned == null)
+        {
+            throw new IllegalStateException("The table was pruned without keeping the pruned counts, it cannot be refreshed");
+        }
+        
+        final var result = new TrainedMarkovTable<T, S>(options);
+        
+        // the pruned counts of the untouched rows never change, so we share them
+        if (pruned != null)
+        {
+            pruned.forEach((t, p) -> 
+            {
+                if (delta.rows.containsKey(t) == false)
+                {
+                    result.pruned.put(t, p);
+                }
+            });
+        }
+        
+        // rebuild the touched rows from their old cols, what was pruned and the delta
+        final List<Row<T, S>> changed = new ArrayList<>(delta.rows.size());
+        delta.rows.forEach((t, d) -> 
+        {
+            final var merged = new MarkovTable.Columns<T, S>(t);
+            
+            final var row = quickRows.get(t);
+            if (row != null)
+            {
+                for (var col : row.cols)
+                {
+                    merged.add(col.s, col.count);
+                }
+            }
+            if (pruned != null)
+            {
+                final var p = pruned.get(t);
+                if (p != null)
+                {
+                    merged.merge(p);
+                }
+            }
+            merged.merge(d);
+            
+            final var refreshed = result.convert(merged, true);
+            if (refreshed != null)
+            {
+                changed.add(refreshed);
+            }
+        });
+        Collections.sort(changed);
+        
+        // the untouched rows are still sorted, so we just merge both lists
+        int c = 0;
+        for (var row : rows)
+        {
+            if (delta.rows.containsKey(row.t))
+            {
+                continue;
+            }
+            while (c < changed.size() && changed.get(c).count < row.count)
+            {
+                result.rows.add(changed.get(c++));
+            }
+            result.rows.add(new Row<T, S>(row));
+        }
+        while (c < changed.size())
+        {
+            result.rows.add(changed.get(c++));
+        }
+        
+        result.sum();
+        if (Metrics.ENABLED)
+        {
+            Metrics.frozen(result.rows.size(), result.colCount(), result.estimatedBytes());
+        }
+        
+        return result;
+    }
 
+    /**
+     * Returns the number of cols of all rows
+     */
+    public long colCount()
+    {
+        long cols = 0;
+        for (var row : rows)
+        {
+            cols += row.cols.size();
+        }
+        return cols;
+    }
+    
+    /**
+     * Returns a rough estimate of the heap this table takes with compressed oops,
+     * without the row and col objects themselves, which belong to the caller. 
+     * Shared cols and pruned counts of refreshed tables are counted for each table.
+     */
+    public long estimatedBytes()
+    {
+        // the row list and the index of about 9 bytes per row
+        long bytes = 16 + 4L * rows.size() + 9L * rows.size();
+        
+        for (var row : rows)
+        {
+            final int cols = row.cols.size();
+            
+            // the row, its list and the array of the list, the cols
+            bytes += 48 + 24 + 16 + 4L * cols + 32L * cols;
+            
+            // the alias table, a long and an int per col
+            if (row.alias != null)
+            {
+                bytes += 24 + 32 + 12L * cols;
+            }
+        }
+        if (rowAlias != null)
+        {
+            bytes += 24 + 32 + 12L * rows.size();
+        }
+        
+        // the pruned counts kept for refreshes, a map node and a columns object 
+        // with its map per row, a slot, key, hash and value per col
+        if (pruned != null)
+        {
+            bytes += 16 + 4L * pruned.size();
+            for (var columns : pruned.values())
+            {
+                bytes += 32 + 32 + 48 + 4 * 16 + 24L * columns.columns.size();
+            }
+        }
+        
+        return bytes;
+    }
+    
     /**
      * Returns a random T from a row
      */
+    @Override
     public T randomRow(final FastRandom r)
     {
+        if (rowAlias != null)
+        {
+            if (Metrics.ENABLED)
+            {
+                Metrics.drawn(1);
+            }
+            return rows.get(rowAlias.next(r)).t;
+        }
+        
         // ok, we need the sum to know the max
         // we always start with 1 because an entry has at least 1 as sum!
         var value = r.nextLong(rowMax + 1);
@@ -81,6 +522,10 @@ public class TrainedMarkovTable<T, S>
             var row = rows.get(i);
             if (value <= row.aggregatedSum)
             {
+                if (Metrics.ENABLED)
+                {
+                    Metrics.drawn(i + 1);
+                }
                 return row.t;
             }
         }
@@ -92,49 +537,212 @@ public class TrainedMarkovTable<T, S>
     /**
      * Returns a random col for a t
      */
+    @Override
     public Optional<S> randomCol(final FastRandom r, final T t)
     {
-        var row = quickRows.get(t);
+        var row = row(t);
         if (row != null)
         {
-            var value = r.nextLong(row.colMax + 1);
-            
-            for (int i = 0; i < row.cols.size(); i++)
+            return Optional.of(row.randomCol(r).s);
+        }
+        return Optional.empty();
+    }
+    
+    /**
+     * Returns a random col for a t or the passed sentinel when t is unknown, 
+     * this does not allocate anything
+     */
+    @Override
+    public S randomCol(final FastRandom r, final T t, final S notFound)
+    {
+        var row = row(t);
+        if (row != null)
+        {
+            return row.randomCol(r).s;
+        }
+        return notFound;
+    }
+    
+    /**
+     * Draws n cols of t at once, the row is looked up once and the random numbers 
+     * for the linear sampling are drawn in bulk
+     */
+    @Override
+    public int randomCol(final FastRandom r, final T t, final S[] out, final int n)
+    {
+        var row = row(t);
+        if (row == null)
+        {
+            return 0;
+        }
+        
+        if (row.alias != null)
+        {
+            for (int i = 0; i < n; i++)
             {
-                var col = row.cols.get(i);
-                if (value <= col.aggregatedSum)
+                if (Metrics.ENABLED)
                 {
-                    return Optional.of(col.s);
+                    Metrics.drawn(1);
                 }
+                out[i] = row.cols.get(row.alias.next(r)).s;
             }
+            return n;
+        }
+        
+        final long[] values = Draws.buffer();
+        for (int done = 0; done < n; done += values.length)
+        {
+            final int count = Math.min(values.length, n - done);
+            r.fillLongs(values, count, row.colMax + 1);
+            for (int i = 0; i < count; i++)
+            {
+                out[done + i] = row.col(values[i]).s;
+            }
+        }
+        return n;
+    }
+    
+    /**
+     * Returns the row of t or null
+     */
+    private Row<T, S> row(final T t)
+    {
+        final int i = rowHash.index(t);
+        if (i == MinimalPerfectHash.NOT_FOUND)
+        {
+            return null;
+        }
+        final var row = rowsByHash[i];
+        return Objects.equals(row.t, t) ? row : null;
+    }
+    
+    /**
+     * The map view of the rows, lookups go through the row index
+     */
+    private class QuickRows extends AbstractMap<T, Row<T, S>>
+    {
+        @SuppressWarnings("unchecked")
+        @Override
+        public Row<T, S> get(final Object key)
+        {
+            return row((T) key);
+        }
+        
+        @Override
+        public boolean containsKey(final Object key)
+        {
+            return get(key) != null;
+        }
+        
+        @Override
+        public int size()
+        {
+            return rows.size();
+        }
+        
+        @Override
+        public Set<Map.Entry<T, Row<T, S>>> entrySet()
+        {
+            return new AbstractSet<Map.Entry<T, Row<T, S>>>()
+            {
+                @Override
+                public Iterator<Map.Entry<T, Row<T, S>>> iterator()
+                {
+                    final var i = rows.iterator();
+                    return new Iterator<Map.Entry<T, Row<T, S>>>()
+                    {
+                        @Override
+                        public boolean hasNext()
+                        {
+                            return i.hasNext();
+                        }
+                        
+                        @Override
+                        public Map.Entry<T, Row<T, S>> next()
+                        {
+                            final var row = i.next();
+                            return new AbstractMap.SimpleImmutableEntry<>(row.t, row);
+                        }
+                    };
+                }
+                
+                @Override
+                public int size()
+                {
+                    return rows.size();
+                }
+            };
         }
-        return Optional.empty();
     }
     
     public static class Row<T, S> implements Comparable<Row<T, S>>
     {
         public final T t;
-        public final List<Col<S>> cols = new ArrayList<>();
+        public final List<Col<S>> cols;
         
         // the total sum of all cols for later random weighted access
         public long aggregatedSum;
         public long count;
         public long colMax;
         
+        // only set when we sample with alias tables
+        AliasTable alias;
+        
         public Row(final MarkovTable.Columns<T, S> row)
+        {
+            this(row, FreezeOptions.DEFAULT);
+        }
+        
+        /**
+         * Builds the row and drops the cols the options want to prune
+         */
+        public Row(final MarkovTable.Columns<T, S> row, final FreezeOptions options)
+        {
+            this(row, options, null);
+        }
+        
+        /**
+         * Builds the row, prunes it and puts the dropped cols into the pruned counts
+         * when we keep them
+         */
+        Row(final MarkovTable.Columns<T, S> row, final FreezeOptions options, final Map<T, MarkovTable.Columns<T, S>> pruned)
         {
             this.t = row.type;
+            this.cols = new ArrayList<>(row.columns.size());
             this.aggregatedSum = row.count;
             this.count = row.count;
             
             row.columns.forEach((k, v) -> 
             {
-                cols.add(new Col<S>(v.type, v.count));
+                cols.add(new Col<S>(k, v));
             });
             
-            // sort it and sum it up
+            // sort it, prune it and sum it up
             Collections.sort(cols);
             
+            final int from = options.keepFrom(cols, c -> c.count);
+            if (from > 0)
+            {
+                if (pruned != null)
+                {
+                    final var dropped = new MarkovTable.Columns<T, S>(t);
+                    for (var col : cols.subList(0, from))
+                    {
+                        dropped.add(col.s, col.count);
+                    }
+                    pruned.put(t, dropped);
+                }
+                cols.subList(0, from).clear();
+                
+                long kept = 0;
+                for (var col : cols)
+                {
+                    kept += col.count;
+                }
+                this.count = kept;
+                this.aggregatedSum = kept;
+            }
+            
             long total = 0;
             for (var col : cols)
             {
@@ -146,6 +754,72 @@ public class TrainedMarkovTable<T, S>
             }
         }
         
+        /**
+         * A new header for the cols of the other row, the cols never change after
+         * the build, so they can be shared
+         */
+        Row(final Row<T, S> src)
+        {
+            this.t = src.t;
+            this.cols = src.cols;
+            this.aggregatedSum = src.count;
+            this.count = src.count;
+            this.colMax = src.colMax;
+            this.alias = src.alias;
+        }
+        
+        /**
+         * Returns a random col of this row
+         */
+        Col<S> randomCol(final FastRandom r)
+        {
+            if (alias != null)
+            {
+                if (Metrics.ENABLED)
+                {
+                    Metrics.drawn(1);
+                }
+                return cols.get(alias.next(r));
+            }
+            
+            return col(r.nextLong(colMax + 1));
+        }
+        
+        /**
+         * Returns the first col whose aggregated sum covers the value
+         */
+        Col<S> col(final long value)
+        {
+            for (int i = 0; i < cols.size(); i++)
+            {
+                var col = cols.get(i);
+                if (value <= col.aggregatedSum)
+                {
+                    if (Metrics.ENABLED)
+                    {
+                        Metrics.drawn(i + 1);
+                    }
+                    return col;
+                }
+            }
+            
+            // never get here
+            return cols.get(0);
+        }
+        
+        /**
+         * Set up the alias table for the cols for O(1) access
+         */
+        void buildAlias()
+        {
+            final long[] weights = new long[cols.size()];
+            for (int i = 0; i < weights.length; i++)
+            {
+                weights[i] = cols.get(i).count;
+            }
+            alias = new AliasTable(weights);
+        }
+        
         @Override
         public int compareTo(final Row<T, S> o)
         {
@@ -1,15 +1,205 @@
 package org.rschwietzke.markov;
 
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import it.unimi.dsi.util.FastRandom;
+
+/**
+ * Generates words from the tables a {@link WordTrainer} has trained. A word gets
+ * a random maximum length and a random opening, then chars are drawn from the
+ * context of the last chars until the end marker is drawn or the length is reached.
+ * <p>
+ * All work happens in a reused buffer, only the final String is allocated. The bulk
+ * methods can even skip that. Not thread-safe, because of the buffer and the random
+ * source, use one generator per thread.
+ *
+ * @author rschwietzke
+ *
+ */
 public class WordGenerator implements Generator<String>
 {
-    
-    
+    /**
+     * How often we ignore a premature end before we accept it
+     */
+    public static final int MAX_RETRIES = 10;
+
+    private final TrainedCharMarkovTable start;
+    private final TrainedCharMarkovTable middle;
+    private final TrainedMarkovTable<Integer, Void> wordCount;
+    private final FastRandom random;
+
+    // our reused buffers
+    private final StringBuilder buffer = new StringBuilder(32);
+    private final long[] openings = new long[Draws.BATCH_SIZE];
+
+    /**
+     * Creates a generator
+     *
+     * @param start the opening contexts of words as rows
+     * @param middle the chars following contexts
+     * @param wordCount the lengths of words as rows
+     * @param random the random source to use
+     */
+    public WordGenerator(
+                    final TrainedCharMarkovTable start,
+                    final TrainedCharMarkovTable middle,
+                    final TrainedMarkovTable<Integer, Void> wordCount,
+                    final FastRandom random)
+    {
+        this.start = start;
+        this.middle = middle;
+        this.wordCount = wordCount;
+        this.random = random;
+    }
+
+    /**
+     * Returns a generator sharing the tables but using another random source
+     *
+     * @param random the random source to use
+     * @return a new generator
+     */
+    public WordGenerator withRandom(final FastRandom random)
+    {
+        return new WordGenerator(start, middle, wordCount, random);
+    }
+
+    /**
+     * Returns a stream of count words, reproducible for a seed, even when parallel.
+     * The random source of this generator is not used.
+     *
+     * @param seed the root seed
+     * @param count the number of words
+     * @return a stream of words, can be turned into a parallel one
+     */
+    public Stream<String> stream(final long seed, final long count)
+    {
+        return SeededSpliterator.stream(seed, count, this::withRandom, false);
+    }
 
     @Override
     public String generate()
     {
-        // TODO Auto-generated method stub
-        return null;
+        return generate(buffer).toString();
     }
 
+    /**
+     * Generates a word into the target, which is cleared first
+     *
+     * @param target the builder to fill
+     * @return the target for chaining
+     */
+    public StringBuilder generate(final StringBuilder target)
+    {
+        if (Metrics.ENABLED)
+        {
+            final long start = System.nanoTime();
+            single(target);
+            Metrics.generated(System.nanoTime() - start);
+            return target;
+        }
+
+        return single(target);
+    }
+
+    private StringBuilder single(final StringBuilder target)
+    {
+        final int length = wordCount.randomRow(random);
+        return fill(target, length, start.randomContext(random));
+    }
+
+    /**
+     * Fills the first n slots with new words. The openings of up to
+     * {@link Draws#BATCH_SIZE} words are drawn at once, one bulk fetch of random
+     * numbers and one pass over the row sums of the opening table. Same distribution
+     * as n single calls, but not the same words for the same seed.
+     */
+    @Override
+    public void generate(final String[] out, final int n)
+    {
+        for (int done = 0; done < n; done += openings.length)
+        {
+            final int count = Math.min(openings.length, n - done);
+            start.randomContexts(random, openings, count);
+
+            for (int i = 0; i < count; i++)
+            {
+                if (Metrics.ENABLED)
+                {
+                    final long time = System.nanoTime();
+                    out[done + i] = fill(buffer, wordCount.randomRow(random), openings[i]).toString();
+                    Metrics.generated(System.nanoTime() - time);
+                }
+                else
+                {
+                    out[done + i] = fill(buffer, wordCount.randomRow(random), openings[i]).toString();
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds a word of at most length chars from its opening, the first context of
+     * the middle table
+     */
+    private StringBuilder fill(final StringBuilder target, final int length, final long opening)
+    {
+        target.setLength(0);
+
+        long context = opening;
+        middle.append(context, target);
+
+        int retries = 0;
+        while (target.length() < length)
+        {
+            final int c = middle.randomCol(random, context);
+            if (c == TrainedCharMarkovTable.NOT_FOUND)
+            {
+                break;
+            }
+            if (c == WordTrainer.END)
+            {
+                if (target.length() >= WordTrainer.MIN_LENGTH || ++retries > MAX_RETRIES)
+                {
+                    break;
+                }
+                continue;
+            }
+
+            target.append((char) c);
+            context = middle.next(context, (char) c);
+        }
+
+        return target;
+    }
+
+    /**
+     * Generates n words and hands them over one by one. The char sequence passed
+     * is reused for the next word, so copy it when you want to keep it.
+     *
+     * @param n the number of words
+     * @param consumer gets the words
+     */
+    public void generate(final int n, final Consumer<CharSequence> consumer)
+    {
+        for (int i = 0; i < n; i++)
+        {
+            consumer.accept(generate(buffer));
+        }
+    }
+
+    /**
+     * Fills the array with new words
+     *
+     * @param out the array to fill completely
+     * @return the array for chaining
+     */
+    public CharSequence[] generateInto(final CharSequence[] out)
+    {
+        for (int i = 0; i < out.length; i++)
+        {
+            out[i] = generate(buffer).toString();
+        }
+        return out;
+    }
 }
@@ -1,42 +1,117 @@
 package org.rschwietzke.markov;
 
+import it.unimi.dsi.util.FastRandom;
+
 /**
- * Trains full words by splitting them up into characters that follow characters and enables us to ask for a word
- * later on
+ * Trains full words by splitting them up into characters that follow the last order characters and enables 
+ * us to ask for a word later on
  * 
  * @author rschwietzke
  *
  */
 public class WordTrainer implements Trainer<String, String>
 {
-    private final MarkovTable<String, Void> start = new MarkovTable<>();
-    private final MarkovTable<String, String> middle = new MarkovTable<>();
-    private final MarkovTable<Integer, String> wordCount = new MarkovTable<>();
+    /**
+     * The char we train as follower of the last char of a word
+     */
+    public static final char END = '\0';
+    
+    /**
+     * Words shorter than that are not trained
+     */
+    public static final int MIN_LENGTH = 3;
+    
+    // the opening chars of the words, only the rows matter
+    private final CharMarkovTable start;
+    
+    // the chars following the last order chars
+    private final CharMarkovTable middle;
+    
+    // the length of the words, only the rows matter
+    private final MarkovTable<Integer, Void> wordCount = new MarkovTable<>();
+    
+    /**
+     * Creates a trainer where each char depends on the previous char only
+     */
+    public WordTrainer()
+    {
+        this(1);
+    }
+    
+    /**
+     * Creates a trainer where each char depends on the previous order chars
+     * 
+     * @param order the number of chars to look back, 1 to {@link CharMarkovTable#MAX_ORDER}
+     */
+    public WordTrainer(final int order)
+    {
+        this.start = new CharMarkovTable(order);
+        this.middle = new CharMarkovTable(order);
+    }
     
     @Override
     public void train(final String data)
+    {
+        train((CharSequence) data);
+    }
+    
+    /**
+     * Trains a word without the need for a String, the data is not kept, so
+     * a reused buffer such as the lines of a {@link CorpusReader} is fine
+     * 
+     * @param data the word to train
+     */
+    public void train(final CharSequence data)
     {
         // drop anything that is too short
-        if (data.length() < 3)
+        if (data.length() < MIN_LENGTH)
         {
             return;
         }
         
-        // ok, split the string up and train pairs
-        // but not the 
-        for (int i = 0; i < data.length() - 1; i++)
-        {
-            table.train(String.valueOf(data.charAt(i)), String.valueOf(data.charAt(i + 1)));
-        }
+        // ok, split the string up and train pairs, no need for
+        // any string per char
+        middle.train(data);
         
         // end we train the end too
-        table.train(String.valueOf(data.charAt(data.length() - 1)), "");
+        middle.train(middle.context(data, 0, data.length()), END);
+        
+        // the opening is the first context of the middle table
+        start.train(start.context(data, 0, Math.min(start.order, data.length())), END);
+        
+        // small integers are cached, so no allocation here
+        wordCount.train(data.length(), null);
+    }
+
+    /**
+     * Returns the frozen character transition table
+     *
+     * @return a trained table of the characters following each other
+     */
+    public TrainedCharMarkovTable getTrainedTable()
+    {
+        return middle.freeze();
     }
 
     @Override
-    public Generator<String> generator()
+    public WordGenerator generator()
+    {
+        return generator(new FastRandom());
+    }
+
+    /**
+     * Creates a generator with a predictable random source
+     * 
+     * @param random the random source to use
+     * @return a new generator
+     */
+    public WordGenerator generator(final FastRandom random)
     {
-        return new WordGenerator();
+        return new WordGenerator(
+                        start.freeze(), 
+                        middle.freeze(), 
+                        wordCount.freeze(TrainedMarkovTable.Sampling.ALIAS), 
+                        random);
     }
 
 }
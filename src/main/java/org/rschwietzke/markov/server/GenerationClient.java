@@ -0,0 +1,103 @@
+package org.rschwietzke.markov.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A client of the {@link GenerationServer}, one connection, one request at a time.
+ * Thread-safe, concurrent callers wait for each other, so use one client per
+ * thread for throughput.
+ *
+ * @author rschwietzke
+ *
+ */
+public class GenerationClient implements AutoCloseable
+{
+    private final SocketChannel channel;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    /**
+     * Connects to a server on localhost
+     *
+     * @param port the port of the server
+     * @throws IOException when we cannot connect
+     */
+    public GenerationClient(final int port) throws IOException
+    {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Connects to a server
+     *
+     * @param address the address of the server
+     * @throws IOException when we cannot connect
+     */
+    public GenerationClient(final InetSocketAddress address) throws IOException
+    {
+        this.channel = SocketChannel.open(address);
+        this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    /**
+     * Asks for generated strings
+     *
+     * @param count the number of strings
+     * @return the strings, null where the generator returned null
+     * @throws IOException when the connection breaks or the server reports an error
+     */
+    public synchronized String[] generate(final int count) throws IOException
+    {
+        send(Protocol.GENERATE, count);
+
+        final String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++)
+        {
+            strings[i] = Protocol.readString(in);
+        }
+        return strings;
+    }
+
+    /**
+     * Asks for the current stats of the server
+     *
+     * @return the stats
+     * @throws IOException when the connection breaks or the server reports an error
+     */
+    public synchronized ServerStats stats() throws IOException
+    {
+        send(Protocol.STATS, 0);
+        return Protocol.readStats(in);
+    }
+
+    /**
+     * Sends a request and reads the status of the response
+     */
+    private void send(final byte op, final int argument) throws IOException
+    {
+        out.writeByte(op);
+        out.writeInt(argument);
+        out.flush();
+
+        final byte status = in.readByte();
+        if (status != Protocol.OK)
+        {
+            throw new IOException("Server error: " + in.readUTF());
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+}
@@ -0,0 +1,425 @@
+package org.rschwietzke.markov.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.rschwietzke.markov.Generator;
+import org.rschwietzke.markov.Histogram;
+
+/**
+ * A small embedded server that hands out generated strings over TCP with the
+ * binary {@link Protocol}. Each connection gets its own thread, which just parses
+ * and queues requests. A small pool of workers takes all requests queued so far,
+ * up to the batch size, and serves them in one go through the bulk
+ * {@link Generator#generate(Object[], int)}. Each worker has a generator of its
+ * own, generators are not thread-safe, so it is used by one thread only and stays
+ * hot, and the more clients wait, the larger the batches.
+ * <p>
+ * Listens on localhost by default. Close it to stop accepting, to drop all
+ * connections and to fail the requests still queued.
+ *
+ * @author rschwietzke
+ *
+ */
+public class GenerationServer implements AutoCloseable
+{
+    /**
+     * The default number of requests served by one batch at most
+     */
+    public static final int DEFAULT_MAX_BATCH = 256;
+
+    /**
+     * The longest pause of the acceptor after failing to accept, such as when we
+     * run out of file handles
+     */
+    public static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
+    private final int maxBatch;
+
+    private final ServerSocketChannel server;
+    private final ExecutorService connections;
+    private final Thread acceptor;
+    private final List<Thread> workers;
+
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private volatile boolean running = true;
+
+    // what we did so far
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder results = new LongAdder();
+    private final Histogram latency = new Histogram();
+    private final LongAdder acceptFailures = new LongAdder();
+
+    /**
+     * A queued request
+     */
+    private static class Request
+    {
+        final int count;
+        final long queued = System.nanoTime();
+        final CompletableFuture<String[]> result = new CompletableFuture<>();
+
+        Request(final int count)
+        {
+            this.count = count;
+        }
+    }
+
+    /**
+     * Starts a server with a single worker on a free port of localhost
+     *
+     * @param generator the generator, used by the worker only
+     * @throws IOException when we cannot bind
+     */
+    public GenerationServer(final Generator<String> generator) throws IOException
+    {
+        this(generator, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * Starts a server with a single worker
+     *
+     * @param generator the generator, used by the worker only
+     * @param address where to listen, port 0 picks a free one
+     * @param maxBatch the number of requests served by one batch at most
+     * @throws IOException when we cannot bind
+     */
+    public GenerationServer(final Generator<String> generator, final InetSocketAddress address, final int maxBatch) throws IOException
+    {
+        this(() -> generator, 1, address, maxBatch);
+    }
+
+    /**
+     * Starts a server with several workers on a free port of localhost
+     *
+     * @param generators creates the generator of each worker
+     * @param workers the number of workers
+     * @throws IOException when we cannot bind
+     */
+    public GenerationServer(final Supplier<? extends Generator<String>> generators, final int workers) throws IOException
+    {
+        this(generators, workers, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * Starts a server
+     *
+     * @param generators creates the generator of each worker, called once per worker
+     * @param workers the number of workers
+     * @param address where to listen, port 0 picks a free one
+     * @param maxBatch the number of requests served by one batch at most
+     * @throws IOException when we cannot bind
+     */
+    public GenerationServer(
+                    final Supplier<? extends Generator<String>> generators,
+                    final int workers,
+                    final InetSocketAddress address,
+                    final int maxBatch) throws IOException
+    {
+        if (maxBatch < 1)
+        {
+            throw new IllegalArgumentException("A batch must take at least one request but maxBatch was " + maxBatch);
+        }
+        if (workers < 1)
+        {
+            throw new IllegalArgumentException("We need at least one worker but workers was " + workers);
+        }
+
+        // set up the generators first, so a failing supplier leaves nothing behind
+        final List<Generator<String>> perWorker = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++)
+        {
+            perWorker.add(generators.get());
+        }
+
+        this.maxBatch = maxBatch;
+        this.server = ServerSocketChannel.open().bind(address);
+
+        final AtomicInteger ids = new AtomicInteger();
+        this.connections = Executors.newCachedThreadPool(r ->
+        {
+            final Thread t = new Thread(r, "GenerationServer-connection-" + ids.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        this.workers = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++)
+        {
+            final var generator = perWorker.get(i);
+            final Thread t = new Thread(() -> batch(generator), "GenerationServer-worker-" + (i + 1));
+            t.setDaemon(true);
+            this.workers.add(t);
+            t.start();
+        }
+
+        this.acceptor = new Thread(this::accept, "GenerationServer-acceptor");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    /**
+     * Returns the port we listen on
+     */
+    public int port()
+    {
+        try
+        {
+            return ((InetSocketAddress) server.getLocalAddress()).getPort();
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Server is closed", e);
+        }
+    }
+
+    /**
+     * Returns how often accepting a connection failed, each failure pauses the
+     * acceptor for a while
+     */
+    public long acceptFailures()
+    {
+        return acceptFailures.sum();
+    }
+
+    /**
+     * Returns what we did so far and how many requests are queued right now
+     */
+    public ServerStats stats()
+    {
+        return new ServerStats(
+                        requests.sum(),
+                        batches.sum(),
+                        results.sum(),
+                        queue.size(),
+                        latency.sum(),
+                        latency.max(),
+                        latency.percentile(50),
+                        latency.percentile(99),
+                        latency.percentile(99.9));
+    }
+
+    @Override
+    public void close()
+    {
+        running = false;
+
+        try
+        {
+            server.close();
+        }
+        catch (IOException e)
+        {
+            // nothing to do about it
+        }
+
+        // interrupting a thread in a channel read closes the channel
+        connections.shutdownNow();
+        workers.forEach(Thread::interrupt);
+
+        Request request;
+        while ((request = queue.poll()) != null)
+        {
+            request.result.completeExceptionally(new IllegalStateException("Server closed"));
+        }
+    }
+
+    private static void close(final SocketChannel channel)
+    {
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            // nothing to do about it
+        }
+    }
+
+    private void accept()
+    {
+        long backoff = 0;
+        while (running)
+        {
+            final SocketChannel channel;
+            try
+            {
+                channel = server.accept();
+                backoff = 0;
+            }
+            catch (IOException e)
+            {
+                if (running == false || server.isOpen() == false)
+                {
+                    return;
+                }
+
+                // such as too many open files, that will not go away at once, so
+                // pause instead of spinning, longer each time
+                acceptFailures.increment();
+                backoff = Math.min(MAX_ACCEPT_BACKOFF_MILLIS, Math.max(1, backoff * 2));
+                try
+                {
+                    Thread.sleep(backoff);
+                }
+                catch (InterruptedException ie)
+                {
+                    return;
+                }
+                continue;
+            }
+
+            try
+            {
+                connections.execute(() -> serve(channel));
+            }
+            catch (RuntimeException e)
+            {
+                // the pool is shut down
+                close(channel);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads requests of one connection until it is closed
+     */
+    private void serve(final SocketChannel channel)
+    {
+        try (channel;
+             var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+             var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel))))
+        {
+            int op;
+            while ((op = in.read()) >= 0)
+            {
+                final int argument = in.readInt();
+                switch (op)
+                {
+                    case Protocol.GENERATE:
+                        generate(argument, out);
+                        break;
+                    case Protocol.STATS:
+                        Protocol.writeStats(out, stats());
+                        break;
+                    default:
+                        Protocol.writeError(out, "Unknown op " + op);
+                }
+                out.flush();
+            }
+        }
+        catch (IOException e)
+        {
+            // the client is gone
+        }
+    }
+
+    private void generate(final int count, final DataOutputStream out) throws IOException
+    {
+        if (count < 0 || count > Protocol.MAX_COUNT)
+        {
+            Protocol.writeError(out, "Count must be between 0 and " + Protocol.MAX_COUNT + " but was " + count);
+            return;
+        }
+
+        final var request = new Request(count);
+        queue.add(request);
+
+        final String[] strings;
+        try
+        {
+            strings = request.result.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+        catch (ExecutionException e)
+        {
+            Protocol.writeError(out, String.valueOf(e.getCause()));
+            return;
+        }
+
+        out.writeByte(Protocol.OK);
+        out.writeInt(strings.length);
+        for (var s : strings)
+        {
+            Protocol.writeString(out, s);
+        }
+    }
+
+    /**
+     * The loop of a worker, waits for a request and serves everything else queued
+     * by then too
+     */
+    private void batch(final Generator<String> generator)
+    {
+        final List<Request> batch = new ArrayList<>(maxBatch);
+        while (running)
+        {
+            try
+            {
+                batch.add(queue.take());
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            queue.drainTo(batch, maxBatch - 1);
+
+            batches.increment();
+            for (var request : batch)
+            {
+                String[] strings = null;
+                RuntimeException error = null;
+                try
+                {
+                    strings = new String[request.count];
+                    generator.generate(strings, strings.length);
+                    results.add(strings.length);
+                }
+                catch (RuntimeException e)
+                {
+                    error = e;
+                }
+
+                // count first, so the client sees its own request in the stats
+                latency.record(System.nanoTime() - request.queued);
+                requests.increment();
+
+                if (error == null)
+                {
+                    request.result.complete(strings);
+                }
+                else
+                {
+                    request.result.completeExceptionally(error);
+                }
+            }
+
+            batch.clear();
+        }
+    }
+}
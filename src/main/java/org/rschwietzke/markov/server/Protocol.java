@@ -0,0 +1,79 @@
+package org.rschwietzke.markov.server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The binary protocol between {@link GenerationServer} and {@link GenerationClient},
+ * big-endian as written by the data streams. A request is an op byte and an int
+ * argument. A response starts with a status byte, on error a UTF message follows.
+ * <pre>
+ * GENERATE n  -&gt; OK, int n, n times a present flag and, when present, a UTF string
+ * STATS 0     -&gt; OK, long requests, long batches, long results, int queueDepth,
+ *                long totalLatencyNanos, long maxLatencyNanos, long latencyP50Nanos,
+ *                long latencyP99Nanos, long latencyP999Nanos
+ * </pre>
+ * A generator may return null, the flag carries it over as null.
+ *
+ * @author rschwietzke
+ *
+ */
+final class Protocol
+{
+    static final byte GENERATE = 1;
+    static final byte STATS = 2;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    /**
+     * The most results one request can ask for
+     */
+    static final int MAX_COUNT = 1 << 16;
+
+    private Protocol()
+    {
+    }
+
+    static void writeStats(final DataOutputStream out, final ServerStats stats) throws IOException
+    {
+        out.writeByte(OK);
+        out.writeLong(stats.requests);
+        out.writeLong(stats.batches);
+        out.writeLong(stats.results);
+        out.writeInt(stats.queueDepth);
+        out.writeLong(stats.totalLatencyNanos);
+        out.writeLong(stats.maxLatencyNanos);
+        out.writeLong(stats.latencyP50Nanos);
+        out.writeLong(stats.latencyP99Nanos);
+        out.writeLong(stats.latencyP999Nanos);
+    }
+
+    static ServerStats readStats(final DataInputStream in) throws IOException
+    {
+        return new ServerStats(
+                        in.readLong(), in.readLong(), in.readLong(), in.readInt(),
+                        in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong());
+    }
+
+    static void writeString(final DataOutputStream out, final String s) throws IOException
+    {
+        out.writeBoolean(s != null);
+        if (s != null)
+        {
+            out.writeUTF(s);
+        }
+    }
+
+    static String readString(final DataInputStream in) throws IOException
+    {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static void writeError(final DataOutputStream out, final String message) throws IOException
+    {
+        out.writeByte(ERROR);
+        out.writeUTF(message);
+    }
+}
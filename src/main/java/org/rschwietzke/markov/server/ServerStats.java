@@ -0,0 +1,71 @@
+package org.rschwietzke.markov.server;
+
+import org.rschwietzke.markov.Histogram;
+
+/**
+ * A snapshot of what a {@link GenerationServer} has done so far. Latency is the
+ * time from queueing a request to having its results, so it includes the wait for
+ * the batch. The percentiles come from a {@link Histogram} and are at most 1/64 off.
+ *
+ * @author rschwietzke
+ *
+ */
+public class ServerStats
+{
+    public final long requests;
+    public final long batches;
+    public final long results;
+    public final int queueDepth;
+    public final long totalLatencyNanos;
+    public final long maxLatencyNanos;
+    public final long latencyP50Nanos;
+    public final long latencyP99Nanos;
+    public final long latencyP999Nanos;
+
+    public ServerStats(
+                    final long requests,
+                    final long batches,
+                    final long results,
+                    final int queueDepth,
+                    final long totalLatencyNanos,
+                    final long maxLatencyNanos,
+                    final long latencyP50Nanos,
+                    final long latencyP99Nanos,
+                    final long latencyP999Nanos)
+    {
+        this.requests = requests;
+        this.batches = batches;
+        this.results = results;
+        this.queueDepth = queueDepth;
+        this.totalLatencyNanos = totalLatencyNanos;
+        this.maxLatencyNanos = maxLatencyNanos;
+        this.latencyP50Nanos = latencyP50Nanos;
+        this.latencyP99Nanos = latencyP99Nanos;
+        this.latencyP999Nanos = latencyP999Nanos;
+    }
+
+    /**
+     * Returns the average latency of a request or 0 when there was none
+     */
+    public long averageLatencyNanos()
+    {
+        return requests == 0 ? 0 : totalLatencyNanos / requests;
+    }
+
+    /**
+     * Returns the average number of requests served by one batch
+     */
+    public double averageBatchSize()
+    {
+        return batches == 0 ? 0 : requests / (double) batches;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ServerStats [requests=" + requests + ", batches=" + batches + ", results=" + results
+                        + ", queueDepth=" + queueDepth + ", avgLatencyNanos=" + averageLatencyNanos()
+                        + ", p50LatencyNanos=" + latencyP50Nanos + ", p99LatencyNanos=" + latencyP99Nanos
+                        + ", p999LatencyNanos=" + latencyP999Nanos + ", maxLatencyNanos=" + maxLatencyNanos + "]";
+    }
+}
@@ -0,0 +1,97 @@
+package it.unimi.dsi.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class FastRandomTest
+{
+    @Test
+    void fillLongs()
+    {
+        var single = new FastRandom(42L);
+        var bulk = new FastRandom(42L);
+
+        var out = new long[1000];
+        bulk.fillLongs(out);
+        for (var l : out)
+        {
+            assertEquals(single.nextLong(), l);
+        }
+
+        // and both continue the same way
+        assertEquals(single.nextLong(), bulk.nextLong());
+    }
+
+    @Test
+    void fillLongs_bound()
+    {
+        var single = new FastRandom(42L);
+        var bulk = new FastRandom(42L);
+
+        // a bound close to the max rejects often
+        for (var bound : new long[] {1, 7, 1024, 1_000_003, Long.MAX_VALUE / 3 * 2})
+        {
+            var out = new long[1000];
+            bulk.fillLongs(out, 999, bound);
+            for (int i = 0; i < 999; i++)
+            {
+                assertEquals(single.nextLong(bound), out[i]);
+            }
+            assertEquals(0, out[999]);
+        }
+        assertEquals(single.nextLong(), bulk.nextLong());
+
+        assertThrows(IllegalArgumentException.class, () -> bulk.fillLongs(new long[1], 0));
+    }
+
+    @Test
+    void fillInts()
+    {
+        var single = new FastRandom(7L);
+        var bulk = new FastRandom(7L);
+
+        var out = new int[1000];
+        bulk.fillInts(out, 13);
+        for (var i : out)
+        {
+            assertEquals(single.nextInt(13), i);
+        }
+        assertEquals(single.nextLong(), bulk.nextLong());
+    }
+
+    @Test
+    void fillDoubles()
+    {
+        var single = new FastRandom(7L);
+        var bulk = new FastRandom(7L);
+
+        var out = new double[1000];
+        bulk.fillDoubles(out);
+        for (var d : out)
+        {
+            assertEquals(single.nextDouble(), d);
+        }
+        assertEquals(single.nextLong(), bulk.nextLong());
+    }
+
+    @Test
+    void subclass()
+    {
+        // overrides are respected
+        var r = new FastRandom(1L)
+        {
+            @Override
+            public long nextLong(final long n)
+            {
+                return 3;
+            }
+        };
+
+        var out = new long[3];
+        r.fillLongs(out, 10);
+        assertEquals(3, out[0]);
+        assertEquals(3, out[2]);
+    }
+}
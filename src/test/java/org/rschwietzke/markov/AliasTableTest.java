@@ -0,0 +1,82 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.util.FastRandom;
+
+class AliasTableTest
+{
+    @Test
+    void single()
+    {
+        var a = new AliasTable(new long[] {5});
+        assertEquals(1, a.size());
+        assertEquals(5L, a.capacity());
+
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals(0, a.next(FastRandom.get(i)));
+        }
+    }
+
+    @Test
+    void exact()
+    {
+        verifyExact(new long[] {1, 1});
+        verifyExact(new long[] {1, 2, 3});
+        verifyExact(new long[] {3, 2, 1});
+        verifyExact(new long[] {1, 1, 1, 10, 100});
+        verifyExact(new long[] {7, 0, 13, 1, 1, 2});
+    }
+
+    @Test
+    void overflow()
+    {
+        var a = new AliasTable(new long[] {Long.MAX_VALUE / 2, Long.MAX_VALUE / 4, 1});
+        assertTrue(a.capacity() > 0);
+
+        // the small one might get a little more but never vanishes
+        var r = FastRandom.get(42);
+        var counts = new long[3];
+        for (int i = 0; i < 30_000; i++)
+        {
+            counts[a.next(r)]++;
+        }
+        assertEquals(2.0d, (double) counts[0] / counts[1], 0.1d);
+    }
+
+    @Test
+    void illegal()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new long[0]));
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new long[] {0, 0}));
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new long[] {1, -1}));
+    }
+
+    /**
+     * Walk all buckets and all values, the hits have to be exactly the weights
+     * times the number of buckets
+     */
+    private static void verifyExact(final long[] weights)
+    {
+        var a = new AliasTable(weights);
+        var hits = new long[weights.length];
+
+        for (int b = 0; b < a.size(); b++)
+        {
+            for (long v = 0; v < a.capacity(); v++)
+            {
+                hits[a.select(b, v)]++;
+            }
+        }
+
+        for (int i = 0; i < weights.length; i++)
+        {
+            assertEquals(weights[i] * weights.length, hits[i]);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.util.FastRandom;
+
+/**
+ * Makes sure the hot paths allocate nothing. We measure the bytes the current
+ * thread allocated over many calls, so any allocation per call, even the
+ * smallest object, exceeds the budget of less than a byte per call by far. The
+ * budget leaves room for the few bytes the measurement itself might take.
+ * <p>
+ * Nothing here relies on the JIT removing allocations, the code must not
+ * allocate in the first place, so this holds in the interpreter too.
+ */
+class AllocationTest
+{
+    private static final int CALLS = 20_000;
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    @BeforeAll
+    static void setup()
+    {
+        final var bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "No allocation counting on this JVM");
+
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "No allocation counting on this JVM");
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    private static long allocated()
+    {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Runs the call once to get all lazy setup done, then counts what the calls
+     * allocate
+     */
+    private static void assertNoAllocation(final String name, final Runnable call)
+    {
+        for (int i = 0; i < 1000; i++)
+        {
+            call.run();
+        }
+
+        final long start = allocated();
+        for (int i = 0; i < CALLS; i++)
+        {
+            call.run();
+        }
+        final long bytes = allocated() - start;
+
+        assertTrue(bytes < CALLS, name + " allocated " + bytes + " bytes for " + CALLS + " calls");
+    }
+
+    private static MarkovTable<String, String> table()
+    {
+        var mt = new MarkovTable<String, String>();
+        var r = FastRandom.get(42);
+        for (int i = 0; i < 10_000; i++)
+        {
+            mt.train("r" + r.nextInt(50), "c" + r.nextInt(20));
+        }
+        return mt;
+    }
+
+    @Test
+    void trainedTable()
+    {
+        for (var sampling : TrainedMarkovTable.Sampling.values())
+        {
+            var tt = table().freeze(sampling);
+            var r = FastRandom.get(1);
+            var out = new String[100];
+
+            assertNoAllocation(sampling + " randomRow", () -> tt.randomRow(r));
+            assertNoAllocation(sampling + " randomCol", () -> tt.randomCol(r, "r7", null));
+            assertNoAllocation(sampling + " randomCol unknown", () -> tt.randomCol(r, "x", null));
+            assertNoAllocation(sampling + " randomCol batch", () -> tt.randomCol(r, "r7", out, out.length));
+
+            var refreshable = new RefreshableMarkovTable<>(tt);
+            assertNoAllocation(sampling + " refreshable batch", () -> refreshable.randomCol(r, "r7", out, out.length));
+        }
+    }
+
+    @Test
+    void compactTable()
+    {
+        var ct = table().freezeCompact();
+        var r = FastRandom.get(1);
+        var out = new String[1000];
+
+        assertNoAllocation("randomRow", () -> ct.randomRow(r));
+        assertNoAllocation("randomCol", () -> ct.randomCol(r, "r7", null));
+        assertNoAllocation("randomCol batch", () -> ct.randomCol(r, "r7", out, out.length));
+
+        var ot = table().freezeOffHeap();
+        assertNoAllocation("off-heap randomRow", () -> ot.randomRow(r));
+        assertNoAllocation("off-heap randomCol", () -> ot.randomCol(r, "r7", null));
+    }
+
+    @Test
+    void words()
+    {
+        var trainer = new WordTrainer(2);
+        var words = List.of("Abol", "Agouto", "Albmi", "Alef", "Amateru", "Arber", "Arion", "Arkas", "Asye");
+        words.forEach(trainer::train);
+
+        var g = trainer.generator(FastRandom.get(1));
+        var buffer = new StringBuilder(64);
+        assertNoAllocation("generate", () -> g.generate(buffer));
+
+        var middle = trainer.getTrainedTable();
+        var r = FastRandom.get(1);
+        assertNoAllocation("char randomCol", () -> middle.randomCol(r, middle.randomContext(r)));
+
+        // training known words is free too
+        var word = new StringBuilder("Amateru");
+        assertNoAllocation("train", () -> trainer.train(word));
+    }
+
+    @Test
+    void training()
+    {
+        var mt = table();
+        assertNoAllocation("train", () -> mt.train("r7", "c3"));
+    }
+}
@@ -0,0 +1,60 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.util.FastRandom;
+
+class BoundedMarkovTableTest
+{
+    @Test
+    void sameAsUnboundedWhenItFits()
+    {
+        var r = FastRandom.get(3);
+        var bt = new BoundedMarkovTable<Integer, Integer>(50, 10);
+        var mt = new MarkovTable<Integer, Integer>();
+        for (int i = 0; i < 10_000; i++)
+        {
+            int t = r.nextInt(50);
+            int s = r.nextInt(10);
+            bt.train(t, s);
+            mt.train(t, s);
+        }
+
+        var converted = bt.toMarkovTable();
+        assertEquals(mt.count, converted.count);
+        assertEquals(mt.rows.size(), converted.rows.size());
+        mt.rows.forEach((t, row) -> 
+        {
+            assertEquals(row.count, converted.rows.get(t).count);
+            row.columns.forEach((s, c) -> assertEquals(c, bt.count(t, s)));
+        });
+    }
+
+    @Test
+    void bounded()
+    {
+        var r = FastRandom.get(7);
+        var bt = new BoundedMarkovTable<Integer, Integer>(100, 8, 4096, 4);
+        for (int i = 0; i < 200_000; i++)
+        {
+            // row 0 and col 0 are heavy, the rest is a long tail
+            int t = r.nextBoolean() ? 0 : r.nextInt(100_000);
+            int s = r.nextBoolean() ? 0 : r.nextInt(1000);
+            bt.train(t, s);
+        }
+
+        assertEquals(100, bt.rowCount());
+        var tt = bt.freeze();
+        assertEquals(100, tt.rows.size());
+        tt.rows.forEach(row -> assertTrue(row.cols.size() <= 8));
+
+        // the heavy hitters survived with about their true share
+        var row = tt.quickRows.get(0);
+        assertEquals(100_000, row.count, 2000);
+        assertEquals(row.count / 2, bt.count(0, 0), row.count / 20);
+        assertEquals(Integer.valueOf(0), row.cols.get(row.cols.size() - 1).s);
+    }
+}
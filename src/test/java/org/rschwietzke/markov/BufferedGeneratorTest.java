@@ -0,0 +1,198 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.util.FastRandom;
+
+class BufferedGeneratorTest
+{
+    /**
+     * Hands out 0, 1, 2... per generator
+     */
+    private static Generator<Long> counter()
+    {
+        final var next = new long[1];
+        return () -> next[0]++;
+    }
+
+    private static void awaitSize(final BufferedGenerator<?> g, final int size) throws InterruptedException
+    {
+        final long end = System.currentTimeMillis() + 10_000;
+        while (g.size() < size && System.currentTimeMillis() < end)
+        {
+            Thread.sleep(1);
+        }
+        assertEquals(size, g.size());
+    }
+
+    @Test
+    void fromBuffer() throws InterruptedException
+    {
+        try (var g = new BufferedGenerator<Long>(BufferedGeneratorTest::counter, 16, 4, 12))
+        {
+            assertEquals(16, g.capacity);
+
+            // stops at the high water mark
+            awaitSize(g, 12);
+            Thread.sleep(20);
+            assertEquals(12, g.size());
+
+            // the producer's sequence in order
+            for (long i = 0; i < 8; i++)
+            {
+                assertEquals(i, g.generate());
+            }
+
+            // down to the low water mark, it refills
+            awaitSize(g, 12);
+            for (long i = 8; i < 20; i++)
+            {
+                assertEquals(i, g.generate());
+            }
+            assertEquals(0, g.fallbackCount());
+        }
+    }
+
+    @Test
+    void fallback() throws InterruptedException
+    {
+        var g = new BufferedGenerator<Long>(BufferedGeneratorTest::counter, 4);
+        awaitSize(g, 4);
+        g.close();
+
+        // the rest of the buffer first, then our own generator
+        for (long i = 0; i < 4; i++)
+        {
+            assertEquals(i, g.generate());
+        }
+        assertEquals(0L, g.generate());
+        assertEquals(1L, g.generate());
+        assertEquals(2, g.fallbackCount());
+    }
+
+    @Test
+    void concurrentConsumers() throws InterruptedException
+    {
+        // one shared sequence, so any result handed out twice shows
+        final var shared = new AtomicLong();
+        final Set<Long> seen = ConcurrentHashMap.newKeySet();
+        final int perThread = 50_000;
+
+        try (var g = new BufferedGenerator<Long>(() -> shared::getAndIncrement, 64))
+        {
+            final List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++)
+            {
+                threads.add(new Thread(() ->
+                {
+                    for (int i = 0; i < perThread; i++)
+                    {
+                        assertTrue(seen.add(g.generate()));
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (var t : threads)
+            {
+                t.join();
+            }
+        }
+
+        assertEquals(4 * perThread, seen.size());
+    }
+
+    @Test
+    void words() throws InterruptedException
+    {
+        var trainer = new WordTrainer(2);
+        List.of("Abol", "Agouto", "Albmi", "Alef", "Amateru").forEach(trainer::train);
+
+        final var seeds = new AtomicLong();
+        try (var g = new BufferedGenerator<String>(() -> trainer.generator(FastRandom.get(seeds.incrementAndGet())), 32))
+        {
+            for (int i = 0; i < 100; i++)
+            {
+                var w = g.generate();
+                assertNotNull(w);
+                assertTrue(w.startsWith("A"), w);
+            }
+        }
+    }
+
+    @Test
+    void failingGenerator() throws InterruptedException
+    {
+        // every third call of the producer's generator fails
+        final Generator<Long> failing = new Generator<>()
+        {
+            long next;
+
+            @Override
+            public Long generate()
+            {
+                if (++next % 3 == 0)
+                {
+                    throw new IllegalStateException("failed " + next);
+                }
+                return next;
+            }
+        };
+
+        try (var g = new BufferedGenerator<Long>(() -> failing, 8, 2, 8))
+        {
+            // the producer survives and fills the buffer anyway
+            awaitSize(g, 8);
+            assertTrue(g.failureCount() >= 3, String.valueOf(g.failureCount()));
+            assertTrue(g.lastFailure() instanceof IllegalStateException);
+
+            for (int i = 0; i < 8; i++)
+            {
+                assertTrue(g.generate() % 3 != 0);
+            }
+            awaitSize(g, 8);
+            assertEquals(0, g.fallbackCount());
+        }
+    }
+
+    @Test
+    void consumedAreDropped() throws InterruptedException
+    {
+        try (var g = new BufferedGenerator<Long>(BufferedGeneratorTest::counter, 16, 4, 16))
+        {
+            awaitSize(g, 16);
+            assertEquals(16, g.retained());
+
+            // above the low water mark, the producer sleeps but drops what we took
+            for (int i = 0; i < 10; i++)
+            {
+                g.generate();
+            }
+            final long end = System.currentTimeMillis() + 10_000;
+            while (g.retained() > 6 && System.currentTimeMillis() < end)
+            {
+                Thread.sleep(1);
+            }
+            assertEquals(6, g.retained());
+            assertEquals(6, g.size());
+        }
+    }
+
+    @Test
+    void waterMarks()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new BufferedGenerator<Long>(BufferedGeneratorTest::counter, 0));
+        assertThrows(IllegalArgumentException.class, () -> new BufferedGenerator<Long>(BufferedGeneratorTest::counter, 8, 4, 4));
+        assertThrows(IllegalArgumentException.class, () -> new BufferedGenerator<Long>(BufferedGeneratorTest::counter, 8, 2, 9));
+    }
+}
@@ -0,0 +1,165 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.util.FastRandom;
+
+class CharMarkovTableTest
+{
+    @Test
+    void counts()
+    {
+        var mt = new CharMarkovTable().train('A', 'a').train('A', 'a').train('A', 'b').train('b', 'A');
+
+        assertEquals(4L, mt.count);
+        assertEquals(3, mt.symbolCount());
+        assertEquals(3L, mt.rowCount('A'));
+        assertEquals(0L, mt.rowCount('a'));
+        assertEquals(0L, mt.rowCount('x'));
+        assertEquals(2L, mt.count('A', 'a'));
+        assertEquals(1L, mt.count('A', 'b'));
+        assertEquals(1L, mt.count('b', 'A'));
+        assertEquals(0L, mt.count('a', 'A'));
+        assertTrue(mt.isDense());
+    }
+
+    @Test
+    void trainSequence()
+    {
+        var mt = new CharMarkovTable().train("abab");
+
+        assertEquals(3L, mt.count);
+        assertEquals(2L, mt.count('a', 'b'));
+        assertEquals(1L, mt.count('b', 'a'));
+    }
+
+    @Test
+    void largeAlphabet()
+    {
+        var mt = new CharMarkovTable();
+        var r = FastRandom.get(5);
+
+        // make sure we pass all the growing steps
+        var expected = new long[500][500];
+        for (int i = 0; i < 50_000; i++)
+        {
+            final int t = r.nextInt(500);
+            final int s = r.nextInt(500);
+            mt.train((char) (t + 0x400), (char) (s + 0x400));
+            expected[t][s]++;
+        }
+        assertFalse(mt.isDense());
+        assertEquals(500, mt.symbolCount());
+
+        for (int t = 0; t < 500; t++)
+        {
+            for (int s = 0; s < 500; s++)
+            {
+                assertEquals(expected[t][s], mt.count((char) (t + 0x400), (char) (s + 0x400)));
+            }
+        }
+
+        // the frozen version has to have them all
+        var tt = mt.freeze();
+        assertEquals(500, tt.rowCount());
+        assertEquals(50_000L, tt.rowSums[tt.rowCount() - 1]);
+        for (int row = 0; row < tt.rowCount(); row++)
+        {
+            final int t = (int) tt.rowKeys[row] - 0x400;
+            long sum = 0;
+            for (var s : expected[t])
+            {
+                sum += s;
+            }
+            assertEquals(sum, tt.colSums[tt.colStart[row + 1] - 1]);
+        }
+    }
+
+    @Test
+    void frozenLayout()
+    {
+        var tt = new CharMarkovTable().train('A', 'a').train('A', 'b').train('A', 'b').train('B', 'a').freeze();
+
+        assertEquals(2, tt.rowCount());
+        assertArrayEquals(new long[] {'A', 'B'}, tt.rowKeys);
+        assertArrayEquals(new long[] {3, 4}, tt.rowSums);
+        assertArrayEquals(new int[] {0, 2, 3}, tt.colStart);
+        assertArrayEquals(new char[] {'a', 'b', 'a'}, tt.colChars);
+        assertArrayEquals(new long[] {1, 3, 1}, tt.colSums);
+    }
+
+    @Test
+    void access()
+    {
+        var tt = new CharMarkovTable().train('A', 'a').train('A', 'b').train('A', 'b').train('B', 'a').freeze();
+
+        assertEquals('A', tt.randomRow(LongFastRandom.get(0)));
+        assertEquals('A', tt.randomRow(LongFastRandom.get(2)));
+        assertEquals('B', tt.randomRow(LongFastRandom.get(3)));
+
+        assertEquals('a', tt.randomCol(LongFastRandom.get(0), 'A'));
+        assertEquals('b', tt.randomCol(LongFastRandom.get(1), 'A'));
+        assertEquals('b', tt.randomCol(LongFastRandom.get(2), 'A'));
+        assertEquals('a', tt.randomCol(LongFastRandom.get(0), 'B'));
+
+        // unknown rows, also the ones only seen as col
+        assertEquals(TrainedCharMarkovTable.NOT_FOUND, tt.randomCol(FastRandom.get(1), 'a'));
+        assertEquals(TrainedCharMarkovTable.NOT_FOUND, tt.randomCol(FastRandom.get(1), 'Z'));
+        assertEquals(TrainedCharMarkovTable.NOT_FOUND, tt.randomCol(FastRandom.get(1), '￿'));
+    }
+
+    @Test
+    void context()
+    {
+        var mt = new CharMarkovTable(3);
+
+        assertEquals(0L, mt.context("abcd", 0, 0));
+        assertEquals('a', mt.context("abcd", 0, 1));
+        assertEquals(('a' << 16) | 'b', mt.context("abcd", 0, 2));
+        assertEquals(((long) 'b' << 32) | ('c' << 16) | 'd', mt.context("abcd", 0, 4));
+        assertEquals(mt.context("abcd", 1, 4), mt.next(mt.next(mt.next(0, 'b'), 'c'), 'd'));
+        assertEquals(mt.context("abcd", 0, 4), mt.next(mt.context("abc", 0, 3), 'd'));
+
+        // the full order of 4 uses all bits
+        var mt4 = new CharMarkovTable(4);
+        assertEquals(0xFFFF_0000_0000_0061L, mt4.context("\uFFFFyza", 0, 4) & 0xFFFF_0000_0000_FFFFL);
+    }
+
+    @Test
+    void orderK()
+    {
+        var mt = new CharMarkovTable(2).train("abcab").train("abd");
+
+        // a, ab, bc, ca plus b at the start of the second word is the same as ab
+        assertEquals(4, mt.rowCount());
+        assertEquals(2L, mt.rowCount('a'));
+        assertEquals(2L, mt.count('a', 'b'));
+        assertEquals(1L, mt.count(mt.context("ab", 0, 2), 'c'));
+        assertEquals(1L, mt.count(mt.context("ab", 0, 2), 'd'));
+        assertEquals(1L, mt.count(mt.context("ca", 0, 2), 'b'));
+        assertEquals(0L, mt.count(mt.context("bb", 0, 2), 'b'));
+
+        var tt = mt.freeze();
+        assertEquals(2, tt.order);
+        assertEquals(4, tt.rowCount());
+
+        final long ab = tt.next(tt.next(0, 'a'), 'b');
+        assertEquals('c', tt.randomCol(LongFastRandom.get(0), ab));
+        assertEquals('d', tt.randomCol(LongFastRandom.get(1), ab));
+        assertEquals('a', tt.randomCol(LongFastRandom.get(0), tt.next(ab, 'c')));
+        assertEquals(TrainedCharMarkovTable.NOT_FOUND, tt.randomCol(LongFastRandom.get(0), tt.next(ab, 'd')));
+    }
+
+    @Test
+    void illegalOrder()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new CharMarkovTable(0));
+        assertThrows(IllegalArgumentException.class, () -> new CharMarkovTable(CharMarkovTable.MAX_ORDER + 1));
+    }
+}
@@ -0,0 +1,176 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.util.FastRandom;
+
+class CompactMarkovTableTest
+{
+    @Test
+    void layout()
+    {
+        var mt = new MarkovTable<String, String>();
+        mt.train("A", "a").train("A", "b").train("A", "b");
+        mt.train("B", "a");
+        var ct = mt.freezeCompact();
+
+        assertEquals(2, ct.rowCount());
+        assertEquals(3, ct.colCount());
+
+        // two distinct symbols only, shared by both rows
+        assertEquals(2, ct.symbols.length);
+
+        // the rows are in hash order
+        assertArrayEquals(new Object[] {"B", "A"}, ct.rowKeys);
+        assertArrayEquals(new long[] {1, 4}, ct.rowSums);
+        assertArrayEquals(new int[] {0, 1, 3}, ct.colStart);
+        assertArrayEquals(new long[] {1, 1, 3}, ct.colSums);
+
+        assertEquals("a", ct.symbol(ct.colSymbols[0]));
+        assertEquals("a", ct.symbol(ct.colSymbols[1]));
+        assertEquals("b", ct.symbol(ct.colSymbols[2]));
+    }
+
+    @Test
+    void prune()
+    {
+        var mt = new MarkovTable<String, String>();
+        mt.train("A", "a").train("A", "b").train("A", "b").train("A", "c").train("A", "c").train("A", "c");
+        mt.train("B", "a");
+        mt.train("C", "a").train("C", "a").train("C", "b");
+        var ct = mt.freezeCompact(FreezeOptions.DEFAULT.withMinCount(2).withMinRowCount(2));
+
+        assertArrayEquals(new Object[] {"C", "A"}, ct.rowKeys);
+        assertArrayEquals(new long[] {2, 7}, ct.rowSums);
+        assertArrayEquals(new int[] {0, 1, 3}, ct.colStart);
+        assertArrayEquals(new long[] {2, 2, 5}, ct.colSums);
+        assertEquals(CompactMarkovTable.NOT_FOUND, ct.row("B"));
+    }
+
+    @Test
+    void pruneTies()
+    {
+        // of equal counts, the ones trained last are kept
+        var mt = new MarkovTable<String, String>();
+        mt.train("A", "a").train("A", "b").train("A", "c").train("A", "d").train("A", "d");
+        var ct = mt.freezeCompact(FreezeOptions.DEFAULT.withMaxCols(3));
+
+        assertEquals(3, ct.colCount());
+        assertEquals("b", ct.symbol(ct.colSymbols[0]));
+        assertEquals("c", ct.symbol(ct.colSymbols[1]));
+        assertEquals("d", ct.symbol(ct.colSymbols[2]));
+        assertArrayEquals(new long[] {1, 2, 4}, ct.colSums);
+        assertArrayEquals(new long[] {4}, ct.rowSums);
+    }
+
+    @Test
+    void consume()
+    {
+        var mt = new MarkovTable<String, String>();
+        mt.train("A", "a").train("A", "b").train("A", "b").train("B", "a");
+        var expected = mt.freezeCompact();
+
+        var ct = mt.freezeCompact(FreezeOptions.DEFAULT.withConsume(true));
+        assertTrue(mt.rows.isEmpty());
+        assertEquals(0, mt.count);
+
+        assertArrayEquals(expected.rowKeys, ct.rowKeys);
+        assertArrayEquals(expected.rowSums, ct.rowSums);
+        assertArrayEquals(expected.colSymbols, ct.colSymbols);
+        assertArrayEquals(expected.colSums, ct.colSums);
+    }
+
+    @Test
+    void access()
+    {
+        var mt = new MarkovTable<String, String>();
+        mt.train("A", "d").train("A", "b").train("A", "d").train("A", "d").train("A", "e").train("A", "b");
+        mt.train("B", "a");
+        var ct = mt.freezeCompact();
+
+        assertEquals("B", ct.randomRow(LongFastRandom.get(0)));
+        assertEquals("A", ct.randomRow(LongFastRandom.get(1)));
+        assertEquals("A", ct.randomRow(LongFastRandom.get(6)));
+
+        // the cols in training order, d d d b b e
+        assertEquals("d", ct.randomCol(LongFastRandom.get(0), "A").get());
+        assertEquals("d", ct.randomCol(LongFastRandom.get(2), "A").get());
+        assertEquals("b", ct.randomCol(LongFastRandom.get(3), "A").get());
+        assertEquals("b", ct.randomCol(LongFastRandom.get(4), "A").get());
+        assertEquals("e", ct.randomCol(LongFastRandom.get(5), "A").get());
+        assertEquals("a", ct.randomCol(LongFastRandom.get(0), "B", "x"));
+    }
+
+    @Test
+    void notFound()
+    {
+        var ct = new MarkovTable<String, String>().train("A", "a").freezeCompact();
+        var sentinel = new String("none");
+
+        assertEquals(Optional.empty(), ct.randomCol(FastRandom.get(1), "B"));
+        assertSame(sentinel, ct.randomCol(FastRandom.get(1), "B", sentinel));
+        assertEquals(CompactMarkovTable.NOT_FOUND, ct.row("B"));
+    }
+
+    @Test
+    void batch()
+    {
+        var mt = new MarkovTable<Integer, Integer>();
+        var r = FastRandom.get(12);
+        for (int i = 0; i < 10_000; i++)
+        {
+            mt.train(r.nextInt(5), r.nextInt(r.nextInt(1, 10)));
+        }
+        var ct = mt.freezeCompact();
+
+        // same as single draws, across several bulk fetches
+        var r1 = FastRandom.get(3);
+        var r2 = FastRandom.get(3);
+        var out = new Integer[1000];
+        assertEquals(999, ct.randomCol(r1, 3, out, 999));
+        for (int i = 0; i < 999; i++)
+        {
+            assertEquals(ct.randomCol(r2, 3, -1), out[i]);
+        }
+        assertEquals(null, out[999]);
+        assertEquals(r2.nextLong(), r1.nextLong());
+
+        assertEquals(0, ct.randomCol(r1, 42, out, 10));
+    }
+
+    @Test
+    void sameDistributionAsTrained()
+    {
+        var mt = new MarkovTable<Integer, Integer>();
+        var r = FastRandom.get(12);
+        for (int i = 0; i < 10_000; i++)
+        {
+            mt.train(r.nextInt(5), r.nextInt(r.nextInt(1, 10)));
+        }
+        var ct = mt.freezeCompact();
+        var tt = mt.freeze(TrainedMarkovTable.Sampling.ALIAS);
+
+        var compact = new HashMap<Integer, Integer>();
+        var trained = new HashMap<Integer, Integer>();
+        final int n = 100_000;
+        for (int i = 0; i < n; i++)
+        {
+            compact.merge(ct.randomCol(r, 3, -1), 1, Integer::sum);
+            trained.merge(tt.randomCol(r, 3, -1), 1, Integer::sum);
+        }
+
+        assertEquals(trained.keySet(), compact.keySet());
+        trained.forEach((k, v) ->
+        {
+            assertEquals(v / (double) n, compact.get(k) / (double) n, 0.01d);
+        });
+    }
+}
@@ -0,0 +1,160 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.util.FastRandom;
+
+class ConcurrentMarkovTableTest
+{
+    @Test
+    void singleThread()
+    {
+        var ct = new ConcurrentMarkovTable<Character, Character>();
+        ct.train('A', 'a').train('A', 'b').train('A', 'a').train('B', 'b');
+
+        assertEquals(4L, ct.count());
+        assertEquals(3L, ct.rows.get('A').count());
+
+        var mt = ct.snapshot();
+        assertEquals(4L, mt.count);
+        assertEquals(3L, mt.getRow('A').get().count);
+        assertEquals(2L, mt.getEntry('A', 'a').get().count);
+        assertEquals(1L, mt.getEntry('B', 'b').get().count);
+
+        var tt = ct.freeze();
+        assertEquals(2, tt.rows.size());
+        assertEquals(4L, tt.rowMax);
+    }
+
+    @Test
+    void manyThreads() throws InterruptedException, ExecutionException
+    {
+        final int threads = 8;
+        final int perThread = 50_000;
+
+        var ct = new ConcurrentMarkovTable<Integer, Integer>();
+        var expected = new MarkovTable<Integer, Integer>();
+
+        // the expected result is built from the very same random sequences
+        for (int i = 0; i < threads; i++)
+        {
+            var r = FastRandom.get(i);
+            for (int j = 0; j < perThread; j++)
+            {
+                expected.train(r.nextInt(20), r.nextInt(20));
+            }
+        }
+
+        var pool = Executors.newFixedThreadPool(threads);
+        try
+        {
+            var futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < threads; i++)
+            {
+                final int seed = i;
+                futures.add(pool.submit(() ->
+                {
+                    var r = FastRandom.get(seed);
+                    for (int j = 0; j < perThread; j++)
+                    {
+                        ct.train(r.nextInt(20), r.nextInt(20));
+                    }
+                }));
+            }
+            for (var f : futures)
+            {
+                f.get();
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        assertEquals((long) threads * perThread, ct.count());
+
+        var mt = ct.snapshot();
+        assertEquals(expected.count, mt.count);
+        assertEquals(expected.rows.size(), mt.rows.size());
+        expected.rows.forEach((t, row) ->
+        {
+            assertEquals(row.count, mt.getRow(t).get().count);
+            row.columns.forEach((s, c) ->
+            {
+                assertEquals(c, mt.getEntry(t, s).get().count);
+            });
+        });
+    }
+
+    @Test
+    void freezeWhileTraining() throws InterruptedException, ExecutionException
+    {
+        final int threads = 4;
+
+        var ct = new ConcurrentMarkovTable<Integer, Integer>();
+        var done = new AtomicBoolean();
+
+        var pool = Executors.newFixedThreadPool(threads);
+        try
+        {
+            // many keys, so new rows and cols keep showing up
+            var futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < threads; i++)
+            {
+                final int seed = i;
+                futures.add(pool.submit(() ->
+                {
+                    var r = FastRandom.get(seed);
+                    while (!done.get())
+                    {
+                        ct.train(r.nextInt(100), r.nextInt(100));
+                    }
+                }));
+            }
+
+            var r = FastRandom.get(42);
+            for (int i = 0; i < 20; i++)
+            {
+                var mt = ct.snapshot();
+
+                // no uncounted rows or cols make it in
+                long total = 0;
+                for (var row : mt.rows.values())
+                {
+                    assertTrue(row.count > 0);
+                    row.columns.forEach((s, c) -> assertTrue(c > 0, String.valueOf(c)));
+                    total += row.count;
+                }
+                assertEquals(total, mt.count);
+
+                if (mt.count > 0)
+                {
+                    // alias tables refuse empty rows and zero weights
+                    var tt = mt.freeze(TrainedMarkovTable.Sampling.ALIAS);
+                    tt.randomCol(r, tt.randomRow(r));
+                    mt.freeze().randomRow(r);
+                }
+            }
+
+            done.set(true);
+            for (var f : futures)
+            {
+                f.get();
+            }
+        }
+        finally
+        {
+            done.set(true);
+            pool.shutdown();
+        }
+    }
+}
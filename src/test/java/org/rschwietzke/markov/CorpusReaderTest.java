@@ -0,0 +1,109 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.unimi.dsi.util.FastRandom;
+
+class CorpusReaderTest
+{
+    private List<String> read(final CorpusReader reader, final String s) throws IOException
+    {
+        var result = new ArrayList<String>();
+        var channel = Channels.newChannel(new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8)));
+        var count = reader.read(channel, l -> result.add(l.toString()));
+        assertEquals(result.size(), count);
+        return result;
+    }
+
+    @Test
+    void empty() throws IOException
+    {
+        assertEquals(List.of(), read(new CorpusReader(), ""));
+        assertEquals(List.of(), read(new CorpusReader(), "\n\n  \r\n"));
+    }
+
+    @Test
+    void skipAndTrim() throws IOException
+    {
+        var s = "# comment\nMars\r\n\n  Venus  \n\t\n  # indented comment\nEarth";
+        assertEquals(List.of("Mars", "Venus", "Earth"), read(new CorpusReader(), s));
+    }
+
+    @Test
+    void tinyBuffer() throws IOException
+    {
+        // lines longer than the buffer and chars split across reads
+        var s = "Ärger über Öl\n#no\nsehr lange Zeile mit ß und € und 𝄞 darin\nßß\n";
+        var expected = List.of("Ärger über Öl", "sehr lange Zeile mit ß und € und 𝄞 darin", "ßß");
+        for (int size = 16; size < 64; size++)
+        {
+            assertEquals(expected, read(new CorpusReader(size), s));
+        }
+    }
+
+    @Test
+    void malformed()
+    {
+        var channel = Channels.newChannel(new ByteArrayInputStream(new byte[] {'a', (byte) 0xC3, '\n'}));
+        assertThrows(CharacterCodingException.class, () -> new CorpusReader().read(channel, l -> {}));
+    }
+
+    @Test
+    void sameAsLines() throws IOException, URISyntaxException
+    {
+        var path = Paths.get(getClass().getClassLoader().getResource("planets.txt").toURI());
+        var expected = Files.lines(path)
+                        .map(String::trim)
+                        .filter(s -> !s.isEmpty() && !s.startsWith("#"))
+                        .collect(Collectors.toList());
+
+        var result = new ArrayList<String>();
+        new CorpusReader(32).read(path, l -> result.add(l.toString()));
+        assertEquals(expected, result);
+    }
+
+    @Test
+    void trainWithoutStrings() throws IOException
+    {
+        var s = "Mars\nVenus\n#Pluto\nEarth\n";
+
+        var expected = new WordTrainer(2);
+        List.of("Mars", "Venus", "Earth").forEach(expected::train);
+
+        var trainer = new WordTrainer(2);
+        var channel = Channels.newChannel(new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8)));
+        new CorpusReader().read(channel, trainer::train);
+
+        var a = expected.generator(FastRandom.get(7));
+        var b = trainer.generator(FastRandom.get(7));
+        for (int i = 0; i < 100; i++)
+        {
+            assertEquals(a.generate(), b.generate());
+        }
+    }
+
+    @Test
+    void file(@TempDir final Path dir) throws IOException
+    {
+        var file = dir.resolve("corpus.txt");
+        Files.writeString(file, "one\ntwo\n\nthree");
+        assertEquals(3, new CorpusReader().read(file, l -> {}));
+    }
+}
@@ -0,0 +1,62 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.util.FastRandom;
+
+class CountMinSketchTest
+{
+    @Test
+    void exactWhenSparse()
+    {
+        var sketch = new CountMinSketch(1024, 4);
+        assertEquals(1, sketch.add(7, 1));
+        assertEquals(3, sketch.add(7, 2));
+        assertEquals(1, sketch.add(-7, 1));
+        assertEquals(3, sketch.estimate(7));
+        assertEquals(0, sketch.estimate(8));
+    }
+
+    @Test
+    void neverBelowTrueCount()
+    {
+        var sketch = new CountMinSketch(256, 4);
+        var exact = new HashMap<Long, Long>();
+        var r = FastRandom.get(11);
+
+        final int n = 100_000;
+        for (int i = 0; i < n; i++)
+        {
+            // many more keys than counters
+            long key = r.nextInt(r.nextInt(1, 5000));
+            sketch.add(key, 1);
+            exact.merge(key, 1L, Long::sum);
+        }
+
+        long error = 0;
+        for (var e : exact.entrySet())
+        {
+            long estimate = sketch.estimate(e.getKey());
+            assertTrue(estimate >= e.getValue());
+            error += estimate - e.getValue();
+        }
+
+        // 2 / width of the total is the bound per key, on average we are way below
+        assertTrue(error / exact.size() < 2 * n / 256);
+    }
+
+    @Test
+    void size()
+    {
+        assertEquals(1024, new CountMinSketch(1000, 2).width());
+        assertEquals(2, new CountMinSketch(1000, 2).depth());
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(0, 2));
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(16, 17));
+    }
+}
@@ -0,0 +1,90 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class FreezeOptionsTest
+{
+    // sorted ascending, total of 20
+    private static final List<Long> COUNTS = List.of(1L, 1L, 2L, 3L, 5L, 8L);
+
+    private static int keepFrom(final FreezeOptions options)
+    {
+        return options.keepFrom(COUNTS, Long::longValue);
+    }
+
+    @Test
+    void keepAll()
+    {
+        assertEquals(0, keepFrom(FreezeOptions.DEFAULT));
+        assertTrue(FreezeOptions.DEFAULT.keepRow(1));
+    }
+
+    @Test
+    void minCount()
+    {
+        assertEquals(2, keepFrom(FreezeOptions.DEFAULT.withMinCount(2)));
+        assertEquals(4, keepFrom(FreezeOptions.DEFAULT.withMinCount(4)));
+        assertEquals(6, keepFrom(FreezeOptions.DEFAULT.withMinCount(9)));
+    }
+
+    @Test
+    void maxCols()
+    {
+        assertEquals(4, keepFrom(FreezeOptions.DEFAULT.withMaxCols(2)));
+        assertEquals(0, keepFrom(FreezeOptions.DEFAULT.withMaxCols(10)));
+    }
+
+    @Test
+    void mass()
+    {
+        // 8 + 5 = 13 covers 0.65, 8 + 5 + 3 = 16 covers 0.8
+        assertEquals(4, keepFrom(FreezeOptions.DEFAULT.withMass(0.65d)));
+        assertEquals(3, keepFrom(FreezeOptions.DEFAULT.withMass(0.66d)));
+        assertEquals(3, keepFrom(FreezeOptions.DEFAULT.withMass(0.8d)));
+        assertEquals(5, keepFrom(FreezeOptions.DEFAULT.withMass(0.1d)));
+    }
+
+    @Test
+    void combined()
+    {
+        // mass wants 3 cols, max cols allows 2 only
+        assertEquals(4, keepFrom(FreezeOptions.DEFAULT.withMass(0.8d).withMaxCols(2)));
+        // mass wants 2 cols, min count allows 5 cols
+        assertEquals(4, keepFrom(FreezeOptions.DEFAULT.withMass(0.6d).withMinCount(2)));
+    }
+
+    @Test
+    void rows()
+    {
+        var options = FreezeOptions.DEFAULT.withMinRowCount(3);
+        assertFalse(options.keepRow(2));
+        assertTrue(options.keepRow(3));
+    }
+
+    @Test
+    void prunes()
+    {
+        assertFalse(FreezeOptions.DEFAULT.prunes());
+        assertFalse(FreezeOptions.DEFAULT.withMinCount(1).withParallel(true).prunes());
+        assertTrue(FreezeOptions.DEFAULT.withMinCount(2).prunes());
+        assertTrue(FreezeOptions.DEFAULT.withMaxCols(10).prunes());
+        assertTrue(FreezeOptions.DEFAULT.withMass(0.9d).prunes());
+        assertTrue(FreezeOptions.DEFAULT.withMinRowCount(2).prunes());
+        assertFalse(FreezeOptions.DEFAULT.refreshable);
+    }
+
+    @Test
+    void invalid()
+    {
+        assertThrows(IllegalArgumentException.class, () -> FreezeOptions.DEFAULT.withMaxCols(0));
+        assertThrows(IllegalArgumentException.class, () -> FreezeOptions.DEFAULT.withMass(0.0d));
+        assertThrows(IllegalArgumentException.class, () -> FreezeOptions.DEFAULT.withMass(1.1d));
+    }
+}
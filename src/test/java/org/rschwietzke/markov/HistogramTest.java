@@ -0,0 +1,81 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.util.FastRandom;
+
+class HistogramTest
+{
+    @Test
+    void empty()
+    {
+        var h = new Histogram();
+        assertEquals(0, h.count());
+        assertEquals(0, h.percentile(99));
+        assertEquals(0.0d, h.mean());
+    }
+
+    @Test
+    void smallValuesAreExact()
+    {
+        var h = new Histogram();
+        for (int i = 1; i <= 100; i++)
+        {
+            h.record(i);
+        }
+
+        assertEquals(100, h.count());
+        assertEquals(50, h.percentile(50));
+        assertEquals(99, h.percentile(99));
+        assertEquals(100, h.percentile(100));
+        assertEquals(100, h.max());
+        assertEquals(50.5d, h.mean());
+    }
+
+    @Test
+    void largeValuesWithinPrecision()
+    {
+        var h = new Histogram();
+        var r = FastRandom.get(1);
+        var values = new long[100_000];
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = r.nextLong(10_000_000_000L);
+            h.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (var p : new double[] {50, 90, 99, 99.9})
+        {
+            final long exact = values[(int) Math.ceil(p / 100 * values.length) - 1];
+            final long reported = h.percentile(p);
+            assertTrue(reported >= exact && reported <= exact + exact / 64 + 1, p + ": " + exact + " vs " + reported);
+        }
+        assertEquals(values[values.length - 1], h.max());
+    }
+
+    @Test
+    void buckets()
+    {
+        // every value falls into a bucket whose top is not below it
+        for (long v : new long[] {0, 1, 127, 128, 129, 255, 256, 1000, 1L << 40, Long.MAX_VALUE})
+        {
+            final long top = Histogram.highest(Histogram.index(v));
+            assertTrue(top >= v && top - v <= Math.max(1, v / 64), v + " " + top);
+        }
+
+        var h = new Histogram();
+        h.record(-5);
+        h.record(Long.MAX_VALUE);
+        assertEquals(0, h.percentile(50));
+        assertEquals(Long.MAX_VALUE, h.percentile(100));
+
+        h.reset();
+        assertEquals(0, h.count());
+    }
+}
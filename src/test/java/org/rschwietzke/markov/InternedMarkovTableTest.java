@@ -0,0 +1,133 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.util.FastRandom;
+
+class InternedMarkovTableTest
+{
+    @Test
+    void layout()
+    {
+        var it = new InternedMarkovTable<String, String>();
+        it.train("A", "a").train("A", "b").train("A", "b");
+        it.train("B", "a");
+        var ct = it.freeze();
+
+        assertEquals(3, it.rowCount("A"));
+        assertEquals(2, it.count("A", "b"));
+        assertEquals(0, it.count("B", "b"));
+        assertEquals(0, it.count("C", "b"));
+
+        assertArrayEquals(new Object[] {"B", "A"}, ct.rowKeys);
+        assertArrayEquals(new long[] {1, 4}, ct.rowSums);
+        assertArrayEquals(new int[] {0, 1, 3}, ct.colStart);
+        assertArrayEquals(new long[] {1, 1, 3}, ct.colSums);
+        assertEquals("a", ct.symbol(ct.colSymbols[0]));
+        assertEquals("b", ct.symbol(ct.colSymbols[2]));
+        assertEquals(1, ct.row("A"));
+        assertEquals(CompactMarkovTable.NOT_FOUND, ct.row("C"));
+    }
+
+    @Test
+    void sameAsCompact()
+    {
+        var r = FastRandom.get(21);
+        var it = new InternedMarkovTable<Integer, Integer>();
+        var mt = new MarkovTable<Integer, Integer>();
+        for (int i = 0; i < 50_000; i++)
+        {
+            int t = (int) Math.sqrt(r.nextInt(400));
+            int s = (int) Math.sqrt(r.nextInt(100));
+            it.train(t, s);
+            mt.train(t, s);
+        }
+
+        var a = it.freeze();
+        var b = mt.freezeCompact();
+        assertEquals(b.rowCount(), a.rowCount());
+        assertEquals(b.colCount(), a.colCount());
+
+        // the compact rows are in hash order and cols of equal count might be in
+        // another order, so we compare row by row
+        for (int row = 0; row < a.rowCount(); row++)
+        {
+            final int other = b.row((Integer) a.rowKeys[row]);
+            assertEquals(count(b, other), count(a, row));
+            assertEquals(cols(b, other), cols(a, row));
+        }
+    }
+
+    private static long count(final CompactMarkovTable<Integer, Integer> table, final int row)
+    {
+        return table.rowSums[row] - (row == 0 ? 0 : table.rowSums[row - 1]);
+    }
+
+    private static Map<Object, Long> cols(final CompactMarkovTable<Integer, Integer> table, final int row)
+    {
+        var cols = new HashMap<Object, Long>();
+        long last = 0;
+        for (int i = table.colStart[row]; i < table.colStart[row + 1]; i++)
+        {
+            cols.put(table.symbol(table.colSymbols[i]), table.colSums[i] - last);
+            last = table.colSums[i];
+        }
+        return cols;
+    }
+
+    @Test
+    void sharedDictionary()
+    {
+        // a word chain, rows and cols share one dictionary, so do two tables
+        var words = new SymbolDictionary<String>();
+        var forward = new InternedMarkovTable<String, String>(words, words);
+        var backward = new InternedMarkovTable<String, String>(words, words);
+
+        var text = "the cat saw the dog and the dog saw the cat".split(" ");
+        for (int i = 1; i < text.length; i++)
+        {
+            forward.train(text[i - 1], text[i]);
+            backward.train(text[i], text[i - 1]);
+        }
+        assertEquals(5, words.size());
+
+        var ft = forward.freeze();
+        var bt = backward.freeze();
+        assertEquals("the", ft.randomCol(FastRandom.get(1), "saw").get());
+        assertEquals("the", bt.randomCol(FastRandom.get(1), "cat").get());
+
+        // ids are the dictionary ids in both
+        var fromSaw = ft.colSymbols[ft.colStart[ft.row("saw")]];
+        assertEquals(words.lookup("the"), fromSaw);
+        assertEquals("the", bt.symbol(fromSaw));
+    }
+
+    @Test
+    void sort()
+    {
+        var r = FastRandom.get(4);
+        var keys = new long[1000];
+        var values = new int[1000];
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = r.nextInt(50);
+            values[i] = (int) keys[i] * 7;
+        }
+        InternedMarkovTable.sort(keys, values, 100, 900);
+
+        var expected = Arrays.copyOfRange(keys, 100, 900);
+        Arrays.sort(expected);
+        assertArrayEquals(expected, Arrays.copyOfRange(keys, 100, 900));
+        for (int i = 0; i < keys.length; i++)
+        {
+            assertEquals(keys[i] * 7, values[i]);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashMap;
+
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.util.FastRandom;
+
+class LongLongMapTest
+{
+    @Test
+    void addAndGet()
+    {
+        var m = new LongLongMap(2);
+        assertEquals(0L, m.get(12));
+        assertEquals(1L, m.add(12, 1));
+        assertEquals(3L, m.add(12, 2));
+        assertEquals(5L, m.add(0, 5));
+        assertEquals(-1L, m.add(-1, -1));
+
+        assertEquals(3L, m.get(12));
+        assertEquals(5L, m.get(0));
+        assertEquals(-1L, m.get(-1));
+        assertEquals(3, m.size());
+    }
+
+    @Test
+    void sameAsHashMap()
+    {
+        var m = new LongLongMap();
+        var expected = new HashMap<Long, Long>();
+        var r = FastRandom.get(3);
+
+        for (int i = 0; i < 100_000; i++)
+        {
+            final long k = r.nextLong(20_000) - 100;
+            m.add(k, 1);
+            expected.merge(k, 1L, Long::sum);
+        }
+        assertEquals(expected.size(), m.size());
+
+        var seen = new HashMap<Long, Long>();
+        m.forEach((k, v) -> seen.put(k, v));
+        assertEquals(expected, seen);
+    }
+}
@@ -0,0 +1,180 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.unimi.dsi.util.FastRandom;
+
+class MappedMarkovTableTest
+{
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundtrip() throws IOException
+    {
+        var mt = new MarkovTable<String, String>();
+        var r = FastRandom.get(3);
+        for (int i = 0; i < 5000; i++)
+        {
+            mt.train(r.randomString("abcdefg", 1, 2), r.randomString("xyz", 1));
+        }
+        var ct = mt.freezeCompact();
+
+        var file = dir.resolve("model.mkv");
+        MappedMarkovTable.write(ct, file, SymbolCodec.STRING, SymbolCodec.STRING);
+        var mapped = MappedMarkovTable.open(file, SymbolCodec.STRING, SymbolCodec.STRING);
+
+        assertEquals(ct.rowCount(), mapped.rowCount());
+        assertEquals(ct.colCount(), mapped.colCount());
+
+        // same data, same random, same result
+        var r1 = FastRandom.get(7);
+        var r2 = FastRandom.get(7);
+        for (int i = 0; i < 10_000; i++)
+        {
+            var t = ct.randomRow(r1);
+            assertEquals(t, mapped.randomRow(r2));
+            assertEquals(ct.randomCol(r1, t, null), mapped.randomCol(r2, t, null));
+        }
+
+        var sentinel = "none";
+        assertSame(sentinel, mapped.randomCol(r1, "nothere", sentinel));
+        assertEquals(Optional.empty(), mapped.randomCol(r1, "nothere"));
+    }
+
+    @Test
+    void nullSymbols() throws IOException
+    {
+        var ct = new MarkovTable<Integer, Void>().train(3, null).train(4, null).train(4, null).freezeCompact();
+
+        var file = dir.resolve("lengths.mkv");
+        MappedMarkovTable.write(ct, file, SymbolCodec.INTEGER, null);
+        var mapped = MappedMarkovTable.open(file, SymbolCodec.INTEGER, (SymbolCodec<Void>) null);
+
+        // every value of the total once, so 3 once and 4 twice, whatever the row order
+        var rows = new HashMap<Integer, Integer>();
+        for (int i = 0; i < 3; i++)
+        {
+            rows.merge(mapped.randomRow(LongFastRandom.get(i)), 1, Integer::sum);
+        }
+        assertEquals(Map.of(3, 1, 4, 2), rows);
+        assertEquals(null, mapped.randomCol(LongFastRandom.get(0), 4, null));
+    }
+
+    @Test
+    void notInHashOrder() throws IOException
+    {
+        // the interned table keeps its rows by count, the file gets them in hash order
+        var it = new InternedMarkovTable<String, String>();
+        var r = FastRandom.get(4);
+        for (int i = 0; i < 2000; i++)
+        {
+            it.train(r.randomString("abcdefg", 1, 2), r.randomString("xyz", 1));
+        }
+        var ct = it.freeze();
+
+        var file = dir.resolve("interned.mkv");
+        MappedMarkovTable.write(ct, file, SymbolCodec.STRING, SymbolCodec.STRING);
+        var mapped = MappedMarkovTable.open(file, SymbolCodec.STRING, SymbolCodec.STRING);
+
+        assertEquals(ct.rowCount(), mapped.rowCount());
+        for (int row = 0; row < ct.rowCount(); row++)
+        {
+            var t = (String) ct.rowKeys[row];
+            assertNotEquals(CompactMarkovTable.NOT_FOUND, mapped.row(t));
+            for (int i = 0; i < 10; i++)
+            {
+                assertEquals(ct.randomCol(FastRandom.get(i), t, null), mapped.randomCol(FastRandom.get(i), t, null));
+            }
+        }
+    }
+
+    @Test
+    void corrupt() throws IOException
+    {
+        var ct = new MarkovTable<String, String>().train("a", "b").train("b", "c").freezeCompact();
+        var file = dir.resolve("model.mkv");
+        MappedMarkovTable.write(ct, file, SymbolCodec.STRING, SymbolCodec.STRING);
+        final byte[] valid = Files.readAllBytes(file);
+
+        // cut off
+        Files.write(file, Arrays.copyOf(valid, valid.length - 8));
+        assertThrows(IOException.class, () -> MappedMarkovTable.open(file, SymbolCodec.STRING, SymbolCodec.STRING));
+
+        // the col sums offset behind the end
+        var bytes = valid.clone();
+        ByteBuffer.wrap(bytes).putLong(64, valid.length);
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> MappedMarkovTable.open(file, SymbolCodec.STRING, SymbolCodec.STRING));
+
+        // a huge row count
+        bytes = valid.clone();
+        ByteBuffer.wrap(bytes).putInt(8, Integer.MAX_VALUE);
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> MappedMarkovTable.open(file, SymbolCodec.STRING, SymbolCodec.STRING));
+
+        // an index with more words than it has room for
+        bytes = valid.clone();
+        final int index = (int) ByteBuffer.wrap(bytes).getLong(32);
+        ByteBuffer.wrap(bytes).putInt(index + 8, 1_000);
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> MappedMarkovTable.open(file, SymbolCodec.STRING, SymbolCodec.STRING));
+
+        // and the valid one still opens
+        Files.write(file, valid);
+        assertEquals(0, MappedMarkovTable.open(file, SymbolCodec.STRING, SymbolCodec.STRING).row(
+                        (String) ct.rowKeys[0]));
+    }
+
+    @Test
+    void notAModel() throws IOException
+    {
+        var file = dir.resolve("garbage.mkv");
+        Files.write(file, new byte[200]);
+
+        assertThrows(IOException.class, () -> MappedMarkovTable.open(file, SymbolCodec.STRING, SymbolCodec.STRING));
+    }
+
+    @Test
+    void batch() throws IOException
+    {
+        var mt = new MarkovTable<Integer, Integer>();
+        var r = FastRandom.get(12);
+        for (int i = 0; i < 10_000; i++)
+        {
+            mt.train(r.nextInt(5), r.nextInt(r.nextInt(1, 10)));
+        }
+        var file = dir.resolve("batch.mkv");
+        MappedMarkovTable.write(mt.freezeCompact(), file, SymbolCodec.INTEGER, SymbolCodec.INTEGER);
+        var table = MappedMarkovTable.open(file, SymbolCodec.INTEGER, SymbolCodec.INTEGER);
+
+        // same as single draws, across several bulk fetches
+        var r1 = FastRandom.get(3);
+        var r2 = FastRandom.get(3);
+        var out = new Integer[1000];
+        assertEquals(999, table.randomCol(r1, 3, out, 999));
+        for (int i = 0; i < 999; i++)
+        {
+            assertEquals(table.randomCol(r2, 3, -1), out[i]);
+        }
+        assertEquals(null, out[999]);
+        assertEquals(r2.nextLong(), r1.nextLong());
+
+        assertEquals(0, table.randomCol(r1, 42, out, 10));
+    }
+}
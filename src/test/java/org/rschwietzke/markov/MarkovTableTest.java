@@ -2,10 +2,16 @@ package org.rschwietzke.markov;
 
 import static org.junit.jupiter.api.Assertions.assertFalse;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import org.junit.jupiter.api.Test;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class MarkovTableTest
 {
@@ -123,4 +129,50 @@ class MarkovTableTest
         assertFalse(mtr.getRow('C').isPresent());
         assertFalse(mtr.getEntry('A', 'x').isPresent());
     }
+
+    @Test
+    void merge()
+    {
+        var a = new MarkovTable<Character, Character>().train('A', 'a').train('A', 'b');
+        var b = new MarkovTable<Character, Character>().train('A', 'a').train('B', 'c');
+        var mtr = a.merge(b).finish();
+
+        assertEquals(2, mtr.rows.size());
+        assertEquals(4L, mtr.count);
+        assertEquals(3L, mtr.getRow('A').get().count);
+        assertEquals(2L, mtr.getEntry('A', 'a').get().count);
+        assertEquals(1L, mtr.getEntry('A', 'b').get().count);
+        assertEquals(1L, mtr.getEntry('B', 'c').get().count);
+        assertTrue(0.75d == mtr.getRow('A').get().probability);
+
+        // the source is untouched and shares nothing
+        assertEquals(2L, b.count);
+        assertEquals(1L, b.getEntry('A', 'a').get().count);
+        a.train('B', 'c');
+        assertEquals(1L, b.getEntry('B', 'c').get().count);
+    }
+
+    @Test
+    void serializeAndMerge() throws IOException, ClassNotFoundException
+    {
+        var shard = new MarkovTable<String, String>().train("A", "a").train("A", "a").train("B", "b");
+
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(shard);
+        }
+
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+        {
+            @SuppressWarnings("unchecked")
+            var copy = (MarkovTable<String, String>) in.readObject();
+            var mtr = new MarkovTable<String, String>().train("A", "c").merge(copy);
+
+            assertEquals(4L, mtr.count);
+            assertEquals(3L, mtr.getRow("A").get().count);
+            assertEquals(2L, mtr.getEntry("A", "a").get().count);
+            assertEquals(1L, mtr.getEntry("B", "b").get().count);
+        }
+    }
 }
@@ -0,0 +1,141 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.util.FastRandom;
+
+/**
+ * Needs -Dmarkov.metrics=true, the build runs this test in a JVM of its own with
+ * it, all other tests run with the metrics off
+ */
+class MetricsTest
+{
+    @Test
+    void events()
+    {
+        assumeTrue(Metrics.ENABLED);
+
+        var recorder = new MetricsRecorder();
+        Metrics.addListener(recorder);
+        try
+        {
+            var mt = new MarkovTable<String, String>();
+            mt.train("A", "a").train("A", "a").train("A", "b").train("B", "a");
+            assertEquals(4, recorder.getTrainCount());
+            assertEquals(2, recorder.getRowsCreated());
+            assertEquals(3, recorder.getColsCreated());
+
+            var tt = mt.freeze();
+            assertEquals(1, recorder.getFreezeCount());
+            assertEquals(2, recorder.getFrozenRows());
+            assertEquals(3, recorder.getFrozenCols());
+            assertEquals(tt.estimatedBytes(), recorder.getEstimatedModelBytes());
+            for (var phase : Metrics.Phase.values())
+            {
+                assertTrue(recorder.phaseNanos(phase) > 0, phase.toString());
+            }
+
+            // A is the last row, a the last col of A
+            tt.randomCol(LongFastRandom.get(3), "A");
+            assertEquals(1, recorder.getDrawCount());
+            assertEquals(2, recorder.getMaxScanLength());
+
+            // batches count each draw, alias ones too
+            var out = new String[5];
+            tt.randomCol(FastRandom.get(3), "A", out, out.length);
+            mt.freeze(TrainedMarkovTable.Sampling.ALIAS).randomCol(FastRandom.get(3), "A", out, out.length);
+            assertEquals(11, recorder.getDrawCount());
+
+            // the searching tables, single and batch draws
+            recorder.reset();
+            var ct = mt.freezeCompact();
+            ct.randomRow(FastRandom.get(1));
+            ct.randomCol(FastRandom.get(1), "A", null);
+            ct.randomCol(FastRandom.get(3), "A", out, out.length);
+            assertEquals(7, recorder.getDrawCount());
+            assertEquals(2, recorder.getMaxScanLength());
+
+            var ct2 = new CharMarkovTable(1).train("abab").freeze();
+            recorder.reset();
+            ct2.randomContext(FastRandom.get(1));
+            ct2.randomCol(FastRandom.get(1), 'a');
+            ct2.randomContexts(FastRandom.get(1), new long[4], 4);
+            assertEquals(6, recorder.getDrawCount());
+
+            // the char table counts its training too
+            recorder.reset();
+            new CharMarkovTable(1).train("abab");
+            assertEquals(3, recorder.getTrainCount());
+            assertEquals(2, recorder.getRowsCreated());
+            assertEquals(2, recorder.getColsCreated());
+
+            var trainer = new WordTrainer(2);
+            List.of("Abol", "Agouto", "Albmi").forEach(trainer::train);
+            trainer.generator(FastRandom.get(1)).generate();
+            assertEquals(1, recorder.getGenerationCount());
+            assertTrue(recorder.getGenerationMaxNanos() > 0);
+
+            recorder.reset();
+            assertEquals(0, recorder.getTrainCount());
+            assertEquals(0, recorder.getDrawCount());
+        }
+        finally
+        {
+            Metrics.removeListener(recorder);
+        }
+    }
+
+    @Test
+    void jmx() throws Exception
+    {
+        var recorder = Metrics.registerMBean();
+        assertSame(recorder, Metrics.registerMBean());
+        try
+        {
+            new MarkovTable<Integer, Integer>().train(1, 2).freeze();
+
+            var server = ManagementFactory.getPlatformMBeanServer();
+            var name = new ObjectName(Metrics.OBJECT_NAME);
+            assertEquals(recorder.getTrainCount(), server.getAttribute(name, "TrainCount"));
+            assertEquals(recorder.getFrozenRows(), server.getAttribute(name, "FrozenRows"));
+            if (Metrics.ENABLED)
+            {
+                assertTrue(recorder.getTrainCount() >= 1);
+            }
+        }
+        finally
+        {
+            Metrics.removeListener(recorder);
+        }
+
+        // removing it unregistered it, a new one gets the events again
+        var server = ManagementFactory.getPlatformMBeanServer();
+        var name = new ObjectName(Metrics.OBJECT_NAME);
+        assertFalse(server.isRegistered(name));
+
+        var again = Metrics.registerMBean();
+        assertNotSame(recorder, again);
+        try
+        {
+            assertTrue(server.isRegistered(name));
+            new MarkovTable<Integer, Integer>().train(1, 2);
+            assertEquals(Metrics.ENABLED ? 1L : 0L, again.getTrainCount());
+        }
+        finally
+        {
+            Metrics.removeListener(again);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class MinimalPerfectHashTest
+{
+    @Test
+    void empty()
+    {
+        var mph = new MinimalPerfectHash(new Object[0]);
+        assertEquals(0, mph.size());
+        assertEquals(MinimalPerfectHash.NOT_FOUND, mph.index("a"));
+    }
+
+    @Test
+    void minimalAndPerfect()
+    {
+        final int n = 100_000;
+        var keys = new Object[n];
+        for (int i = 0; i < n; i++)
+        {
+            keys[i] = "key" + i;
+        }
+
+        var mph = new MinimalPerfectHash(keys);
+        var seen = new boolean[n];
+        for (var key : keys)
+        {
+            final int pos = mph.index(key);
+            assertTrue(pos >= 0 && pos < n);
+            assertFalse(seen[pos]);
+            seen[pos] = true;
+        }
+
+        // a few bits per key only
+        assertTrue(mph.bitSize() < n * 8L, mph.toString());
+    }
+
+    @Test
+    void sameHashCode()
+    {
+        // all have the same hash code, so they end up in the fallback
+        var keys = new Object[] {"Aa", "BB", "AaAa", "BBBB", "AaBB", "BBAa", null, "x"};
+
+        var mph = new MinimalPerfectHash(keys);
+        assertTrue(mph.fallbackSize() > 0);
+
+        var seen = new boolean[keys.length];
+        for (var key : keys)
+        {
+            final int pos = mph.index(key);
+            assertTrue(pos >= 0 && pos < keys.length);
+            assertFalse(seen[pos]);
+            seen[pos] = true;
+        }
+    }
+
+    @Test
+    void sameBitsOffHeap()
+    {
+        var keys = new Object[1000];
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = i;
+        }
+        var heap = new MinimalPerfectHash(keys);
+        var direct = heap.offHeap();
+        var rebuilt = new MinimalPerfectHash(heap.size(), heap.levelSizes(), heap.bits(), heap.ranks(), heap.fallback());
+
+        for (var key : keys)
+        {
+            assertEquals(heap.index(key), direct.index(key));
+            assertEquals(heap.index(key), rebuilt.index(key));
+        }
+        assertEquals(heap.bitSize(), direct.bitSize());
+    }
+
+    @Test
+    void rowIndex()
+    {
+        var keys = new Object[] {"a", "b", "c", null};
+        var hash = new MinimalPerfectHash(keys);
+
+        // put the keys into hash order, the hash position is the row
+        var order = RowIndex.hashOrder(hash, keys);
+        var rowKeys = new Object[keys.length];
+        for (int i = 0; i < keys.length; i++)
+        {
+            rowKeys[i] = keys[order[i]];
+        }
+        RowIndex<String> index = RowIndex.perfect(hash, rowKeys);
+
+        for (int i = 0; i < rowKeys.length; i++)
+        {
+            assertEquals(i, index.row((String) rowKeys[i]));
+        }
+        for (int i = 0; i < 1000; i++)
+        {
+            assertEquals(CompactMarkovTable.NOT_FOUND, index.row("unknown" + i));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.util.FastRandom;
+
+class ObjectLongMapTest
+{
+    @Test
+    void addAndGet()
+    {
+        var m = new ObjectLongMap<String>(1);
+        assertEquals(0L, m.get("a"));
+        assertFalse(m.containsKey("a"));
+        assertEquals(1L, m.add("a", 1));
+        assertEquals(3L, m.add("a", 2));
+        assertEquals(5L, m.add(null, 5));
+        assertEquals(0L, m.add("b", 0));
+
+        assertEquals(3L, m.get("a"));
+        assertEquals(5L, m.get(null));
+        assertTrue(m.containsKey("b"));
+        assertEquals(3, m.size());
+    }
+
+    @Test
+    void insertionOrder()
+    {
+        var m = new ObjectLongMap<String>();
+        var keys = List.of("z", "a", "m", "b", "y", "c", "x", "d", "w", "e");
+        for (var k : keys)
+        {
+            m.add(k, 1);
+        }
+        m.add("a", 1);
+
+        var seen = new ArrayList<String>();
+        m.forEach((k, v) -> seen.add(k));
+        assertEquals(keys, seen);
+    }
+
+    @Test
+    void sameAsHashMap()
+    {
+        var m = new ObjectLongMap<Long>();
+        var expected = new HashMap<Long, Long>();
+        var r = FastRandom.get(3);
+
+        for (int i = 0; i < 100_000; i++)
+        {
+            final Long k = r.nextLong(20_000) - 100;
+            m.add(k, 1);
+            expected.merge(k, 1L, Long::sum);
+        }
+        assertEquals(expected.size(), m.size());
+
+        var seen = new HashMap<Long, Long>();
+        m.forEach((k, v) -> seen.put(k, v));
+        assertEquals(expected, seen);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void serialize() throws IOException, ClassNotFoundException
+    {
+        var m = new ObjectLongMap<String>();
+        for (int i = 0; i < 100; i++)
+        {
+            m.add("k" + i, i);
+        }
+        m.add(null, 7);
+
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(m);
+        }
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+        {
+            var copy = (ObjectLongMap<String>) in.readObject();
+            assertEquals(101, copy.size());
+            assertEquals(42L, copy.get("k42"));
+            assertEquals(7L, copy.get(null));
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.util.FastRandom;
+
+class OffHeapMarkovTableTest
+{
+    @Test
+    void sameAsCompact()
+    {
+        var mt = new MarkovTable<String, String>();
+        var r = FastRandom.get(5);
+        for (int i = 0; i < 20_000; i++)
+        {
+            mt.train(r.randomString("abcdefgh", 1, 3), r.randomString("xyz", 1));
+        }
+        var ct = mt.freezeCompact();
+        var ot = new OffHeapMarkovTable<String, String>(ct);
+
+        assertEquals(ct.rowCount(), ot.rowCount());
+        assertEquals(ct.colCount(), ot.colCount());
+
+        // every row key must be found at the same place
+        for (int i = 0; i < ct.rowCount(); i++)
+        {
+            var t = (String) ct.rowKeys[i];
+            assertEquals(i, ot.row(t));
+        }
+
+        var r1 = FastRandom.get(9);
+        var r2 = FastRandom.get(9);
+        for (int i = 0; i < 10_000; i++)
+        {
+            var t = ct.randomRow(r1);
+            assertEquals(t, ot.randomRow(r2));
+            assertEquals(ct.randomCol(r1, t, null), ot.randomCol(r2, t, null));
+        }
+    }
+
+    @Test
+    void streamed()
+    {
+        var mt = new MarkovTable<String, String>();
+        var r = FastRandom.get(5);
+        for (int i = 0; i < 20_000; i++)
+        {
+            mt.train(r.randomString("abcdefgh", 1, 3), r.randomString("xyz", 1));
+        }
+        var ct = mt.freezeCompact();
+        var ot = mt.freezeOffHeap();
+
+        assertEquals(ct.rowCount(), ot.rowCount());
+        assertEquals(ct.colCount(), ot.colCount());
+
+        // same rows at the same place, the cols in training order, so every value
+        // of a row's total once has to give the trained counts
+        for (int i = 0; i < ct.rowCount(); i++)
+        {
+            var t = (String) ct.rowKeys[i];
+            assertEquals(i, ot.row(t));
+
+            var row = mt.rows.get(t);
+            var counts = new HashMap<String, Long>();
+            for (int v = 0; v < row.count; v++)
+            {
+                counts.merge(ot.randomCol(LongFastRandom.get(v), t, null), 1L, Long::sum);
+            }
+            counts.forEach((s, c) -> assertEquals(row.columns.get(s), c));
+            assertEquals(row.columns.size(), counts.size());
+        }
+        assertEquals(ct.randomRow(FastRandom.get(3)), ot.randomRow(FastRandom.get(3)));
+    }
+
+    @Test
+    void access()
+    {
+        var mt = new MarkovTable<String, String>();
+        mt.train("A", "d").train("A", "b").train("A", "d").train("A", "d").train("A", "e").train("A", "b");
+        mt.train("B", "a");
+        var ot = mt.freezeOffHeap();
+
+        // the rows in hash order, so every value of the total once gives A 6 and B 1 times
+        var rows = new HashMap<String, Integer>();
+        for (int i = 0; i < 7; i++)
+        {
+            rows.merge(ot.randomRow(LongFastRandom.get(i)), 1, Integer::sum);
+        }
+        assertEquals(Map.of("A", 6, "B", 1), rows);
+
+        // the cols in training order, d d d b b e
+        assertEquals("d", ot.randomCol(LongFastRandom.get(0), "A").get());
+        assertEquals("d", ot.randomCol(LongFastRandom.get(2), "A").get());
+        assertEquals("b", ot.randomCol(LongFastRandom.get(3), "A").get());
+        assertEquals("e", ot.randomCol(LongFastRandom.get(5), "A").get());
+        assertEquals("a", ot.randomCol(LongFastRandom.get(0), "B", "x"));
+    }
+
+    @Test
+    void nullAndMissingRows()
+    {
+        var mt = new MarkovTable<String, String>();
+        mt.train(null, "a").train("A", "b");
+        var ot = mt.freezeOffHeap();
+        var sentinel = new String("none");
+
+        assertEquals("a", ot.randomCol(FastRandom.get(1), null).get());
+        assertEquals(Optional.empty(), ot.randomCol(FastRandom.get(1), "B"));
+        assertSame(sentinel, ot.randomCol(FastRandom.get(1), "B", sentinel));
+        assertEquals(CompactMarkovTable.NOT_FOUND, ot.row("B"));
+    }
+
+    @Test
+    void batch()
+    {
+        var mt = new MarkovTable<Integer, Integer>();
+        var r = FastRandom.get(12);
+        for (int i = 0; i < 10_000; i++)
+        {
+            mt.train(r.nextInt(5), r.nextInt(r.nextInt(1, 10)));
+        }
+        var table = mt.freezeOffHeap();
+
+        // same as single draws, across several bulk fetches
+        var r1 = FastRandom.get(3);
+        var r2 = FastRandom.get(3);
+        var out = new Integer[1000];
+        assertEquals(999, table.randomCol(r1, 3, out, 999));
+        for (int i = 0; i < 999; i++)
+        {
+            assertEquals(table.randomCol(r2, 3, -1), out[i]);
+        }
+        assertEquals(null, out[999]);
+        assertEquals(r2.nextLong(), r1.nextLong());
+
+        assertEquals(0, table.randomCol(r1, 42, out, 10));
+    }
+}
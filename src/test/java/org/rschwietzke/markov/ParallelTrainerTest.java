@@ -0,0 +1,86 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.util.FastRandom;
+
+class ParallelTrainerTest
+{
+    private static void trainWord(final MarkovTable<Character, Character> table, final String word)
+    {
+        for (int i = 0; i < word.length() - 1; i++)
+        {
+            table.train(word.charAt(i), word.charAt(i + 1));
+        }
+    }
+
+    @Test
+    void sameAsSequential()
+    {
+        var r = FastRandom.get(1);
+        var corpus = new ArrayList<String>();
+        for (int i = 0; i < 10_000; i++)
+        {
+            corpus.add(r.randomString("abcdefgh", 2, 10));
+        }
+
+        var expected = new MarkovTable<Character, Character>();
+        corpus.forEach(w -> trainWord(expected, w));
+
+        var pool = new ForkJoinPool(4);
+        try
+        {
+            var trainer = new ParallelTrainer<String, Character, Character>(ParallelTrainerTest::trainWord, 100, pool);
+            verify(expected, trainer.train(corpus));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void mergeShards()
+    {
+        var expected = new MarkovTable<Integer, Integer>();
+        var shards = new ArrayList<MarkovTable<Integer, Integer>>();
+
+        var r = FastRandom.get(2);
+        for (int i = 0; i < 7; i++)
+        {
+            var shard = new MarkovTable<Integer, Integer>();
+            for (int j = 0; j < 1000; j++)
+            {
+                final int t = r.nextInt(10);
+                final int s = r.nextInt(10 + i);
+                shard.train(t, s);
+                expected.train(t, s);
+            }
+            shards.add(shard);
+        }
+
+        verify(expected, ParallelTrainer.merge(shards));
+        assertEquals(0, ParallelTrainer.merge(new ArrayList<MarkovTable<Integer, Integer>>()).rows.size());
+    }
+
+    private static <T, S> void verify(final MarkovTable<T, S> expected, final MarkovTable<T, S> actual)
+    {
+        assertEquals(expected.count, actual.count);
+        assertEquals(expected.rows.size(), actual.rows.size());
+        expected.rows.forEach((t, row) ->
+        {
+            var other = actual.getRow(t).get();
+            assertEquals(row.count, other.count);
+            assertEquals(row.columns.size(), other.columns.size());
+            row.columns.forEach((s, c) ->
+            {
+                assertEquals(c, other.entry(s).count);
+            });
+        });
+    }
+}
@@ -0,0 +1,85 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.util.FastRandom;
+
+class RefreshableMarkovTableTest
+{
+    @Test
+    void swap()
+    {
+        var tt = new MarkovTable<String, String>().train("A", "a").freeze();
+        var table = new RefreshableMarkovTable<>(tt);
+        assertSame(tt, table.get());
+        assertEquals("none", table.randomCol(FastRandom.get(1), "B", "none"));
+
+        var refreshed = table.refresh(new MarkovTable<String, String>().train("B", "b"));
+        assertSame(refreshed, table.get());
+        assertEquals("b", table.randomCol(FastRandom.get(1), "B", "none"));
+        assertEquals("a", table.randomCol(FastRandom.get(1), "A").get());
+    }
+
+    @Test
+    void readWhileRefreshing() throws InterruptedException
+    {
+        var table = new RefreshableMarkovTable<>(new MarkovTable<Integer, Integer>().train(0, 0).freeze());
+        var failed = new AtomicBoolean();
+        var done = new AtomicBoolean();
+
+        // every row ever trained has only its own number as col
+        var reader = new Thread(() -> 
+        {
+            var r = FastRandom.get(3);
+            while (!done.get())
+            {
+                var t = table.randomRow(r);
+                if (!t.equals(table.randomCol(r, t, -1)))
+                {
+                    failed.set(true);
+                }
+            }
+        });
+        reader.start();
+
+        for (int i = 1; i < 500; i++)
+        {
+            table.refresh(new MarkovTable<Integer, Integer>().train(i % 50, i % 50));
+        }
+        done.set(true);
+        reader.join();
+
+        assertFalse(failed.get());
+        assertEquals(500, table.get().rowMax);
+    }
+
+    @Test
+    void batch()
+    {
+        var mt = new MarkovTable<Integer, Integer>();
+        var r = FastRandom.get(12);
+        for (int i = 0; i < 1000; i++)
+        {
+            mt.train(r.nextInt(3), r.nextInt(10));
+        }
+        var table = new RefreshableMarkovTable<>(mt.freeze(TrainedMarkovTable.Sampling.ALIAS));
+
+        // the bulk path of the current table
+        var r1 = FastRandom.get(3);
+        var r2 = FastRandom.get(3);
+        var out = new Integer[300];
+        assertEquals(300, table.randomCol(r1, 1, out, 300));
+        var expected = new Integer[300];
+        assertEquals(300, table.get().randomCol(r2, 1, expected, 300));
+        assertArrayEquals(expected, out);
+
+        assertEquals(0, table.randomCol(r1, 42, out, 10));
+    }
+}
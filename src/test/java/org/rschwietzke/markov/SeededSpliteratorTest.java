@@ -0,0 +1,100 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.util.FastRandom;
+
+class SeededSpliteratorTest
+{
+    private static Generator<Long> numbers(final FastRandom r)
+    {
+        return () -> r.nextLong(1000);
+    }
+
+    @Test
+    void sameForAnySplit()
+    {
+        var expected = SeededSpliterator.stream(42, 10_000, SeededSpliteratorTest::numbers, false).collect(Collectors.toList());
+        assertEquals(10_000, expected.size());
+
+        var parallel = SeededSpliterator.stream(42, 10_000, SeededSpliteratorTest::numbers, true).collect(Collectors.toList());
+        assertEquals(expected, parallel);
+
+        // a pool of another size splits differently
+        var pool = new ForkJoinPool(3);
+        try
+        {
+            var other = pool.submit(() -> SeededSpliterator.stream(42, 10_000, SeededSpliteratorTest::numbers, true).collect(Collectors.toList())).get();
+            assertEquals(expected, other);
+        }
+        catch (Exception e)
+        {
+            throw new AssertionError(e);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        // another seed, other data
+        assertNotEquals(expected, SeededSpliterator.stream(43, 10_000, SeededSpliteratorTest::numbers, false).collect(Collectors.toList()));
+    }
+
+    @Test
+    void splitAtBlocks()
+    {
+        var s = new SeededSpliterator<Long>(1, 10, 4, SeededSpliteratorTest::numbers);
+        var expected = StreamSupport.stream(new SeededSpliterator<Long>(1, 10, 4, SeededSpliteratorTest::numbers), false).collect(Collectors.toList());
+
+        // consume one, then split, the prefix has to continue where we stopped
+        var result = new ArrayList<Long>();
+        s.tryAdvance(result::add);
+        var prefix = s.trySplit();
+        assertEquals(3, prefix.estimateSize());
+        assertEquals(6, s.estimateSize());
+        assertNull(prefix.trySplit());
+
+        // two blocks left, the second is incomplete
+        var middle = s.trySplit();
+        assertEquals(4, middle.estimateSize());
+        assertEquals(2, s.estimateSize());
+        assertNull(s.trySplit());
+
+        prefix.forEachRemaining(result::add);
+        middle.forEachRemaining(result::add);
+        s.forEachRemaining(result::add);
+        assertEquals(expected, result);
+    }
+
+    @Test
+    void rows()
+    {
+        var tt = new MarkovTable<String, String>().train("A", "a").train("B", "a").train("B", "a").freeze();
+
+        List<String> rows = tt.rowStream(7, 3000).parallel().collect(Collectors.toList());
+        assertEquals(rows, tt.rowStream(7, 3000).collect(Collectors.toList()));
+        assertEquals(3000, rows.size());
+    }
+
+    @Test
+    void words()
+    {
+        var trainer = new WordTrainer(2);
+        List.of("Abol", "Agouto", "Albmi", "Alef", "Amateru").forEach(trainer::train);
+        var g = trainer.generator();
+
+        var words = g.stream(11, 5000).collect(Collectors.toList());
+        assertEquals(words, g.stream(11, 5000).parallel().collect(Collectors.toList()));
+        assertEquals(words, trainer.generator().stream(11, 5000).parallel().collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,79 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.util.FastRandom;
+
+class SpaceSavingTest
+{
+    @Test
+    void exactBelowCapacity()
+    {
+        var ss = new SpaceSaving<String, Void>(3);
+        ss.offer("a", 1);
+        ss.offer("b", 2);
+        ss.offer("a", 1);
+
+        assertEquals(2, ss.size());
+        assertEquals(2, ss.get("a").count);
+        assertEquals(2, ss.get("b").count);
+        assertEquals(0, ss.get("a").error);
+        assertNull(ss.get("c"));
+    }
+
+    @Test
+    void takeOver()
+    {
+        var ss = new SpaceSaving<String, String>(2);
+        ss.offer("a", 5).value = "A";
+        ss.offer("b", 1).value = "B";
+
+        // c takes over b and inherits its count
+        var c = ss.offer("c", 1);
+        assertNull(c.value);
+        assertEquals("c", c.key);
+        assertEquals(2, c.count);
+        assertEquals(1, c.error);
+        assertNull(ss.get("b"));
+        assertEquals("A", ss.get("a").value);
+
+        // with a bound, the inherited count is smaller
+        var d = ss.offer("d", 1, 1);
+        assertEquals(1, d.count);
+        assertEquals(0, d.error);
+        assertEquals(1, ss.min());
+    }
+
+    @Test
+    void keepsHeavyHitters()
+    {
+        var ss = new SpaceSaving<Integer, Void>(20);
+        var exact = new HashMap<Integer, Long>();
+        var r = FastRandom.get(5);
+
+        final int n = 100_000;
+        for (int i = 0; i < n; i++)
+        {
+            // a few heavy ones and a long tail
+            int key = r.nextInt(10) < 5 ? r.nextInt(5) : 100 + r.nextInt(10_000);
+            ss.offer(key, 1);
+            exact.merge(key, 1L, Long::sum);
+        }
+
+        assertEquals(20, ss.size());
+        for (int key = 0; key < 5; key++)
+        {
+            var counter = ss.get(key);
+            assertNotNull(counter);
+            assertTrue(counter.count >= exact.get(key));
+            assertTrue(counter.count - counter.error <= exact.get(key));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+
+class SymbolDictionaryTest
+{
+    @Test
+    void dense()
+    {
+        var d = new SymbolDictionary<String>(1);
+        assertEquals(0, d.id("a"));
+        assertEquals(1, d.id("b"));
+        assertEquals(0, d.id("a"));
+        assertEquals(2, d.id(null));
+        assertEquals(2, d.lookup(null));
+        assertNull(d.symbol(2));
+        assertEquals(SymbolDictionary.NOT_FOUND, d.lookup("c"));
+
+        for (int i = 0; i < 100; i++)
+        {
+            assertEquals(i + 3, d.id("x" + i));
+        }
+        assertEquals(103, d.size());
+        assertEquals("x99", d.symbol(102));
+        assertArrayEquals(new Object[] {"a", "b", null}, java.util.Arrays.copyOf(d.toArray(), 3));
+    }
+
+    @Test
+    void concurrent() throws InterruptedException
+    {
+        var d = new SymbolDictionary<Integer>();
+        var seen = new ConcurrentHashMap<Integer, Integer>();
+        var threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++)
+        {
+            var thread = new Thread(() -> 
+            {
+                for (int i = 0; i < 10_000; i++)
+                {
+                    int id = d.id(i);
+                    var other = seen.putIfAbsent(i, id);
+                    if (other != null && other != id)
+                    {
+                        throw new AssertionError(i);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (var thread : threads)
+        {
+            thread.join();
+        }
+
+        assertEquals(10_000, d.size());
+        for (int i = 0; i < 10_000; i++)
+        {
+            assertEquals(Integer.valueOf(i), d.symbol(seen.get(i)));
+        }
+    }
+}
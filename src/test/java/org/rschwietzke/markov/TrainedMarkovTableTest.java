@@ -1,7 +1,14 @@
 package org.rschwietzke.markov;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
 
 import org.junit.jupiter.api.Test;
@@ -115,17 +122,17 @@ class TrainedMarkovTableTest
         
         verifyTable(tt, 8, 16L);
 
-        verifyRow(tt, 0, "A", 1, 1L);
-        verifyCol(tt, 0, 0, "a", 1L);
-
-        verifyRow(tt, 1, "B", 1, 2L);
-        verifyCol(tt, 1, 0, "a", 1L);
-
-        verifyRow(tt, 2, "C", 1, 3L);
-        verifyCol(tt, 2, 0, "a", 1L);
-
-        verifyRow(tt, 3, "D", 1, 4L);
-        verifyCol(tt, 3, 0, "a", 1L);
+        // all rows have the same count, so the order among them is not defined, 
+        // but the sums have to add up
+        for (int i = 0; i < 8; i++)
+        {
+            assertEquals(2L * (i + 1), tt.rows.get(i).aggregatedSum);
+        }
+        
+        verifyQuickRow(tt, "A", 1, 2L);
+        verifyQuickRow(tt, "D", 1, 2L);
+        verifyQuickRow(tt, "a", 2, 2L);
+        verifyQuickRow(tt, "d", 2, 2L);
     }
     
     @Test
@@ -163,10 +170,11 @@ class TrainedMarkovTableTest
         var mt = new MarkovTable<String, String>().train("A", "a").train("A", "a").train("A", "a").train("D", "a");
         var tt = new TrainedMarkovTable<>(mt);
         
-        assertEquals("A", tt.randomRow(LongFastRandom.get(1)));
+        // rows are sorted ascending by count, the rare D comes first
+        assertEquals("D", tt.randomRow(LongFastRandom.get(1)));
         assertEquals("A", tt.randomRow(LongFastRandom.get(2)));
         assertEquals("A", tt.randomRow(LongFastRandom.get(3)));
-        assertEquals("D", tt.randomRow(LongFastRandom.get(4)));
+        assertEquals("A", tt.randomRow(LongFastRandom.get(4)));
     }    
     
     @Test
@@ -200,9 +208,351 @@ class TrainedMarkovTableTest
         assertEquals("d", tt.randomCol(LongFastRandom.get(6), "A").get());
     }
     
+    @Test
+    void alias_distribution()
+    {
+        var mt = new MarkovTable<String, String>();
+        mt.train("A", "a").train("A", "b").train("A", "b").train("A", "c").train("A", "c").train("A", "c");
+        mt.train("B", "a");
+        mt.train("C", "a").train("C", "a").train("C", "a");
+        var tt = mt.freeze(TrainedMarkovTable.Sampling.ALIAS);
+        
+        assertEquals(TrainedMarkovTable.Sampling.ALIAS, tt.sampling);
+        verifyTable(tt, 3, 10L);
+        
+        var r = FastRandom.get(7);
+        var rows = new HashMap<String, Integer>();
+        var cols = new HashMap<String, Integer>();
+        final int n = 60_000;
+        for (int i = 0; i < n; i++)
+        {
+            rows.merge(tt.randomRow(r), 1, Integer::sum);
+            cols.merge(tt.randomCol(r, "A").get(), 1, Integer::sum);
+        }
+        
+        assertEquals(0.6d, rows.get("A") / (double) n, 0.01d);
+        assertEquals(0.1d, rows.get("B") / (double) n, 0.01d);
+        assertEquals(0.3d, rows.get("C") / (double) n, 0.01d);
+        
+        assertEquals(1 / 6d, cols.get("a") / (double) n, 0.01d);
+        assertEquals(2 / 6d, cols.get("b") / (double) n, 0.01d);
+        assertEquals(3 / 6d, cols.get("c") / (double) n, 0.01d);
+        
+        // single entries and misses behave the same
+        assertEquals("a", tt.randomCol(r, "B").get());
+        assertEquals(Optional.empty(), tt.randomCol(r, "X"));
+    }
+    
+    @Test
+    void refresh()
+    {
+        var mt = new MarkovTable<String, String>();
+        mt.train("A", "a").train("A", "b").train("A", "b");
+        mt.train("B", "a");
+        mt.train("C", "a").train("C", "c");
+        var tt = mt.freeze();
+        
+        var delta = new MarkovTable<String, String>();
+        delta.train("B", "b").train("B", "b").train("B", "a");
+        delta.train("D", "d");
+        var rt = tt.refresh(delta);
+        
+        // D 1, C 2, A 3, B 4
+        verifyTable(rt, 4, 10L);
+        verifyRow(rt, 0, "D", 1, 1L);
+        verifyRow(rt, 1, "C", 2, 3L);
+        verifyRow(rt, 2, "A", 2, 6L);
+        verifyRow(rt, 3, "B", 2, 10L);
+        verifyCol(rt, 3, 0, "a", 2L);
+        verifyCol(rt, 3, 1, "b", 4L);
+        verifyQuickRow(rt, "D", 1, 1L);
+        
+        // untouched rows share their cols
+        assertSame(tt.quickRows.get("A").cols, rt.quickRows.get("A").cols);
+        assertNotSame(tt.quickRows.get("B").cols, rt.quickRows.get("B").cols);
+        
+        // the old table did not change
+        verifyTable(tt, 3, 6L);
+        verifyRow(tt, 0, "B", 1, 1L);
+        verifyCol(tt, 0, 0, "a", 1L);
+    }
+    
+    @Test
+    void refresh_sameAsFreeze()
+    {
+        var r = FastRandom.get(17);
+        var mt = new MarkovTable<Integer, Integer>();
+        for (int i = 0; i < 5000; i++)
+        {
+            mt.train(r.nextInt(100), r.nextInt(10));
+        }
+        var tt = mt.freeze(TrainedMarkovTable.Sampling.ALIAS);
+        
+        var delta = new MarkovTable<Integer, Integer>();
+        for (int i = 0; i < 200; i++)
+        {
+            delta.train(r.nextInt(120), r.nextInt(12));
+        }
+        var rt = tt.refresh(delta);
+        var ft = mt.merge(delta).freeze(TrainedMarkovTable.Sampling.ALIAS);
+        
+        assertEquals(ft.rowMax, rt.rowMax);
+        assertEquals(ft.rows.size(), rt.rows.size());
+        for (int i = 0; i < ft.rows.size(); i++)
+        {
+            // ties might be ordered differently, the counts are not
+            assertEquals(ft.rows.get(i).count, rt.rows.get(i).count);
+            assertEquals(ft.rows.get(i).aggregatedSum, rt.rows.get(i).aggregatedSum);
+        }
+        ft.quickRows.forEach((t, row) -> 
+        {
+            var refreshed = rt.quickRows.get(t);
+            assertEquals(row.colMax, refreshed.colMax);
+            assertEquals(row.cols.size(), refreshed.cols.size());
+            assertNotNull(refreshed.alias);
+        });
+    }
+    
+    @Test
+    void prune()
+    {
+        var mt = new MarkovTable<String, String>();
+        mt.train("A", "a").train("A", "b").train("A", "b").train("A", "c").train("A", "c").train("A", "c");
+        mt.train("B", "a");
+        mt.train("C", "a").train("C", "a").train("C", "b");
+        
+        var tt = mt.freeze(FreezeOptions.DEFAULT.withMinCount(2).withMinRowCount(2).withRefreshable(true));
+        
+        // B is gone, C lost b, A lost a, all sums are renormalized
+        verifyTable(tt, 2, 7L);
+        verifyRow(tt, 0, "C", 1, 2L);
+        verifyCol(tt, 0, 0, "a", 2L);
+        verifyRow(tt, 1, "A", 2, 7L);
+        verifyCol(tt, 1, 0, "b", 2L);
+        verifyCol(tt, 1, 1, "c", 5L);
+        verifyQuickRow(tt, "A", 2, 5L);
+        assertEquals(Optional.empty(), tt.randomCol(FastRandom.get(1), "B"));
+        
+        // refreshes prune the same way
+        var rt = tt.refresh(new MarkovTable<String, String>().train("C", "d").train("D", "d"));
+        verifyTable(rt, 2, 7L);
+        verifyQuickRow(rt, "C", 1, 2L);
+    }
+    
+    @Test
+    void refresh_prunedSameAsFreeze()
+    {
+        // A has a long tail of singletons, B is rare, C sits right at the cut
+        var mt = new MarkovTable<String, String>();
+        for (int i = 0; i < 50; i++)
+        {
+            mt.train("A", "a");
+        }
+        for (int i = 0; i < 10; i++)
+        {
+            mt.train("A", "b");
+        }
+        for (int i = 0; i < 40; i++)
+        {
+            mt.train("A", "x" + i);
+        }
+        mt.train("B", "a");
+        mt.train("C", "a").train("C", "a").train("C", "c");
+
+        var policies = List.of(
+                        FreezeOptions.DEFAULT.withRefreshable(true).withMass(0.6d),
+                        FreezeOptions.DEFAULT.withRefreshable(true).withMinCount(2),
+                        FreezeOptions.DEFAULT.withRefreshable(true).withMaxCols(2),
+                        FreezeOptions.DEFAULT.withRefreshable(true).withMinRowCount(2),
+                        FreezeOptions.DEFAULT.withRefreshable(true).withMinCount(2).withMinRowCount(3).withParallel(true));
+
+        for (var options : policies)
+        {
+            var merged = new MarkovTable<String, String>().merge(mt);
+            var rt = mt.freeze(options);
+
+            // several refreshes, pruning must not drift
+            for (var delta : List.of(
+                            new MarkovTable<String, String>().train("A", "a").train("C", "c").train("B", "b"),
+                            new MarkovTable<String, String>().train("A", "x1").train("B", "a").train("D", "d"),
+                            new MarkovTable<String, String>().train("A", "a").train("D", "d").train("D", "d")))
+            {
+                rt = rt.refresh(delta);
+                merged.merge(delta);
+
+                var ft = merged.freeze(options);
+                assertEquals(ft.rowMax, rt.rowMax, options.toString());
+                assertEquals(ft.rows.size(), rt.rows.size(), options.toString());
+                for (var row : ft.rows)
+                {
+                    var refreshed = rt.quickRows.get(row.t);
+                    assertEquals(row.count, refreshed.count, options.toString());
+                    assertEquals(row.colMax, refreshed.colMax, options.toString());
+                    assertEquals(row.cols.size(), refreshed.cols.size(), options.toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    void refresh_prunedNotRefreshable()
+    {
+        var mt = new MarkovTable<String, String>().train("A", "a").train("A", "a").train("A", "b");
+        for (int i = 0; i < 100; i++)
+        {
+            mt.train("B", "b" + i);
+        }
+
+        // pruned tables drop what they pruned by default
+        var tt = mt.freeze(FreezeOptions.DEFAULT.withMinCount(2));
+        verifyQuickRow(tt, "A", 1, 2L);
+
+        var delta = new MarkovTable<String, String>().train("A", "b");
+        assertThrows(IllegalStateException.class, () -> tt.refresh(delta));
+
+        // keeping the pruned counts shows in the size
+        var refreshable = mt.freeze(FreezeOptions.DEFAULT.withMinCount(2).withRefreshable(true));
+        assertTrue(refreshable.estimatedBytes() > tt.estimatedBytes() + 100 * 24);
+
+        // nothing pruned, nothing to keep
+        var plain = mt.freeze(FreezeOptions.DEFAULT);
+        verifyQuickRow(plain.refresh(delta), "A", 2, 4L);
+    }
+
+    @Test
+    void prune_maxColsAndMass()
+    {
+        var mt = new MarkovTable<Integer, Integer>();
+        for (int s = 1; s <= 10; s++)
+        {
+            for (int i = 0; i < s; i++)
+            {
+                mt.train(0, s);
+            }
+        }
+        
+        // the three most frequent cols
+        var tt = mt.freeze(FreezeOptions.DEFAULT.withMaxCols(3).withSampling(TrainedMarkovTable.Sampling.ALIAS));
+        verifyTable(tt, 1, 27L);
+        verifyQuickRow(tt, 0, 3, 27L);
+        assertEquals(TrainedMarkovTable.Sampling.ALIAS, tt.sampling);
+        
+        // half of the 55 needs 10 + 9 + 8 = 27 < 27.5, so 4 cols
+        var mass = mt.freeze(FreezeOptions.DEFAULT.withMass(0.5d));
+        verifyQuickRow(mass, 0, 4, 34L);
+        
+        var r = FastRandom.get(3);
+        for (int i = 0; i < 1000; i++)
+        {
+            assertTrue(tt.randomCol(r, 0).get() >= 8);
+            assertTrue(mass.randomCol(r, 0).get() >= 7);
+        }
+    }
+    
     /*
      * Helper methods for testing
      */
+    @Test
+    void parallel_sameAsSequential()
+    {
+        var r = FastRandom.get(42);
+        var mt = new MarkovTable<Integer, Integer>();
+        for (int i = 0; i < 100_000; i++)
+        {
+            // few distinct counts, so many ties that have to keep their order
+            mt.train(r.nextInt(5000), r.nextInt(50));
+        }
+        
+        for (var sampling : TrainedMarkovTable.Sampling.values())
+        {
+            var options = FreezeOptions.DEFAULT.withSampling(sampling).withMinRowCount(10).withMaxCols(20).withRefreshable(true);
+            var sequential = mt.freeze(options);
+            var parallel = mt.freeze(options.withParallel(true));
+            
+            assertEquals(sequential.rowMax, parallel.rowMax);
+            assertEquals(sequential.rows.size(), parallel.rows.size());
+            for (int i = 0; i < sequential.rows.size(); i++)
+            {
+                var s = sequential.rows.get(i);
+                var p = parallel.rows.get(i);
+                assertEquals(s.t, p.t);
+                assertEquals(s.aggregatedSum, p.aggregatedSum);
+                assertEquals(s.colMax, p.colMax);
+                assertEquals(s.cols.size(), p.cols.size());
+                for (int c = 0; c < s.cols.size(); c++)
+                {
+                    assertEquals(s.cols.get(c).s, p.cols.get(c).s);
+                    assertEquals(s.cols.get(c).aggregatedSum, p.cols.get(c).aggregatedSum);
+                }
+            }
+            
+            // same draws
+            var r1 = FastRandom.get(7);
+            var r2 = FastRandom.get(7);
+            for (int i = 0; i < 10_000; i++)
+            {
+                var t = sequential.randomRow(r1);
+                assertEquals(t, parallel.randomRow(r2));
+                assertEquals(sequential.randomCol(r1, t), parallel.randomCol(r2, t));
+            }
+            
+            // refreshes stay parallel and identical
+            var delta = new MarkovTable<Integer, Integer>().train(1, 1).train(6000, 2);
+            assertEquals(sequential.refresh(delta).rowMax, parallel.refresh(delta).rowMax);
+        }
+    }
+    
+    @Test
+    void consume()
+    {
+        for (var parallel : new boolean[] {false, true})
+        {
+            var mt = new MarkovTable<String, String>();
+            mt.train("A", "a").train("A", "b").train("A", "b").train("B", "a").train("C", "c");
+            
+            var tt = mt.freeze(FreezeOptions.DEFAULT.withMinRowCount(2).withConsume(true).withParallel(parallel));
+            assertTrue(mt.rows.isEmpty());
+            assertEquals(0, mt.count);
+            
+            verifyTable(tt, 1, 3L);
+            verifyRow(tt, 0, "A", 2, 3L);
+            verifyCol(tt, 0, 0, "a", 1L);
+            verifyCol(tt, 0, 1, "b", 3L);
+        }
+    }
+    
+    @Test
+    void batch()
+    {
+        var mt = new MarkovTable<Integer, Integer>();
+        var r = FastRandom.get(12);
+        for (int i = 0; i < 10_000; i++)
+        {
+            mt.train(r.nextInt(5), r.nextInt(r.nextInt(1, 10)));
+        }
+        
+        for (var sampling : TrainedMarkovTable.Sampling.values())
+        {
+            var tt = mt.freeze(sampling);
+            
+            // the refreshable one uses the default of the interface
+            for (SamplingTable<Integer, Integer> table : new SamplingTable[] {tt, new RefreshableMarkovTable<>(tt)})
+            {
+                var r1 = FastRandom.get(3);
+                var r2 = FastRandom.get(3);
+                var out = new Integer[600];
+                assertEquals(600, table.randomCol(r1, 2, out, 600));
+                for (var s : out)
+                {
+                    assertEquals(table.randomCol(r2, 2, -1), s);
+                }
+                assertEquals(r2.nextLong(), r1.nextLong());
+                
+                assertEquals(0, table.randomCol(r1, 42, out, 10));
+            }
+        }
+    }
+    
     private static <T, S> void verifyTable(TrainedMarkovTable<T, S> table, int rowCount, long max)
     {
         assertEquals(rowCount, table.rows.size());
@@ -213,7 +563,15 @@ class TrainedMarkovTableTest
     {
         var r = table.rows.get(row);
         assertEquals(t, r.t);
-        assertEquals(max, r.colMax);
+        assertEquals(max, r.aggregatedSum);
+        assertEquals(colCount, r.cols.size());    
+    }
+    
+    private static <T, S> void verifyQuickRow(TrainedMarkovTable<T, S> table, T t, int colCount, long colMax)
+    {
+        var r = table.quickRows.get(t);
+        assertEquals(t, r.t);
+        assertEquals(colMax, r.colMax);
         assertEquals(colCount, r.cols.size());    
     }
     
@@ -222,6 +580,6 @@ class TrainedMarkovTableTest
         var r = table.rows.get(row);
         var c = r.cols.get(col);
         assertEquals(s, c.s);
-        assertEquals(sum, c.colSum);
+        assertEquals(sum, c.aggregatedSum);
     }
 }
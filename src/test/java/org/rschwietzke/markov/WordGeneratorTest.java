@@ -0,0 +1,115 @@
+package org.rschwietzke.markov;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.util.FastRandom;
+
+class WordGeneratorTest
+{
+    @Test
+    void singleWord()
+    {
+        // with just one word and a long enough context, there is only one way
+        var trainer = new WordTrainer(2);
+        trainer.train("abcdef");
+        var g = trainer.generator(FastRandom.get(1));
+
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals("abcdef", g.generate());
+        }
+    }
+
+    @Test
+    void shortWordsAreIgnored()
+    {
+        var trainer = new WordTrainer(3);
+        trainer.train("ab");
+        trainer.train("xyz");
+
+        assertEquals("xyz", trainer.generator(FastRandom.get(1)).generate());
+    }
+
+    @Test
+    void onlyTrainedTransitions()
+    {
+        var words = List.of("Abol", "Agouto", "Albmi", "Alef", "Amateru", "Arber", "Arion", "Arkas", "Asye");
+        var trainer = new WordTrainer(2);
+        words.forEach(trainer::train);
+
+        var g = trainer.generator(FastRandom.get(42));
+        for (int i = 0; i < 1000; i++)
+        {
+            var w = g.generate();
+
+            // everything starts with an A and is not longer than the longest word
+            assertTrue(w.startsWith("A"), w);
+            assertTrue(w.length() <= 7, w);
+
+            // any three chars in a row have to be somewhere in the words
+            for (int j = 0; j + 3 <= w.length(); j++)
+            {
+                var part = w.substring(j, j + 3);
+                assertTrue(words.stream().anyMatch(s -> s.contains(part)), w);
+            }
+        }
+    }
+
+    @Test
+    void bulk()
+    {
+        var trainer = new WordTrainer(2);
+        List.of("Abol", "Agouto", "Albmi", "Alef", "Amateru").forEach(trainer::train);
+
+        // same seed, same words, no matter how we ask
+        var expected = new ArrayList<String>();
+        var g1 = trainer.generator(FastRandom.get(7));
+        for (int i = 0; i < 100; i++)
+        {
+            expected.add(g1.generate());
+        }
+
+        var viaConsumer = new ArrayList<String>();
+        trainer.generator(FastRandom.get(7)).generate(100, s -> viaConsumer.add(s.toString()));
+        assertEquals(expected, viaConsumer);
+
+        var out = trainer.generator(FastRandom.get(7)).generateInto(new CharSequence[100]);
+        for (int i = 0; i < out.length; i++)
+        {
+            assertNotNull(out[i]);
+            assertEquals(expected.get(i), out[i]);
+        }
+
+        var sb = new StringBuilder("garbage");
+        assertEquals(expected.get(0), trainer.generator(FastRandom.get(7)).generate(sb).toString());
+    }
+
+    @Test
+    void batch()
+    {
+        var words = List.of("Abol", "Agouto", "Albmi", "Alef", "Amateru");
+        var trainer = new WordTrainer(2);
+        words.forEach(trainer::train);
+
+        // over several bulk fetches of openings, reproducible for a seed
+        var out = new String[601];
+        trainer.generator(FastRandom.get(7)).generate(out, 600);
+        var again = new String[600];
+        trainer.generator(FastRandom.get(7)).generate(again, 600);
+
+        for (int i = 0; i < 600; i++)
+        {
+            assertEquals(again[i], out[i]);
+            assertTrue(out[i].startsWith("A"), out[i]);
+            assertTrue(out[i].length() <= 7, out[i]);
+        }
+        assertEquals(null, out[600]);
+    }
+}
@@ -0,0 +1,211 @@
+package org.rschwietzke.markov.server;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.rschwietzke.markov.Generator;
+import org.rschwietzke.markov.WordTrainer;
+
+import it.unimi.dsi.util.FastRandom;
+
+class GenerationServerTest
+{
+    /**
+     * Hands out 0, 1, 2... as strings, not thread-safe on purpose
+     */
+    private static Generator<String> counter()
+    {
+        final var next = new long[1];
+        return () -> String.valueOf(next[0]++);
+    }
+
+    @Test
+    void generate() throws IOException
+    {
+        try (var server = new GenerationServer(counter());
+             var client = new GenerationClient(server.port()))
+        {
+            assertArrayEquals(new String[] {"0", "1", "2"}, client.generate(3));
+            assertArrayEquals(new String[0], client.generate(0));
+            assertArrayEquals(new String[] {"3"}, client.generate(1));
+
+            var stats = client.stats();
+            assertEquals(3, stats.requests);
+            assertEquals(4, stats.results);
+            assertEquals(0, stats.queueDepth);
+            assertTrue(stats.batches >= 1 && stats.batches <= 3, stats.toString());
+            assertTrue(stats.maxLatencyNanos > 0);
+            assertTrue(stats.latencyP50Nanos > 0 && stats.latencyP50Nanos <= stats.latencyP99Nanos, stats.toString());
+            assertTrue(stats.latencyP99Nanos <= stats.latencyP999Nanos, stats.toString());
+            assertTrue(stats.latencyP999Nanos <= stats.maxLatencyNanos, stats.toString());
+        }
+    }
+
+    @Test
+    void nullResults() throws IOException
+    {
+        final var next = new long[1];
+        final Generator<String> sometimesNull = () -> next[0]++ % 2 == 0 ? null : "x";
+
+        try (var server = new GenerationServer(sometimesNull);
+             var client = new GenerationClient(server.port()))
+        {
+            assertArrayEquals(new String[] {null, "x", null}, client.generate(3));
+            assertArrayEquals(new String[] {"x"}, client.generate(1));
+        }
+    }
+
+    @Test
+    void error() throws IOException
+    {
+        try (var server = new GenerationServer(counter());
+             var client = new GenerationClient(server.port()))
+        {
+            assertThrows(IOException.class, () -> client.generate(-1));
+            assertThrows(IOException.class, () -> client.generate(Protocol.MAX_COUNT + 1));
+
+            // the connection is still fine
+            assertArrayEquals(new String[] {"0"}, client.generate(1));
+        }
+    }
+
+    @Test
+    void concurrentClients() throws Exception
+    {
+        final int clients = 32;
+        final int requests = 200;
+        final Set<String> seen = ConcurrentHashMap.newKeySet();
+        final var failure = new AtomicReference<Throwable>();
+
+        try (var server = new GenerationServer(counter()))
+        {
+            final List<Thread> threads = new ArrayList<>();
+            for (int c = 0; c < clients; c++)
+            {
+                threads.add(new Thread(() ->
+                {
+                    try (var client = new GenerationClient(server.port()))
+                    {
+                        for (int i = 0; i < requests; i++)
+                        {
+                            for (var s : client.generate(5))
+                            {
+                                // a single generator, so everything is unique
+                                assertTrue(seen.add(s), s);
+                            }
+                        }
+                    }
+                    catch (Throwable e)
+                    {
+                        failure.set(e);
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (var t : threads)
+            {
+                t.join();
+            }
+
+            assertEquals(null, failure.get());
+            assertEquals(clients * requests * 5, seen.size());
+
+            var stats = server.stats();
+            assertEquals(clients * requests, stats.requests);
+            assertTrue(stats.batches <= stats.requests);
+        }
+    }
+
+    @Test
+    void words() throws IOException
+    {
+        var trainer = new WordTrainer(2);
+        List.of("Abol", "Agouto", "Albmi", "Alef", "Amateru").forEach(trainer::train);
+
+        try (var server = new GenerationServer(trainer.generator(FastRandom.get(1)));
+             var client = new GenerationClient(server.port()))
+        {
+            for (var w : client.generate(100))
+            {
+                assertTrue(w.startsWith("A"), w);
+            }
+        }
+    }
+
+    @Test
+    void workers() throws Exception
+    {
+        var trainer = new WordTrainer(2);
+        List.of("Abol", "Agouto", "Albmi", "Alef", "Amateru").forEach(trainer::train);
+
+        final var seeds = new AtomicInteger();
+        final int clients = 8;
+        final var failure = new AtomicReference<Throwable>();
+
+        try (var server = new GenerationServer(() -> trainer.generator(FastRandom.get(seeds.incrementAndGet())), 4))
+        {
+            // one generator per worker
+            assertEquals(4, seeds.get());
+
+            final List<Thread> threads = new ArrayList<>();
+            for (int c = 0; c < clients; c++)
+            {
+                threads.add(new Thread(() ->
+                {
+                    try (var client = new GenerationClient(server.port()))
+                    {
+                        for (int i = 0; i < 100; i++)
+                        {
+                            var words = client.generate(10);
+                            assertEquals(10, words.length);
+                            for (var w : words)
+                            {
+                                assertTrue(w.startsWith("A"), w);
+                            }
+                        }
+                    }
+                    catch (Throwable e)
+                    {
+                        failure.set(e);
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (var t : threads)
+            {
+                t.join();
+            }
+
+            assertEquals(null, failure.get());
+            var stats = server.stats();
+            assertEquals(clients * 100, stats.requests);
+            assertEquals(clients * 100 * 10, stats.results);
+            assertEquals(0, server.acceptFailures());
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> new GenerationServer(() -> counter(), 0));
+    }
+
+    @Test
+    void closed() throws IOException
+    {
+        var server = new GenerationServer(counter());
+        var client = new GenerationClient(server.port());
+        assertEquals(1, client.generate(1).length);
+
+        server.close();
+        assertThrows(IOException.class, () -> client.generate(1));
+        client.close();
+    }
+}